@@ -0,0 +1,54 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.model.Invoice;
+import com.pivik.finance_dashboard.support.SyntheticInvoices;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.http.HttpClient;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+// Turning an OpenAI chat completion into Invoice fields (no network: the response is canned)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AiResponseParsingBenchmark {
+
+    private OpenAiService openAiService;
+    private String rawResponse;
+    private String content;
+
+    @Setup
+    public void prepare() {
+        openAiService = new OpenAiService(HttpClient.newHttpClient(), new SimpleMeterRegistry());
+        Invoice invoice = new SyntheticInvoices(42).invoices(1, LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 7), 1).get(0);
+        rawResponse = SyntheticInvoices.openAiResponse(invoice);
+        content = openAiService.extractContentFromOpenAiResponse(rawResponse);
+    }
+
+    // 1. Dig the message content out of the completion envelope
+    @Benchmark
+    public String extractContent() {
+        return openAiService.extractContentFromOpenAiResponse(rawResponse);
+    }
+
+    // 2. Fill an invoice from that content
+    @Benchmark
+    public Invoice applyToInvoice() {
+        Invoice invoice = new Invoice();
+        InvoiceIngestionService.applyAiResponse(invoice, content);
+        return invoice;
+    }
+
+    // Both, as one upload does them
+    @Benchmark
+    public Invoice fullParse() {
+        Invoice invoice = new Invoice();
+        InvoiceIngestionService.applyAiResponse(invoice, openAiService.extractContentFromOpenAiResponse(rawResponse));
+        return invoice;
+    }
+}
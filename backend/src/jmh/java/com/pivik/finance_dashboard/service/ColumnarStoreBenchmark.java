@@ -0,0 +1,61 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.dto.GroupTotal;
+import com.pivik.finance_dashboard.event.ChangeType;
+import com.pivik.finance_dashboard.event.InvoiceChangedEvent;
+import com.pivik.finance_dashboard.model.Invoice;
+import com.pivik.finance_dashboard.service.ColumnarStore.InvoiceDimension;
+import com.pivik.finance_dashboard.support.SyntheticInvoices;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Date-range totals from the in-memory columns: a week and a whole year, over a year of invoices
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColumnarStoreBenchmark {
+
+    private static final LocalDate START = LocalDate.of(2025, 1, 1);
+    private static final LocalDate END = LocalDate.of(2025, 12, 31);
+    private static final LocalDate WEEK_START = LocalDate.of(2025, 6, 2);
+    private static final LocalDate WEEK_END = LocalDate.of(2025, 6, 8);
+
+    @Param({"1000", "100000"})
+    public int invoiceCount;
+
+    private final ColumnarStore store = new ColumnarStore(null);
+
+    @Setup
+    public void prepare() {
+        // No transaction here, so each change lands immediately
+        for (Invoice invoice : new SyntheticInvoices(42).invoices(invoiceCount, START, END, 20)) {
+            store.onInvoiceChanged(new InvoiceChangedEvent(ChangeType.CREATED, null, invoice));
+        }
+    }
+
+    @Benchmark
+    public GroupTotal yearTotal() {
+        return store.totalSpending(START, END);
+    }
+
+    @Benchmark
+    public List<GroupTotal> weekByVendor() {
+        return store.invoiceTotals(InvoiceDimension.VENDOR, WEEK_START, WEEK_END);
+    }
+
+    @Benchmark
+    public List<GroupTotal> yearByVendor() {
+        return store.invoiceTotals(InvoiceDimension.VENDOR, START, END);
+    }
+
+    @Benchmark
+    public List<GroupTotal> yearByMonth() {
+        return store.invoiceTotalsByMonth(START, END);
+    }
+}
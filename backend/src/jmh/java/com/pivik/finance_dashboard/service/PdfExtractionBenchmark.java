@@ -0,0 +1,59 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.model.Invoice;
+import com.pivik.finance_dashboard.support.SyntheticInvoices;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+// PDFBox text extraction: a typical one-page invoice and a long multi-page statement
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms512m", "-Xmx512m"})
+public class PdfExtractionBenchmark {
+
+    @Param({"1", "25"})
+    public int pages;
+
+    // 0 = read every page
+    @Param({"0", "3"})
+    public int maxPages;
+
+    private PdfExtractionService pdfExtractionService;
+    private Path pdf;
+
+    @Setup
+    public void writePdf() throws IOException {
+        pdfExtractionService = new PdfExtractionService(8 << 20, 256 << 20, maxPages, 30, 0, new SimpleMeterRegistry());
+        SyntheticInvoices synthetic = new SyntheticInvoices(42);
+        Invoice invoice = synthetic.invoices(1, LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 7), 1).get(0);
+        pdf = Files.createTempFile("bench-invoice-", ".pdf");
+        synthetic.writePdf(invoice, pages, pdf);
+    }
+
+    @TearDown
+    public void deletePdf() throws IOException {
+        Files.deleteIfExists(pdf);
+    }
+
+    @Benchmark
+    public String extractText() {
+        return pdfExtractionService.extractText(pdf.toString());
+    }
+
+    @Benchmark
+    public String extractTextFromStream() throws IOException {
+        try (InputStream in = Files.newInputStream(pdf)) {
+            return pdfExtractionService.extractText(in);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.model.Invoice;
+import com.pivik.finance_dashboard.support.InMemoryInvoiceRepository;
+import com.pivik.finance_dashboard.support.SyntheticInvoices;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Weekly report PDF and ZIP export over an in-memory repository, from a quiet week to a busy year
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class ReportBenchmark {
+
+    private static final LocalDate START = LocalDate.of(2025, 1, 1);
+    private static final LocalDate END = LocalDate.of(2025, 12, 31);
+
+    // Proof PDFs on disk; invoices share them round-robin, like repeat deliveries from the same supplier
+    private static final int PROOF_FILES = 20;
+
+    @Param({"10", "1000", "50000"})
+    public int invoiceCount;
+
+    private final ReportService reportService = new ReportService();
+    private final Path uploads = Paths.get("uploads");
+
+    @Setup
+    public void prepare() throws IOException {
+        SyntheticInvoices synthetic = new SyntheticInvoices(42);
+        List<Invoice> invoices = synthetic.invoices(invoiceCount, START, END, PROOF_FILES);
+
+        // The export reads proofs from ./uploads (the benchmark runs in target/jmh)
+        Files.createDirectories(uploads);
+        for (int i = 0; i < Math.min(PROOF_FILES, invoiceCount); i++) {
+            synthetic.writePdf(invoices.get(i), 1, uploads.resolve(SyntheticInvoices.proofName(i)));
+        }
+
+        ReflectionTestUtils.setField(reportService, "invoiceRepository", InMemoryInvoiceRepository.of(invoices));
+        ReflectionTestUtils.setField(reportService, "entityManager", detachOnlyEntityManager());
+        // Proofs use legacy names, which resolve straight to ./uploads; no database needed
+        ReflectionTestUtils.setField(reportService, "fileStorageService",
+                new FileStorageService("uploads", 60, null, null, new SimpleMeterRegistry()));
+    }
+
+    @TearDown
+    public void deleteProofs() throws IOException {
+        for (int i = 0; i < PROOF_FILES; i++) {
+            Files.deleteIfExists(uploads.resolve(SyntheticInvoices.proofName(i)));
+        }
+    }
+
+    @Benchmark
+    public byte[] generateWeeklyReport() {
+        return reportService.generateWeeklyReport(START, END);
+    }
+
+    // The streaming path the report endpoint uses (no byte[] at the end)
+    @Benchmark
+    public void writeWeeklyReport() {
+        reportService.writeWeeklyReport(START, END, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public byte[] generateZipBundle() {
+        return reportService.generateZipBundle(START, END);
+    }
+
+    // The report detaches every invoice it has written; with no persistence context that is all it needs
+    private static EntityManager detachOnlyEntityManager() {
+        return (EntityManager) Proxy.newProxyInstance(
+                EntityManager.class.getClassLoader(),
+                new Class<?>[]{EntityManager.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("detach")) {
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
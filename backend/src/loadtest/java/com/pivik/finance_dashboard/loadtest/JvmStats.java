@@ -0,0 +1,98 @@
+package com.pivik.finance_dashboard.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Heap and GC of the app under test, read from its actuator metrics, so it works the same for the app this
+// harness starts and for one running somewhere else. Heap use is sampled through the scenario for its peak.
+final class JvmStats {
+
+    record Snapshot(long gcPauses, double gcPauseSeconds, long allocatedBytes) {}
+
+    record Summary(double heapPeakMb, double heapMaxMb, double allocatedMbPerSecond,
+                   long gcPauses, double gcPauseMillis, double gcPausePercent) {}
+
+    private static final long SAMPLE_MILLIS = 250;
+
+    private final HttpClient httpClient;
+    private final String metricsUrl;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    JvmStats(HttpClient httpClient, String baseUrl) {
+        this.httpClient = httpClient;
+        this.metricsUrl = baseUrl + "/actuator/metrics/";
+    }
+
+    Snapshot snapshot() {
+        return new Snapshot((long) measurement("jvm.gc.pause", "COUNT"),
+                measurement("jvm.gc.pause", "TOTAL_TIME"),
+                (long) measurement("jvm.gc.memory.allocated", "COUNT"));
+    }
+
+    // Samples heap use until "window" returns, then sets it against what the snapshot before it said
+    Summary during(Runnable window) {
+        AtomicLong peak = new AtomicLong();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heap-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(() -> peak.accumulateAndGet((long) heapUsed(), Math::max),
+                0, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+
+        Snapshot before = snapshot();
+        long started = System.nanoTime();
+        try {
+            window.run();
+        } finally {
+            sampler.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        Snapshot after = snapshot();
+
+        double pauseSeconds = after.gcPauseSeconds() - before.gcPauseSeconds();
+        return new Summary(mb(peak.get()), mb(measurement("jvm.memory.max?tag=area:heap", "VALUE")),
+                mb(after.allocatedBytes() - before.allocatedBytes()) / seconds,
+                after.gcPauses() - before.gcPauses(), pauseSeconds * 1000, pauseSeconds / seconds * 100);
+    }
+
+    private double heapUsed() {
+        return measurement("jvm.memory.used?tag=area:heap", "VALUE");
+    }
+
+    // 0 for a meter that doesn't exist yet (the GC meters appear with the first collection)
+    private double measurement(String meter, String statistic) {
+        try {
+            HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(URI.create(metricsUrl + meter)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                return 0;
+            }
+            for (JsonNode measurement : objectMapper.readTree(response.body()).path("measurements")) {
+                if (statistic.equals(measurement.path("statistic").asText())) {
+                    return measurement.path("value").asDouble();
+                }
+            }
+            return 0;
+        } catch (IOException e) {
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    private static double mb(double bytes) {
+        return bytes / (1024 * 1024);
+    }
+}
@@ -0,0 +1,50 @@
+package com.pivik.finance_dashboard.loadtest;
+
+import java.util.Arrays;
+
+// Every response time of one operation in one scenario, kept whole so the percentiles are exact
+final class LatencyRecorder {
+
+    record Summary(String operation, long count, long errors, double perSecond,
+                   double p50Millis, double p99Millis, double maxMillis) {}
+
+    private final String operation;
+    private long[] nanos = new long[1024];
+    private int count;
+    private long errors;
+
+    LatencyRecorder(String operation) {
+        this.operation = operation;
+    }
+
+    synchronized void record(long elapsedNanos, boolean ok) {
+        if (count == nanos.length) {
+            nanos = Arrays.copyOf(nanos, count * 2);
+        }
+        nanos[count++] = elapsedNanos;
+        if (!ok) {
+            errors++;
+        }
+    }
+
+    synchronized Summary summarize(double seconds) {
+        long[] sorted = Arrays.copyOf(nanos, count);
+        Arrays.sort(sorted);
+        return new Summary(operation, count, errors, count / seconds,
+                millis(percentile(sorted, 0.50)), millis(percentile(sorted, 0.99)),
+                millis(count == 0 ? 0 : sorted[count - 1]));
+    }
+
+    // Nearest rank: the smallest value at least "quantile" of the samples are at or below
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
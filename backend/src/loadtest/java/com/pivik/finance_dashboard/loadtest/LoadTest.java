@@ -0,0 +1,338 @@
+package com.pivik.finance_dashboard.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.pivik.finance_dashboard.FinanceDashboardApplication;
+import com.pivik.finance_dashboard.model.Invoice;
+import com.pivik.finance_dashboard.support.SyntheticInvoices;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+// How much one node takes: starts the app against a throwaway PostgreSQL and a stubbed OpenAI, seeds it with
+// synthetic invoice PDFs, then runs each scenario for a fixed time with a fixed number of users, each sending
+// its next request as soon as the last one is answered. Per scenario it reports throughput and p50/p99 latency
+// per operation, and the app's heap and GC over the same window.
+//
+//   mvn -P loadtest verify -Dloadtest.args="--loadtest.threads=16 --loadtest.ai-latency-ms=800"
+//
+// Options are --loadtest.<name>=<value> (see DEFAULTS); anything else (--pivik.*, --openai.*, --spring.*) goes
+// to the app. With --loadtest.target=http://host:port nothing is started and that node is tested instead
+// (it needs the actuator metrics endpoint for the heap and GC figures).
+public final class LoadTest {
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("scenarios", "upload,list,edit,status,report,zip,mixed");
+        DEFAULTS.put("threads", "8");
+        DEFAULTS.put("warmup-seconds", "10");
+        DEFAULTS.put("duration-seconds", "30");
+        // The mixed scenario: weight of each operation
+        DEFAULTS.put("mix", "list:50,status:15,edit:10,upload:10,report:10,zip:5");
+        // Invoices loaded before the first scenario, dated over this many weeks up to last Sunday
+        DEFAULTS.put("seed-invoices", "500");
+        DEFAULTS.put("weeks", "8");
+        // Distinct PDFs for the upload operation
+        DEFAULTS.put("upload-pdfs", "1000");
+        DEFAULTS.put("max-pages", "3");
+        // The OpenAI stub: latency + random jitter per call, and the share of calls that fail with error-status
+        DEFAULTS.put("ai-latency-ms", "400");
+        DEFAULTS.put("ai-jitter-ms", "400");
+        DEFAULTS.put("ai-error-rate", "0.02");
+        DEFAULTS.put("ai-error-status", "500");
+        // An existing PostgreSQL instead of the embedded one, or an app that is already running
+        DEFAULTS.put("db-url", "");
+        DEFAULTS.put("db-user", "postgres");
+        DEFAULTS.put("db-password", "postgres");
+        DEFAULTS.put("target", "");
+        DEFAULTS.put("out", "loadtest-result.json");
+    }
+
+    record ScenarioResult(String scenario, int threads, double seconds, List<LatencyRecorder.Summary> operations,
+                          JvmStats.Summary jvm, long aiRequests, long aiFailures) {}
+
+    record Report(Instant startedAt, Map<String, String> options, int invoices, List<ScenarioResult> scenarios) {}
+
+    private final Map<String, String> options;
+    private final List<String> appArgs;
+
+    private EmbeddedPostgres postgres;
+    private OpenAiStub openAi;
+    private ConfigurableApplicationContext app;
+
+    private LoadTest(Map<String, String> options, List<String> appArgs) {
+        this.options = options;
+        this.appArgs = appArgs;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        List<String> appArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--loadtest.") && arg.contains("=")) {
+                String name = arg.substring("--loadtest.".length(), arg.indexOf('='));
+                if (!DEFAULTS.containsKey(name)) {
+                    throw new IllegalArgumentException("Unknown option " + arg + ", known: " + DEFAULTS.keySet());
+                }
+                options.put(name, arg.substring(arg.indexOf('=') + 1));
+            } else if (!arg.isBlank()) {
+                appArgs.add(arg);
+            }
+        }
+
+        LoadTest loadTest = new LoadTest(options, appArgs);
+        try {
+            loadTest.run();
+        } finally {
+            loadTest.shutdown();
+        }
+        System.exit(0); // the app's non-daemon threads are gone, but don't wait on anyone else's
+    }
+
+    private void run() throws Exception {
+        Instant startedAt = Instant.now();
+        int weeks = integer("weeks");
+        LocalDate firstWeek = LocalDate.now().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).minusWeeks(weeks);
+        LocalDate lastDay = firstWeek.plusWeeks(weeks).minusDays(1);
+
+        System.out.println("Writing synthetic invoice PDFs...");
+        List<Path> seed = writePdfs("seed", integer("seed-invoices"), firstWeek, lastDay, 1);
+        List<Path> uploads = writePdfs("upload", integer("upload-pdfs"), firstWeek, lastDay, 2);
+
+        String baseUrl = options.get("target").isBlank() ? startApp() : options.get("target").replaceAll("/+$", "");
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        Workload workload = new Workload(httpClient, baseUrl, uploads, firstWeek, weeks);
+        JvmStats jvmStats = new JvmStats(httpClient, baseUrl);
+
+        if (!seed.isEmpty()) {
+            System.out.printf("Seeding %d invoices...%n", seed.size());
+            configureAi(0, 0, 0); // seeding isn't measured, no point waiting on it
+            workload.bulkUpload(seed, 50);
+        }
+        workload.refreshInvoices();
+        configureAi(integer("ai-latency-ms"), integer("ai-jitter-ms"), Double.parseDouble(options.get("ai-error-rate")));
+
+        List<ScenarioResult> results = new ArrayList<>();
+        for (String scenario : options.get("scenarios").split(",")) {
+            Map<String, Integer> mix = mix(scenario.trim());
+            System.out.printf("Running %s (%d threads, %ds warm-up, %ds measured)...%n", scenario.trim(),
+                    integer("threads"), integer("warmup-seconds"), integer("duration-seconds"));
+            results.add(runScenario(scenario.trim(), mix, workload, jvmStats));
+        }
+        if (workload.uploadsRepeated() > 0) {
+            System.out.printf("Note: %d uploads reused a PDF, raise --loadtest.upload-pdfs for all-new files%n",
+                    workload.uploadsRepeated());
+        }
+
+        print(results);
+        Report report = new Report(startedAt, options, workload.invoiceCount(), results);
+        Path out = Paths.get(options.get("out"));
+        new ObjectMapper().registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(out.toFile(), report);
+        System.out.println("Results written to " + out.toAbsolutePath());
+    }
+
+    private ScenarioResult runScenario(String scenario, Map<String, Integer> mix, Workload workload, JvmStats jvmStats)
+            throws InterruptedException {
+        int threads = integer("threads");
+        drive(workload, mix, threads, integer("warmup-seconds"), new ConcurrentHashMap<>());
+
+        Map<String, LatencyRecorder> recorders = new ConcurrentHashMap<>();
+        long aiRequests = openAi != null ? openAi.requests() : 0;
+        long aiFailures = openAi != null ? openAi.failures() : 0;
+        long started = System.nanoTime();
+        JvmStats.Summary jvm = jvmStats.during(() -> drive(workload, mix, threads, integer("duration-seconds"), recorders));
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        List<LatencyRecorder.Summary> operations = new ArrayList<>();
+        for (String operation : Workload.OPERATIONS) {
+            Optional.ofNullable(recorders.get(operation)).ifPresent(recorder -> operations.add(recorder.summarize(seconds)));
+        }
+        return new ScenarioResult(scenario, threads, seconds, operations, jvm,
+                openAi != null ? openAi.requests() - aiRequests : -1,
+                openAi != null ? openAi.failures() - aiFailures : -1);
+    }
+
+    // "threads" users for "seconds", each picking its next operation from the mix
+    private static void drive(Workload workload, Map<String, Integer> mix, int threads, int seconds,
+                              Map<String, LatencyRecorder> recorders) {
+        int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread user = new Thread(() -> {
+                try {
+                    while (System.nanoTime() < deadline && !Thread.currentThread().isInterrupted()) {
+                        String operation = pick(mix, ThreadLocalRandom.current().nextInt(totalWeight));
+                        long start = System.nanoTime();
+                        boolean ok = workload.run(operation);
+                        recorders.computeIfAbsent(operation, LatencyRecorder::new).record(System.nanoTime() - start, ok);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "loadtest-user-" + i);
+            user.setDaemon(true);
+            user.start();
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String pick(Map<String, Integer> mix, int roll) {
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty mix");
+    }
+
+    // A single operation by name, or "mixed" for the weighted mix
+    private Map<String, Integer> mix(String scenario) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        if (Workload.OPERATIONS.contains(scenario)) {
+            mix.put(scenario, 1);
+            return mix;
+        }
+        if (!scenario.equals("mixed")) {
+            throw new IllegalArgumentException("Unknown scenario " + scenario + ", known: " + Workload.OPERATIONS + " and mixed");
+        }
+        for (String part : options.get("mix").split(",")) {
+            String[] weight = part.trim().split(":");
+            if (!Workload.OPERATIONS.contains(weight[0])) {
+                throw new IllegalArgumentException("Unknown operation in mix: " + weight[0]);
+            }
+            mix.put(weight[0], Integer.parseInt(weight[1]));
+        }
+        return mix;
+    }
+
+    // One PDF per synthetic invoice, one to "max-pages" pages long, dated between "start" and "end"
+    private List<Path> writePdfs(String name, int count, LocalDate start, LocalDate end, long seed) throws IOException {
+        Path directory = Files.createDirectories(Paths.get("pdfs", name));
+        SyntheticInvoices synthetic = new SyntheticInvoices(seed);
+        List<Invoice> invoices = synthetic.invoices(count, start, end, count);
+        List<Path> files = new ArrayList<>(count);
+        int maxPages = Math.max(1, integer("max-pages"));
+        for (int i = 0; i < invoices.size(); i++) {
+            Path file = directory.resolve(name + "_" + i + ".pdf");
+            synthetic.writePdf(invoices.get(i), 1 + i % maxPages, file);
+            files.add(file);
+        }
+        return files;
+    }
+
+    private String startApp() throws IOException {
+        String dbUrl = options.get("db-url");
+        if (dbUrl.isBlank()) {
+            System.out.println("Starting embedded PostgreSQL...");
+            // A new database each run, so the files and caches of the last one don't belong to anything
+            FileSystemUtils.deleteRecursively(Paths.get("uploads"));
+            FileSystemUtils.deleteRecursively(Paths.get("cache"));
+            postgres = EmbeddedPostgres.builder().setServerConfig("max_connections", "300").start();
+            dbUrl = postgres.getJdbcUrl("postgres", "postgres");
+        }
+
+        openAi = new OpenAiStub(integer("ai-error-status"));
+        openAi.start();
+
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("spring.datasource.url", dbUrl);
+        properties.put("spring.datasource.username", options.get("db-user"));
+        properties.put("spring.datasource.password", options.get("db-password"));
+        properties.put("spring.jpa.hibernate.ddl-auto", "update");
+        properties.put("openai.api.url", openAi.url());
+        properties.put("openai.api.key", "loadtest");
+        properties.put("openai.model", "gpt-4o-mini");
+        properties.put("server.port", "0");
+        properties.put("logging.level.root", "WARN");
+        properties.put("logging.level.org.apache.pdfbox", "ERROR"); // font fallback warnings for every report
+        // Passed-through app settings win
+        for (String arg : appArgs) {
+            String setting = arg.replaceFirst("^--", "");
+            int equals = setting.indexOf('=');
+            properties.put(equals < 0 ? setting : setting.substring(0, equals), equals < 0 ? "true" : setting.substring(equals + 1));
+        }
+
+        System.out.println("Starting the app...");
+        app = SpringApplication.run(FinanceDashboardApplication.class, properties.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new));
+        int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+        return "http://localhost:" + port;
+    }
+
+    private void configureAi(long latencyMillis, long jitterMillis, double errorRate) {
+        if (openAi != null) {
+            openAi.configure(latencyMillis, jitterMillis, errorRate);
+        }
+    }
+
+    private void shutdown() throws IOException {
+        if (app != null) {
+            app.close();
+        }
+        if (openAi != null) {
+            openAi.stop();
+        }
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    private static void print(List<ScenarioResult> results) {
+        System.out.println();
+        System.out.printf("%-9s %-8s %8s %7s %9s %10s %10s %10s%n",
+                "scenario", "op", "requests", "errors", "req/s", "p50 ms", "p99 ms", "max ms");
+        for (ScenarioResult result : results) {
+            for (LatencyRecorder.Summary op : result.operations()) {
+                System.out.printf("%-9s %-8s %8d %7d %9.1f %10.1f %10.1f %10.1f%n", result.scenario(), op.operation(),
+                        op.count(), op.errors(), op.perSecond(), op.p50Millis(), op.p99Millis(), op.maxMillis());
+            }
+            JvmStats.Summary jvm = result.jvm();
+            System.out.printf("%-9s heap peak %.0f of %.0f MB, allocating %.1f MB/s, %d GC pauses %.0f ms (%.1f%% of the time)",
+                    "", jvm.heapPeakMb(), jvm.heapMaxMb(), jvm.allocatedMbPerSecond(), jvm.gcPauses(),
+                    jvm.gcPauseMillis(), jvm.gcPausePercent());
+            System.out.println(result.aiRequests() >= 0
+                    ? String.format(", %d OpenAI calls (%d failed)", result.aiRequests(), result.aiFailures())
+                    : "");
+        }
+    }
+
+    private int integer(String option) {
+        return Integer.parseInt(options.get(option));
+    }
+}
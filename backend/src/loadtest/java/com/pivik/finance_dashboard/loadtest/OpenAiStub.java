@@ -0,0 +1,145 @@
+package com.pivik.finance_dashboard.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pivik.finance_dashboard.model.Invoice;
+import com.pivik.finance_dashboard.support.SyntheticInvoices;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Stands in for the chat completions endpoint: reads the fields back out of the invoice text in the prompt
+// (the synthetic PDFs print them on fixed lines), answers like OpenAI does, and can be told to be slow or to fail.
+final class OpenAiStub {
+
+    private static final Pattern NUMBER = Pattern.compile("Invoice #:\\s*(\\S+)");
+    private static final Pattern DATE = Pattern.compile("Date:\\s*(\\d{4}-\\d{2}-\\d{2})");
+    private static final Pattern TOTAL = Pattern.compile("TOTAL DUE:\\s*\\$([0-9.]+)");
+    private static final String[] CATEGORIES = {"Groceries", "Equipment", "Services", "Utilities", "Other"};
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // Changed between seeding and the scenarios, read by every request
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+    private volatile double errorRate;
+    private final int errorStatus;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    OpenAiStub(int errorStatus) throws IOException {
+        this.errorStatus = errorStatus;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        // A thread per call: the latency is a sleep, so it must not queue the calls behind each other
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "openai-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/v1/chat/completions", this::handle);
+        server.setExecutor(executor);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    String url() {
+        return "http://localhost:" + server.getAddress().getPort() + "/v1/chat/completions";
+    }
+
+    void configure(long latencyMillis, long jitterMillis, double errorRate) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.errorRate = errorRate;
+    }
+
+    long requests() {
+        return requests.get();
+    }
+
+    long failures() {
+        return failures.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String prompt;
+            try (InputStream in = exchange.getRequestBody()) {
+                JsonNode request = objectMapper.readTree(in);
+                JsonNode messages = request.path("messages");
+                prompt = messages.path(messages.size() - 1).path("content").asText("");
+            }
+            requests.incrementAndGet();
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long delay = latencyMillis + (jitterMillis > 0 ? random.nextLong(jitterMillis + 1) : 0);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+
+            if (random.nextDouble() < errorRate) {
+                failures.incrementAndGet();
+                send(exchange, errorStatus, "{\"error\":{\"message\":\"Synthetic failure\",\"type\":\"server_error\"}}");
+                return;
+            }
+            send(exchange, 200, SyntheticInvoices.openAiResponse(invoiceFrom(prompt)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Invoice invoiceFrom(String prompt) {
+        Invoice invoice = new Invoice();
+        String text = prompt.contains("INVOICE TEXT:") ? prompt.substring(prompt.indexOf("INVOICE TEXT:") + 13) : prompt;
+        invoice.setVendor(firstLine(text));
+        invoice.setInvoiceNumber(find(NUMBER, text, "INV-000000"));
+        invoice.setDate(LocalDate.parse(find(DATE, text, LocalDate.now().toString())));
+        invoice.setAmount(Double.parseDouble(find(TOTAL, text, "0")));
+        invoice.setCategory(CATEGORIES[Math.floorMod(invoice.getVendor().hashCode(), CATEGORIES.length)]);
+        return invoice;
+    }
+
+    private static String firstLine(String text) {
+        for (String line : text.split("\n")) {
+            if (!line.isBlank()) {
+                return line.trim();
+            }
+        }
+        return "Unknown";
+    }
+
+    private static String find(Pattern pattern, String text, String fallback) {
+        Matcher matcher = pattern.matcher(text);
+        return matcher.find() ? matcher.group(1) : fallback;
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.pivik.finance_dashboard.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The requests a user makes, one method call each: true when the app answered with a success.
+// Knows the invoices there are to edit and the weeks there are to report on, and which PDF to upload next.
+final class Workload {
+
+    static final String UPLOAD = "upload";
+    static final String LIST = "list";
+    static final String EDIT = "edit";
+    static final String STATUS = "status";
+    static final String REPORT = "report";
+    static final String ZIP = "zip";
+
+    static final List<String> OPERATIONS = List.of(UPLOAD, LIST, EDIT, STATUS, REPORT, ZIP);
+
+    private static final String[] STATUSES = {"Paid", "On Payment Term"};
+    private static final String[] CATEGORIES = {"Groceries", "Equipment", "Services", "Utilities", "Other"};
+
+    private final HttpClient httpClient;
+    private final String invoicesUrl;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<Path> uploads;
+    private final AtomicInteger nextUpload = new AtomicInteger();
+
+    // What the app has, as of the last refresh (uploads add to it)
+    private final List<ObjectNode> invoices = new ArrayList<>();
+    private final LocalDate firstWeek;
+    private final int weeks;
+
+    Workload(HttpClient httpClient, String baseUrl, List<Path> uploads, LocalDate firstWeek, int weeks) {
+        this.httpClient = httpClient;
+        this.invoicesUrl = baseUrl + "/api/invoices";
+        this.uploads = uploads;
+        this.firstWeek = firstWeek;
+        this.weeks = weeks;
+    }
+
+    boolean run(String operation) {
+        try {
+            return switch (operation) {
+                case UPLOAD -> upload();
+                case LIST -> list();
+                case EDIT -> edit();
+                case STATUS -> status();
+                case REPORT -> download("/report");
+                case ZIP -> download("/export-zip");
+                default -> throw new IllegalArgumentException("Unknown operation: " + operation);
+            };
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Every upload is a PDF the app hasn't seen; past the end of the pool they repeat (and hit the caches)
+    int uploadsRepeated() {
+        return Math.max(0, nextUpload.get() - uploads.size());
+    }
+
+    // Seeds the app through the bulk endpoint, the way a backlog of scans would arrive
+    void bulkUpload(List<Path> files, int batchSize) throws IOException, InterruptedException {
+        for (int from = 0; from < files.size(); from += batchSize) {
+            List<Path> batch = files.subList(from, Math.min(files.size(), from + batchSize));
+            HttpResponse<String> response = httpClient.send(multipart(invoicesUrl + "/upload/bulk", "files", batch),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IOException("Seeding failed with " + response.statusCode() + ": " + response.body());
+            }
+        }
+    }
+
+    void refreshInvoices() throws IOException, InterruptedException {
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(URI.create(invoicesUrl)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Listing invoices failed with " + response.statusCode());
+        }
+        List<ObjectNode> current = new ArrayList<>();
+        for (JsonNode invoice : objectMapper.readTree(response.body())) {
+            current.add((ObjectNode) invoice);
+        }
+        synchronized (invoices) {
+            invoices.clear();
+            invoices.addAll(current);
+        }
+    }
+
+    int invoiceCount() {
+        synchronized (invoices) {
+            return invoices.size();
+        }
+    }
+
+    private boolean upload() throws IOException, InterruptedException {
+        Path pdf = uploads.get(Math.floorMod(nextUpload.getAndIncrement(), uploads.size()));
+        HttpResponse<String> response = httpClient.send(multipart(invoicesUrl + "/upload", "file", List.of(pdf)),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            return false;
+        }
+        synchronized (invoices) {
+            invoices.add((ObjectNode) objectMapper.readTree(response.body()));
+        }
+        return true;
+    }
+
+    // A page of the invoice table, filtered the way people filter it
+    private boolean list() throws IOException, InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String query = switch (random.nextInt(4)) {
+            case 0 -> "";
+            case 1 -> "&status=" + encode(STATUSES[random.nextInt(STATUSES.length)]);
+            case 2 -> "&vendor=" + encode(randomInvoice().path("vendor").asText());
+            default -> {
+                LocalDate week = randomWeek();
+                yield "&from=" + week + "&to=" + week.plusDays(6);
+            }
+        };
+        return ok(httpClient.send(HttpRequest.newBuilder(URI.create(invoicesUrl + "/page?limit=50" + query)).build(),
+                HttpResponse.BodyHandlers.discarding()));
+    }
+
+    // What the edit dialog sends: every field, one of them changed
+    private boolean edit() throws IOException, InterruptedException {
+        ObjectNode invoice = randomInvoice().deepCopy();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextBoolean()) {
+            invoice.put("amount", Math.round(invoice.path("amount").asDouble() * (0.9 + random.nextDouble() * 0.2) * 100) / 100.0);
+        } else {
+            invoice.put("category", CATEGORIES[random.nextInt(CATEGORIES.length)]);
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(invoicesUrl + "/" + invoice.path("id").asLong()))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(invoice)))
+                .build();
+        return ok(httpClient.send(request, HttpResponse.BodyHandlers.discarding()));
+    }
+
+    private boolean status() throws IOException, InterruptedException {
+        String status = STATUSES[ThreadLocalRandom.current().nextInt(STATUSES.length)];
+        HttpRequest request = HttpRequest.newBuilder(URI.create(invoicesUrl + "/" + randomInvoice().path("id").asLong()
+                        + "/status?status=" + encode(status)))
+                .PUT(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return ok(httpClient.send(request, HttpResponse.BodyHandlers.discarding()));
+    }
+
+    // The whole file is read, as the browser would; no If-None-Match, so a cached copy is still sent in full
+    private boolean download(String path) throws IOException, InterruptedException {
+        LocalDate week = randomWeek();
+        URI uri = URI.create(invoicesUrl + path + "?startDate=" + week + "&endDate=" + week.plusDays(6));
+        return ok(httpClient.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding()));
+    }
+
+    private ObjectNode randomInvoice() {
+        synchronized (invoices) {
+            if (invoices.isEmpty()) {
+                throw new IllegalStateException("No invoices to work on, seed some first");
+            }
+            return invoices.get(ThreadLocalRandom.current().nextInt(invoices.size()));
+        }
+    }
+
+    private LocalDate randomWeek() {
+        return firstWeek.plusWeeks(ThreadLocalRandom.current().nextInt(weeks));
+    }
+
+    private static HttpRequest multipart(String url, String field, List<Path> files) throws IOException {
+        String boundary = "loadtest-" + UUID.randomUUID();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (Path file : files) {
+            body.writeBytes(("--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"" + field + "\"; filename=\"" + file.getFileName() + "\"\r\n"
+                    + "Content-Type: application/pdf\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            body.writeBytes(Files.readAllBytes(file));
+            body.writeBytes("\r\n".getBytes(StandardCharsets.UTF_8));
+        }
+        body.writeBytes(("--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMinutes(5))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+    }
+
+    private static boolean ok(HttpResponse<?> response) {
+        return response.statusCode() < 400;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,23 @@
+package com.pivik.finance_dashboard.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+@Configuration
+public class HttpClientConfig {
+
+    // One client for the whole app: connections (and their TLS sessions) are pooled and reused,
+    // and HTTP/2 multiplexes concurrent OpenAI calls over the same connection
+    @Bean
+    public HttpClient openAiHttpClient(@Value("${openai.connect-timeout-seconds:5}") long connectTimeoutSeconds) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(connectTimeoutSeconds))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+}
@@ -0,0 +1,43 @@
+package com.pivik.finance_dashboard.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+// Invoice and Earning used to be IDENTITY columns. Before the first insert, make sure their sequences
+// start above the ids that already exist, so the pooled generator never hands out a taken id.
+@Component
+public class IdSequenceInitializer {
+
+    private static final Logger log = LoggerFactory.getLogger(IdSequenceInitializer.class);
+
+    private static final int ALLOCATION_SIZE = 50; // must match @SequenceGenerator.allocationSize
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // The EntityManagerFactory is only here so Hibernate has updated the schema before we run
+    public IdSequenceInitializer(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void alignSequences() {
+        alignSequence("invoice_seq", "invoice");
+        alignSequence("earning_seq", "earning");
+    }
+
+    private void alignSequence(String sequence, String table) {
+        try {
+            jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + sequence + " INCREMENT BY " + ALLOCATION_SIZE);
+            // The pooled optimizer treats a sequence value N as the block (N - 49 .. N), so leave a full block of headroom
+            jdbcTemplate.execute("SELECT setval('" + sequence + "', GREATEST("
+                    + "(SELECT COALESCE(MAX(id), 0) FROM " + table + ") + " + ALLOCATION_SIZE + ", "
+                    + "(SELECT last_value FROM " + sequence + ")))");
+        } catch (Exception e) {
+            log.warn("Could not align sequence={} with table={}: {}", sequence, table, e.getMessage());
+        }
+    }
+}
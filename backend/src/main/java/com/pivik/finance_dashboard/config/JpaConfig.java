@@ -0,0 +1,86 @@
+package com.pivik.finance_dashboard.config;
+
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+
+@Configuration
+public class JpaConfig {
+
+    // Second-level cache regions (see the @Cache annotations and the cacheable queries in the repositories)
+    public static final String INVOICE_REGION = "invoice";
+    public static final String EARNING_REGION = "earning";
+    public static final String INVOICE_QUERY_REGION = "query.invoice";
+    public static final String EARNING_QUERY_REGION = "query.earning";
+
+    // Hibernate's own regions: query results nobody named a region for, and the last write time of each table
+    private static final String DEFAULT_QUERY_REGION = "default-query-results-region";
+    private static final String TIMESTAMPS_REGION = "default-update-timestamps-region";
+
+    // Send inserts/updates to PostgreSQL in JDBC batches instead of one round-trip per row
+    @Bean
+    public HibernatePropertiesCustomizer batchingCustomizer(@Value("${pivik.jpa.batch-size:50}") int batchSize) {
+        return properties -> {
+            properties.put(AvailableSettings.STATEMENT_BATCH_SIZE, batchSize);
+            properties.put(AvailableSettings.ORDER_INSERTS, true);
+            properties.put(AvailableSettings.ORDER_UPDATES, true);
+        };
+    }
+
+    // Reads outnumber writes by far: invoices and earnings by id, and the common list/total queries, are answered
+    // from memory until a write touches them. Hibernate keeps the cache right for its own writes; plain-SQL
+    // writes are handled in EntityCacheService.
+    @Bean
+    public HibernatePropertiesCustomizer cachingCustomizer(CacheManager entityCacheManager,
+                                                           @Value("${pivik.cache.enabled:true}") boolean enabled,
+                                                           @Value("${pivik.cache.statistics:true}") boolean statistics) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, enabled);
+            properties.put(AvailableSettings.USE_QUERY_CACHE, enabled);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            properties.put(ConfigSettings.CACHE_MANAGER, entityCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail"); // every region has to have its limits below
+            properties.put(AvailableSettings.GENERATE_STATISTICS, statistics); // hit/miss counts for the metrics
+        };
+    }
+
+    // Bounded by entry count, and entries expire anyway, so a row changed behind our back (by hand, in SQL)
+    // doesn't stay wrong forever
+    @Bean(destroyMethod = "close")
+    public CacheManager entityCacheManager(@Value("${pivik.cache.invoice.max-entries:10000}") long invoiceEntries,
+                                           @Value("${pivik.cache.earning.max-entries:20000}") long earningEntries,
+                                           @Value("${pivik.cache.query.max-entries:500}") long queryEntries,
+                                           @Value("${pivik.cache.ttl-minutes:60}") long ttlMinutes) {
+        Duration ttl = Duration.ofMinutes(ttlMinutes);
+        org.ehcache.config.Configuration regions = ConfigurationBuilder.newConfigurationBuilder()
+                .withCache(INVOICE_REGION, region(invoiceEntries, ttl))
+                .withCache(EARNING_REGION, region(earningEntries, ttl))
+                .withCache(INVOICE_QUERY_REGION, region(queryEntries, ttl))
+                .withCache(EARNING_QUERY_REGION, region(queryEntries, ttl))
+                .withCache(DEFAULT_QUERY_REGION, region(queryEntries, ttl))
+                // One entry per table, and it must never expire or be evicted while query results depend on it
+                .withCache(TIMESTAMPS_REGION, region(1000, null))
+                .build();
+        EhcacheCachingProvider provider = (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+        return provider.getCacheManager(URI.create("urn:pivik:entity-cache"), regions);
+    }
+
+    private static CacheConfigurationBuilder<Object, Object> region(long maxEntries, Duration ttl) {
+        return CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(Object.class, Object.class, ResourcePoolsBuilder.heap(maxEntries))
+                .withExpiry(ttl != null ? ExpiryPolicyBuilder.timeToLiveExpiration(ttl) : ExpiryPolicyBuilder.noExpiration());
+    }
+}
@@ -0,0 +1,10 @@
+package com.pivik.finance_dashboard.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+
+// Actuator/metrics defaults (see pivik-defaults.properties); application.properties can override any of them
+@Configuration
+@PropertySource("classpath:pivik-defaults.properties")
+public class ObservabilityConfig {
+}
@@ -0,0 +1,110 @@
+package com.pivik.finance_dashboard.controller;
+
+import com.pivik.finance_dashboard.dto.DashboardSummary;
+import com.pivik.finance_dashboard.dto.GroupTotal;
+import com.pivik.finance_dashboard.dto.MonthlyTotal;
+import com.pivik.finance_dashboard.repository.EarningRepository;
+import com.pivik.finance_dashboard.repository.InvoiceRepository;
+import com.pivik.finance_dashboard.service.ColumnarStore;
+import com.pivik.finance_dashboard.service.ColumnarStore.InvoiceDimension;
+import com.pivik.finance_dashboard.service.RollupService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/dashboard")
+@CrossOrigin(origins = {"http://localhost:5173", "http://localhost:5174"})
+public class DashboardController {
+
+    private static final LocalDate EARLIEST = LocalDate.of(1, 1, 1);
+    private static final LocalDate LATEST = LocalDate.of(9999, 12, 31);
+
+    private final InvoiceRepository invoiceRepository;
+    private final EarningRepository earningRepository;
+    private final RollupService rollupService;
+    private final ColumnarStore columnarStore;
+
+    public DashboardController(InvoiceRepository invoiceRepository,
+                               EarningRepository earningRepository,
+                               RollupService rollupService,
+                               ColumnarStore columnarStore) {
+        this.invoiceRepository = invoiceRepository;
+        this.earningRepository = earningRepository;
+        this.rollupService = rollupService;
+        this.columnarStore = columnarStore;
+    }
+
+    // 📊 DASHBOARD CARDS (precomputed rollup, month granularity)
+    @GetMapping("/summary")
+    public DashboardSummary getSummary(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return rollupService.summary(from, to);
+    }
+
+    // 💸 SPENDING FOR AN EXACT DATE RANGE (in-memory columns, GROUP BY in the database as a fallback)
+    @GetMapping("/spending")
+    public List<GroupTotal> getSpending(
+            @RequestParam(defaultValue = "vendor") String groupBy,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+
+        LocalDate startDate = from != null ? from : EARLIEST;
+        LocalDate endDate = to != null ? to : LATEST;
+
+        if (columnarStore.isReady()) {
+            return switch (groupBy) {
+                case "vendor" -> columnarStore.invoiceTotals(InvoiceDimension.VENDOR, startDate, endDate);
+                case "category" -> columnarStore.invoiceTotals(InvoiceDimension.CATEGORY, startDate, endDate);
+                case "project" -> columnarStore.invoiceTotals(InvoiceDimension.PROJECT, startDate, endDate);
+                case "month" -> columnarStore.invoiceTotalsByMonth(startDate, endDate);
+                default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "groupBy must be vendor, category, project or month");
+            };
+        }
+
+        // Still loading at startup: same answer from the database
+        return switch (groupBy) {
+            case "vendor" -> invoiceRepository.sumByVendor(startDate, endDate);
+            case "category" -> invoiceRepository.sumByCategory(startDate, endDate);
+            case "project" -> invoiceRepository.sumByProject(startDate, endDate);
+            case "month" -> invoiceRepository.sumByMonth(startDate, endDate).stream().map(MonthlyTotal::toGroupTotal).toList();
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "groupBy must be vendor, category, project or month");
+        };
+    }
+
+    // 💰 EARNINGS PER SOURCE FOR AN EXACT DATE RANGE
+    @GetMapping("/earnings")
+    public List<GroupTotal> getEarnings(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        LocalDate startDate = from != null ? from : EARLIEST;
+        LocalDate endDate = to != null ? to : LATEST;
+        return columnarStore.isReady()
+                ? columnarStore.earningTotalsBySource(startDate, endDate)
+                : earningRepository.sumBySource(startDate, endDate);
+    }
+
+    // 🧮 TOTAL SPENDING AND EARNINGS FOR AN EXACT DATE RANGE (two Fenwick-tree lookups)
+    @GetMapping("/totals")
+    public List<GroupTotal> getTotals(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (!columnarStore.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Totals are still loading, retry shortly");
+        }
+        LocalDate startDate = from != null ? from : EARLIEST;
+        LocalDate endDate = to != null ? to : LATEST;
+        return List.of(columnarStore.totalSpending(startDate, endDate), columnarStore.totalEarnings(startDate, endDate));
+    }
+
+    // 🔧 RECOUNT THE ROLLUP FROM SCRATCH
+    @PostMapping("/rollup/rebuild")
+    public void rebuildRollup() {
+        rollupService.rebuild();
+    }
+}
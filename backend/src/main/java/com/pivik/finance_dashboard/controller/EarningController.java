@@ -1,9 +1,24 @@
 package com.pivik.finance_dashboard.controller;
 
+import com.pivik.finance_dashboard.dto.CursorPage;
+import com.pivik.finance_dashboard.dto.EarningFilter;
+import com.pivik.finance_dashboard.dto.EarningSummary;
+import com.pivik.finance_dashboard.dto.ImportReport;
+import com.pivik.finance_dashboard.dto.PageCursor;
 import com.pivik.finance_dashboard.model.Earning;
 import com.pivik.finance_dashboard.repository.EarningRepository;
+import com.pivik.finance_dashboard.service.EarningImportService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -11,10 +26,14 @@ import java.util.List;
 @CrossOrigin(origins = "http://localhost:5173")
 public class EarningController {
 
+    private static final int MAX_PAGE_SIZE = 500;
+
     private final EarningRepository repository;
+    private final EarningImportService importService;
 
-    public EarningController(EarningRepository repository) {
+    public EarningController(EarningRepository repository, EarningImportService importService) {
         this.repository = repository;
+        this.importService = importService;
     }
 
     @GetMapping
@@ -22,9 +41,42 @@ public class EarningController {
         return repository.findAllByOrderByDateDesc();
     }
 
+    // One page of earnings, newest first, filtered in the database
+    @GetMapping("/page")
+    public CursorPage<EarningSummary> getPage(
+            @RequestParam(required = false) String source,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+
+        EarningFilter filter = new EarningFilter(source, from, to);
+        return repository.findPage(filter, PageCursor.decode(cursor), Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+    }
+
     @PostMapping
     public Earning create(@RequestBody Earning earning) {
-        return repository.save(earning);
+        try {
+            return repository.save(earning);
+        } catch (DataIntegrityViolationException e) {
+            // One earning per source per day (see EarningImportService)
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "There is already an earning for this source on this date");
+        }
+    }
+
+    // 📥 BULK IMPORT: a POS export streamed as the request body, CSV (date,amount,source) or JSON lines.
+    // Re-importing the same file updates the amounts instead of adding the rows twice.
+    @PostMapping(value = "/import", consumes = {"text/csv", "text/plain", "application/x-ndjson", "application/jsonl"})
+    public ImportReport importEarnings(HttpServletRequest request) throws IOException {
+        return importService.importEarnings(request.getInputStream(),
+                EarningImportService.formatOf(request.getContentType(), null));
+    }
+
+    // The same, uploaded as a file from a form
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ImportReport importEarningsFile(@RequestParam("file") MultipartFile file) throws IOException {
+        return importService.importEarnings(file.getInputStream(),
+                EarningImportService.formatOf(file.getContentType(), file.getOriginalFilename()));
     }
 
     @DeleteMapping("/{id}")
@@ -1,29 +1,51 @@
 package com.pivik.finance_dashboard.controller;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pivik.finance_dashboard.dto.BulkUploadResult;
+import com.pivik.finance_dashboard.dto.CursorPage;
+import com.pivik.finance_dashboard.dto.InvoiceFilter;
+import com.pivik.finance_dashboard.dto.InvoiceSearchHit;
+import com.pivik.finance_dashboard.dto.InvoiceSummary;
+import com.pivik.finance_dashboard.dto.PageCursor;
+import com.pivik.finance_dashboard.dto.UploadStatus;
+import com.pivik.finance_dashboard.model.IngestionJob;
 import com.pivik.finance_dashboard.model.Invoice;
+import com.pivik.finance_dashboard.model.VendorTemplate;
 import com.pivik.finance_dashboard.repository.InvoiceRepository;
-import com.pivik.finance_dashboard.service.OpenAiService;
-import com.pivik.finance_dashboard.service.PdfExtractionService; // 👈 Using your existing service
+import com.pivik.finance_dashboard.service.ArtifactCache;
+import com.pivik.finance_dashboard.service.ChunkedUploadService;
+import com.pivik.finance_dashboard.service.ExtractionCacheService;
+import com.pivik.finance_dashboard.service.FileStorageService;
+import com.pivik.finance_dashboard.service.InvoiceIngestionService;
+import com.pivik.finance_dashboard.service.InvoiceSearchService;
 import com.pivik.finance_dashboard.service.ReportService;
+import com.pivik.finance_dashboard.service.VendorTemplateService;
+import com.pivik.finance_dashboard.service.WeeklyArtifactService;
 
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.util.List;
-import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/invoices")
@@ -32,25 +54,45 @@ public class InvoiceController {
 
     private final InvoiceRepository invoiceRepository;
     private final ReportService reportService;
-    private final OpenAiService openAiService;
-    private final PdfExtractionService pdfExtractionService; // 👈 Your specific service
-    private final Path rootLocation = Paths.get("uploads");
+    private final InvoiceIngestionService ingestionService;
+    private final ExtractionCacheService extractionCacheService;
+    private final ArtifactCache artifactCache;
+    private final VendorTemplateService vendorTemplateService;
+    private final FileStorageService fileStorageService;
+    private final InvoiceSearchService searchService;
+    private final WeeklyArtifactService weeklyArtifacts;
+    private final ChunkedUploadService chunkedUploadService;
+
+    private static final int MAX_PAGE_SIZE = 500;
+
+    // Tomcat's sendfile hand-off (the same attributes its DefaultServlet uses), worth it from 48 KB up
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final long SENDFILE_MIN_BYTES = 48 * 1024;
 
     // Constructor Injection
     public InvoiceController(InvoiceRepository invoiceRepository, 
                              ReportService reportService, 
-                             OpenAiService openAiService, 
-                             PdfExtractionService pdfExtractionService) {
+                             InvoiceIngestionService ingestionService,
+                             ExtractionCacheService extractionCacheService,
+                             ArtifactCache artifactCache,
+                             VendorTemplateService vendorTemplateService,
+                             FileStorageService fileStorageService,
+                             InvoiceSearchService searchService,
+                             WeeklyArtifactService weeklyArtifacts,
+                             ChunkedUploadService chunkedUploadService) {
         this.invoiceRepository = invoiceRepository;
         this.reportService = reportService;
-        this.openAiService = openAiService;
-        this.pdfExtractionService = pdfExtractionService;
-
-        try {
-            Files.createDirectories(rootLocation);
-        } catch (IOException e) {
-            throw new RuntimeException("Could not initialize folder for upload!");
-        }
+        this.ingestionService = ingestionService;
+        this.extractionCacheService = extractionCacheService;
+        this.artifactCache = artifactCache;
+        this.vendorTemplateService = vendorTemplateService;
+        this.fileStorageService = fileStorageService;
+        this.searchService = searchService;
+        this.weeklyArtifacts = weeklyArtifacts;
+        this.chunkedUploadService = chunkedUploadService;
     }
 
     @GetMapping
@@ -58,60 +100,110 @@ public class InvoiceController {
         return invoiceRepository.findAll();
     }
 
-    // 📤 UPLOAD + AI ANALYSIS
+    // 📃 ONE PAGE OF INVOICES (newest first, filtered in the database)
+    @GetMapping("/page")
+    public CursorPage<InvoiceSummary> getInvoicePage(
+            @RequestParam(required = false) String vendor,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) String project,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+
+        InvoiceFilter filter = new InvoiceFilter(vendor, status, category, project, from, to);
+        return invoiceRepository.findPage(filter, PageCursor.decode(cursor), Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+    }
+
+    // 🔎 FULL-TEXT SEARCH over the PDF text, vendor and invoice number (best match first, same filters as /page)
+    @GetMapping("/search")
+    public List<InvoiceSearchHit> searchInvoices(
+            @RequestParam String q,
+            @RequestParam(required = false) String vendor,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) String project,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(defaultValue = "0") int offset) {
+
+        InvoiceFilter filter = new InvoiceFilter(vendor, status, category, project, from, to);
+        return searchService.search(q, filter, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)), Math.max(0, offset));
+    }
+
+    // 📤 UPLOAD + AI ANALYSIS (waits for the whole pipeline)
     @PostMapping("/upload")
-    public Invoice uploadInvoice(@RequestParam("file") MultipartFile file) throws IOException {
-        // 1. Save the File to Disk
-        String filename = UUID.randomUUID() + "_" + file.getOriginalFilename();
-        Path destinationFile = rootLocation.resolve(filename);
-        Files.copy(file.getInputStream(), destinationFile);
-
-        // 2. Extract Text (Using YOUR service with the file path)
-        // We convert Path to String because your service expects a String
-        String invoiceText = pdfExtractionService.extractText(destinationFile.toAbsolutePath().toString());
-        
-        System.out.println("📄 Extracted Text: " + (invoiceText.length() > 50 ? invoiceText.substring(0, 50) + "..." : invoiceText));
-
-        // 3. Create Default Invoice Object
-        Invoice invoice = new Invoice();
-        invoice.setFileUrl(filename);
-        invoice.setStatus("On Payment Term");
-
-        // 4. AI Analysis
-        if (invoiceText != null && !invoiceText.isEmpty() && !invoiceText.startsWith("Error")) {
-            String jsonResponse = openAiService.extractInvoiceDetails(invoiceText);
-            
-            if (jsonResponse != null) {
-                try {
-                    ObjectMapper mapper = new ObjectMapper();
-                    JsonNode root = mapper.readTree(jsonResponse);
-
-                    // Safely fill fields
-                    if (root.has("vendor")) invoice.setVendor(root.get("vendor").asText());
-                    if (root.has("invoiceNumber")) invoice.setInvoiceNumber(root.get("invoiceNumber").asText());
-                    if (root.has("amount")) invoice.setAmount(root.get("amount").asDouble());
-                    if (root.has("category")) invoice.setCategory(root.get("category").asText());
-                    
-                    if (root.has("date")) {
-                        invoice.setDate(LocalDate.parse(root.get("date").asText()));
-                    } else {
-                        invoice.setDate(LocalDate.now());
-                    }
-                } catch (Exception e) {
-                    System.out.println("❌ AI Parse Error: " + e.getMessage());
-                    invoice.setVendor("Unknown (Parse Error)");
-                    invoice.setDate(LocalDate.now());
-                }
-            } else {
-                invoice.setVendor("Unknown (AI Failed)");
-                invoice.setDate(LocalDate.now());
-            }
-        } else {
-            invoice.setVendor("Unknown (PDF Empty)");
-            invoice.setDate(LocalDate.now());
-        }
+    public Invoice uploadInvoice(@RequestParam("file") MultipartFile file) {
+        return ingestionService.ingest(file);
+    }
 
-        return invoiceRepository.save(invoice);
+    // 📤 UPLOAD, ANALYZE IN THE BACKGROUND (returns a job id right away)
+    @PostMapping("/upload-async")
+    public ResponseEntity<IngestionJob> uploadInvoiceAsync(@RequestParam("file") MultipartFile file) {
+        return ResponseEntity.accepted().body(ingestionService.submit(file));
+    }
+
+    // 📤 RESUMABLE UPLOAD, step 1: announce the file (length is optional but lets us check it arrived whole)
+    @PostMapping("/uploads")
+    public ResponseEntity<UploadStatus> startUpload(@RequestParam("fileName") String fileName,
+                                                    @RequestParam(value = "length", required = false) Long length) {
+        UploadStatus status = chunkedUploadService.start(fileName, length);
+        return ResponseEntity.created(URI.create("/api/invoices/uploads/" + status.uploadId())).body(status);
+    }
+
+    // Step 2: send the bytes from "offset" on, in as many requests as it takes (the raw body, not multipart)
+    @PutMapping(value = "/uploads/{uploadId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public UploadStatus uploadChunk(@PathVariable String uploadId,
+                                    @RequestParam("offset") long offset,
+                                    HttpServletRequest request) throws IOException {
+        return chunkedUploadService.write(uploadId, offset, request.getInputStream());
+    }
+
+    // After a dropped connection: how much arrived, so the next chunk starts there
+    @GetMapping("/uploads/{uploadId}")
+    public UploadStatus getUpload(@PathVariable String uploadId) {
+        return chunkedUploadService.status(uploadId);
+    }
+
+    // Step 3: store it and analyze it in the background (same job as /upload-async)
+    @PostMapping("/uploads/{uploadId}/complete")
+    public ResponseEntity<IngestionJob> completeUpload(@PathVariable String uploadId,
+                                                       @RequestParam(value = "sha256", required = false) String sha256) {
+        return ResponseEntity.accepted().body(chunkedUploadService.complete(uploadId, sha256));
+    }
+
+    @DeleteMapping("/uploads/{uploadId}")
+    public ResponseEntity<Void> cancelUpload(@PathVariable String uploadId) {
+        chunkedUploadService.cancel(uploadId);
+        return ResponseEntity.noContent().build();
+    }
+
+    // 📤📤 BULK UPLOAD (many PDFs in one request, one result per file: the invoice or what went wrong)
+    @PostMapping("/upload/bulk")
+    public List<BulkUploadResult> uploadInvoices(@RequestParam("files") List<MultipartFile> files) {
+        return ingestionService.ingestAll(files);
+    }
+
+    // 🔎 JOB STATUS
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<IngestionJob> getJob(@PathVariable String jobId) {
+        return ingestionService.findJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // 🧠 EXTRACTION CACHE STATS
+    @GetMapping("/extraction-cache/stats")
+    public ExtractionCacheService.Stats getExtractionCacheStats() {
+        return extractionCacheService.stats();
+    }
+
+    // 🧩 LEARNED VENDOR TEMPLATES
+    @GetMapping("/templates")
+    public List<VendorTemplate> getVendorTemplates() {
+        return vendorTemplateService.findAll();
     }
 
     // ✏️ EDIT INVOICE
@@ -125,7 +217,10 @@ public class InvoiceController {
                     invoice.setAmount(invoiceDetails.getAmount());
                     invoice.setCategory(invoiceDetails.getCategory());
                     invoice.setProject(invoiceDetails.getProject());
-                    return ResponseEntity.ok(invoiceRepository.save(invoice));
+                    Invoice saved = invoiceRepository.save(invoice);
+                    extractionCacheService.correct(saved);
+                    vendorTemplateService.learn(saved); // the user just confirmed these fields
+                    return ResponseEntity.ok(saved);
                 })
                 .orElse(ResponseEntity.notFound().build());
     }
@@ -147,54 +242,185 @@ public class InvoiceController {
         invoiceRepository.deleteById(id);
     }
 
-    // 📄 PDF REPORT
+    // 📄 PDF REPORT (prebuilt for last week, otherwise cached per date range until an invoice in it changes)
     @GetMapping("/report")
-    public ResponseEntity<byte[]> downloadReport(
+    public void downloadReport(
             @RequestParam("startDate") String startDateStr,
-            @RequestParam("endDate") String endDateStr) {
+            @RequestParam("endDate") String endDateStr,
+            ServletWebRequest webRequest,
+            HttpServletResponse response) throws IOException {
         
         LocalDate startDate = LocalDate.parse(startDateStr);
         LocalDate endDate = LocalDate.parse(endDateStr);
-        byte[] pdfBytes = reportService.generateWeeklyReport(startDate, endDate);
 
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=weekly_report.pdf")
-                .contentType(MediaType.APPLICATION_PDF)
-                .body(pdfBytes);
+        sendArtifact(() -> weeklyArtifacts.get(WeeklyArtifactService.REPORT, startDate, endDate),
+                "weekly_report.pdf", MediaType.APPLICATION_PDF_VALUE, webRequest, response);
     }
 
-    // 📦 ZIP EXPORT
+    // 📦 ZIP EXPORT (streamed from the cache, nothing is buffered in memory)
     @GetMapping("/export-zip")
-    public ResponseEntity<byte[]> downloadZipBundle(
+    public void downloadZipBundle(
             @RequestParam("startDate") String startDateStr,
-            @RequestParam("endDate") String endDateStr) {
+            @RequestParam("endDate") String endDateStr,
+            ServletWebRequest webRequest,
+            HttpServletResponse response) throws IOException {
         
         LocalDate startDate = LocalDate.parse(startDateStr);
         LocalDate endDate = LocalDate.parse(endDateStr);
-        byte[] zipBytes = reportService.generateZipBundle(startDate, endDate);
 
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=Weekly_Payment_Run.zip")
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(zipBytes);
+        sendArtifact(() -> weeklyArtifacts.get(WeeklyArtifactService.ZIP, startDate, endDate),
+                "Weekly_Payment_Run.zip", MediaType.APPLICATION_OCTET_STREAM_VALUE, webRequest, response);
     }
 
-    // 📂 DOWNLOAD SINGLE FILE
+    // 🗂️ PER-PROJECT EXPORT (a report and proofs folder per project, rendered in parallel)
+    @GetMapping("/export-projects")
+    public void downloadProjectBundle(
+            @RequestParam("startDate") String startDateStr,
+            @RequestParam("endDate") String endDateStr,
+            ServletWebRequest webRequest,
+            HttpServletResponse response) throws IOException {
+
+        LocalDate startDate = LocalDate.parse(startDateStr);
+        LocalDate endDate = LocalDate.parse(endDateStr);
+
+        sendArtifact(() -> artifactCache.get("projects", startDate, endDate,
+                        out -> reportService.writeProjectBundle(startDate, endDate, out)),
+                "Project_Reports.zip", MediaType.APPLICATION_OCTET_STREAM_VALUE, webRequest, response);
+    }
+
+    // 🗄️ ARTIFACT CACHE STATS
+    @GetMapping("/artifact-cache/stats")
+    public ArtifactCache.Stats getArtifactCacheStats() {
+        return artifactCache.stats();
+    }
+
+    private interface ArtifactSource {
+        ArtifactCache.Artifact get() throws IOException;
+    }
+
+    // Answers 304 when the browser already has this version, otherwise copies the cached file out
+    private void sendArtifact(ArtifactSource source, String filename, String contentType,
+                              ServletWebRequest webRequest, HttpServletResponse response) throws IOException {
+        ArtifactCache.Artifact artifact = source.get();
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(artifact.path(), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            artifact = source.get(); // evicted between the lookup and the open, build it again
+            channel = FileChannel.open(artifact.path(), StandardOpenOption.READ);
+        }
+
+        try (FileChannel file = channel) {
+            if (webRequest.checkNotModified(artifact.etag())) {
+                return;
+            }
+
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache"); // keep it, but ask us (cheaply) before reusing it
+            response.setContentType(contentType);
+            response.setContentLengthLong(artifact.size());
+
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < artifact.size()) {
+                position += file.transferTo(position, artifact.size() - position, target);
+            }
+        } finally {
+            if (artifact.temporary()) {
+                Files.deleteIfExists(artifact.path());
+            }
+        }
+    }
+
+    // 📂 DOWNLOAD SINGLE FILE (byte ranges for the PDF viewer, 304 when the browser already has it)
     @GetMapping("/file/{filename}")
-    public ResponseEntity<Resource> getFile(@PathVariable String filename) {
+    public void getFile(@PathVariable String filename, ServletWebRequest webRequest,
+                        HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path file;
+        FileChannel channel;
         try {
-            Path file = rootLocation.resolve(filename);
-            Resource resource = new UrlResource(file.toUri());
-
-            if (resource.exists() || resource.isReadable()) {
-                return ResponseEntity.ok()
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + resource.getFilename() + "\"")
-                        .body(resource);
-            } else {
-                throw new RuntimeException("Could not read the file!");
+            file = fileStorageService.resolve(filename);
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (IllegalArgumentException | NoSuchFileException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No such file");
+        }
+
+        try (FileChannel in = channel) {
+            long size = in.size();
+            long lastModified = Files.getLastModifiedTime(file).toMillis();
+            String etag = "\"" + fileStorageService.sha256(filename) + "\"";
+
+            // Content-addressed files never change under their name, so the browser can keep them for good
+            response.setHeader(HttpHeaders.CACHE_CONTROL, fileStorageService.isImmutable(filename)
+                    ? "private, max-age=31536000, immutable" : "private, no-cache");
+            if (webRequest.checkNotModified(etag, lastModified)) {
+                return;
+            }
+
+            // 1. Which bytes? Everything, unless a single satisfiable range is asked for (several ranges get the whole file)
+            long start = 0;
+            long end = size - 1;
+            String range = request.getHeader(HttpHeaders.RANGE);
+            if (range != null && ifRangeMatches(request, etag, lastModified)) {
+                List<HttpRange> ranges;
+                try {
+                    ranges = HttpRange.parseRanges(range);
+                } catch (IllegalArgumentException e) {
+                    ranges = List.of(); // malformed: ignore it, like a missing header
+                }
+                if (ranges.size() == 1) {
+                    start = ranges.get(0).getRangeStart(size);
+                    end = ranges.get(0).getRangeEnd(size);
+                    if (start >= size) {
+                        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                        response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                        return;
+                    }
+                    response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+                }
+            }
+            long length = end - start + 1;
+
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"");
+            response.setContentType(MediaTypeFactory.getMediaType(filename)
+                    .orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+            response.setContentLengthLong(length);
+            if ("HEAD".equals(request.getMethod()) || length <= 0) {
+                return;
             }
-        } catch (MalformedURLException e) {
-            throw new RuntimeException("Error: " + e.getMessage());
+
+            // 2. Big bodies: Tomcat hands the file straight to the kernel (sendfile) once we return
+            if (length >= SENDFILE_MIN_BYTES && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, start);
+                request.setAttribute(SENDFILE_END, end + 1);
+                return;
+            }
+
+            // 3. Otherwise copy from the channel
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                position += in.transferTo(position, end + 1 - position, target);
+            }
+        }
+    }
+
+    // If-Range: only honour the range if the browser's copy is still this version (strong ETag or exact date)
+    private static boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
         }
     }
-}
\ No newline at end of file
+}
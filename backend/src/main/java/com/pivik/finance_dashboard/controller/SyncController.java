@@ -0,0 +1,40 @@
+package com.pivik.finance_dashboard.controller;
+
+import com.pivik.finance_dashboard.dto.SyncChanges;
+import com.pivik.finance_dashboard.service.ChangeFeedService;
+import com.pivik.finance_dashboard.service.ChangeStreamService;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+// Keeps a dashboard's copy of the invoice and earning lists current without reloading them:
+// load everything once (since omitted), then follow the changes, by polling or over the stream
+@RestController
+@RequestMapping("/api/sync")
+@CrossOrigin(origins = {"http://localhost:5173", "http://localhost:5174"})
+public class SyncController {
+
+    private static final int MAX_PAGE_SIZE = 5000;
+
+    private final ChangeFeedService changeFeed;
+    private final ChangeStreamService changeStream;
+
+    public SyncController(ChangeFeedService changeFeed, ChangeStreamService changeStream) {
+        this.changeFeed = changeFeed;
+        this.changeStream = changeStream;
+    }
+
+    // 🔄 WHAT CHANGED since the cursor from the last call (410 = too old, start over without one)
+    @GetMapping("/changes")
+    public SyncChanges getChanges(@RequestParam(required = false) String since,
+                                  @RequestParam(defaultValue = "1000") int limit) {
+        return changeFeed.changes(since, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+    }
+
+    // 📡 THE SAME, PUSHED: a "changes" event (same body as above) whenever something is written
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam(required = false) String since,
+                             @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return changeStream.subscribe(lastEventId != null ? lastEventId : since);
+    }
+}
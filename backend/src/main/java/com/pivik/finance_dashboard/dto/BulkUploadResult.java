@@ -0,0 +1,17 @@
+package com.pivik.finance_dashboard.dto;
+
+import com.pivik.finance_dashboard.model.Invoice;
+
+// What became of one file of a bulk upload: the saved invoice, or why there is none
+public record BulkUploadResult(String fileName,
+                               Invoice invoice,
+                               String error) {
+
+    public static BulkUploadResult saved(String fileName, Invoice invoice) {
+        return new BulkUploadResult(fileName, invoice, null);
+    }
+
+    public static BulkUploadResult failed(String fileName, String error) {
+        return new BulkUploadResult(fileName, null, error);
+    }
+}
@@ -0,0 +1,6 @@
+package com.pivik.finance_dashboard.dto;
+
+import java.util.List;
+
+// One page of results; pass nextCursor back to get the following page (null = last page)
+public record CursorPage<T>(List<T> items, String nextCursor) {}
@@ -0,0 +1,12 @@
+package com.pivik.finance_dashboard.dto;
+
+import java.util.List;
+
+// Everything the dashboard cards and charts need, in one small response
+public record DashboardSummary(Double totalSpending,
+                               Double totalEarnings,
+                               List<GroupTotal> spendingByVendor,
+                               List<GroupTotal> spendingByCategory,
+                               List<GroupTotal> spendingByProject,
+                               List<GroupTotal> spendingByMonth,
+                               List<GroupTotal> earningsBySource) {}
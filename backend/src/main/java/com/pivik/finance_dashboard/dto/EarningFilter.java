@@ -0,0 +1,6 @@
+package com.pivik.finance_dashboard.dto;
+
+import java.time.LocalDate;
+
+// Optional filters for the earnings listing; null means "don't filter on this"
+public record EarningFilter(String source, LocalDate from, LocalDate to) {}
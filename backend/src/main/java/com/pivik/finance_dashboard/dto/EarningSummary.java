@@ -0,0 +1,5 @@
+package com.pivik.finance_dashboard.dto;
+
+import java.time.LocalDate;
+
+public record EarningSummary(Long id, LocalDate date, Double amount, String source) {}
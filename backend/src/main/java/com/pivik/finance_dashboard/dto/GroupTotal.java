@@ -0,0 +1,4 @@
+package com.pivik.finance_dashboard.dto;
+
+// One bucket of a GROUP BY: e.g. key = "Costco", total = 1234.56 over count = 12 rows
+public record GroupTotal(String key, Double total, Long count) {}
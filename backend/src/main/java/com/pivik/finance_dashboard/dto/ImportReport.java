@@ -0,0 +1,14 @@
+package com.pivik.finance_dashboard.dto;
+
+import java.util.List;
+
+// What a bulk import did: rows accepted (new, changed, or already there as they are), lines skipped and why
+// (the first few), and how fast
+public record ImportReport(long rows,
+                           long inserted,
+                           long updated,
+                           long unchanged,
+                           long rejected,
+                           List<String> rejections,
+                           long millis,
+                           long rowsPerSecond) {}
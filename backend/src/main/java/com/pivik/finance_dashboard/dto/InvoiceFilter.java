@@ -0,0 +1,11 @@
+package com.pivik.finance_dashboard.dto;
+
+import java.time.LocalDate;
+
+// Optional filters for the invoice listing; null means "don't filter on this"
+public record InvoiceFilter(String vendor,
+                            String status,
+                            String category,
+                            String project,
+                            LocalDate from,
+                            LocalDate to) {}
@@ -0,0 +1,4 @@
+package com.pivik.finance_dashboard.dto;
+
+// One full-text search result: the invoice, how well it matched, and the matching words in context
+public record InvoiceSearchHit(InvoiceSummary invoice, double rank, String snippet) {}
@@ -0,0 +1,14 @@
+package com.pivik.finance_dashboard.dto;
+
+import java.time.LocalDate;
+
+// The columns the dashboard lists, without loading whole Invoice entities
+public record InvoiceSummary(Long id,
+                             String vendor,
+                             String invoiceNumber,
+                             Double amount,
+                             LocalDate date,
+                             String category,
+                             String status,
+                             String project,
+                             String fileUrl) {}
@@ -0,0 +1,8 @@
+package com.pivik.finance_dashboard.dto;
+
+public record MonthlyTotal(Integer year, Integer month, Double total, Long count) {
+
+    public GroupTotal toGroupTotal() {
+        return new GroupTotal(String.format("%04d-%02d", year, month), total, count);
+    }
+}
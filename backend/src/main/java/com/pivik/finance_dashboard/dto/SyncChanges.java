@@ -0,0 +1,16 @@
+package com.pivik.finance_dashboard.dto;
+
+import com.pivik.finance_dashboard.model.Earning;
+import com.pivik.finance_dashboard.model.Invoice;
+
+import java.util.List;
+
+// Rows created or edited since the client's cursor (whole, oldest change first) and the ids deleted since.
+// Pass "cursor" back as "since" next time; hasMore means there is more to fetch right away.
+// A row may come again in a later response: apply them as upserts.
+public record SyncChanges(List<Invoice> invoices,
+                          List<Earning> earnings,
+                          List<Long> deletedInvoices,
+                          List<Long> deletedEarnings,
+                          String cursor,
+                          boolean hasMore) {}
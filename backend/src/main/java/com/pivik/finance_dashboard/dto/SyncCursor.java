@@ -0,0 +1,36 @@
+package com.pivik.finance_dashboard.dto;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Where a client is in the change feed. "since" is a change version: everything written before it has been sent.
+// A round that takes several pages also remembers the horizon of its first page and the last change it sent,
+// in (version, kind, id) order, so the next page starts right after it.
+public record SyncCursor(long since, long horizon, long version, int kind, long id) {
+
+    // The start of a round: every change with a version of at least "since" (horizon 0 = not taken yet)
+    public static SyncCursor start(long since) {
+        return new SyncCursor(since, 0, since, -1, 0);
+    }
+
+    public String encode() {
+        String raw = since + "|" + horizon + "|" + version + "|" + kind + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static SyncCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return start(0);
+        }
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+            return new SyncCursor(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                    Integer.parseInt(parts[3]), Long.parseLong(parts[4]));
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.pivik.finance_dashboard.dto;
+
+// Where a chunked upload stands: send the next chunk at offset "received".
+// "length" is the size announced when the upload started, null if it wasn't.
+public record UploadStatus(String uploadId,
+                           String fileName,
+                           Long length,
+                           long received) {}
@@ -0,0 +1,3 @@
+package com.pivik.finance_dashboard.event;
+
+public enum ChangeType { CREATED, UPDATED, DELETED }
@@ -0,0 +1,7 @@
+package com.pivik.finance_dashboard.event;
+
+import com.pivik.finance_dashboard.model.Earning;
+
+// Published for every earning row written through JPA.
+// "before" is null for CREATED, "after" is null for DELETED; both are detached copies.
+public record EarningChangedEvent(ChangeType type, Earning before, Earning after) {}
@@ -0,0 +1,10 @@
+package com.pivik.finance_dashboard.event;
+
+import com.pivik.finance_dashboard.model.Earning;
+
+import java.util.List;
+
+// Published for each chunk of a bulk import, which writes with plain JDBC and so raises no EarningChangedEvent.
+// after.get(i) is a row as written; before.get(i) is that row's previous state, or null if the import created it.
+// Listeners run inside the chunk's transaction.
+public record EarningsImportedEvent(List<Earning> before, List<Earning> after) {}
@@ -0,0 +1,92 @@
+package com.pivik.finance_dashboard.event;
+
+import com.pivik.finance_dashboard.model.Earning;
+import com.pivik.finance_dashboard.model.Invoice;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+// Turns Hibernate's insert/update/delete callbacks into Spring events, so every write path
+// (controllers, bulk saves, pipeline) is seen without each caller having to remember to notify anyone.
+// Listeners run inside the writing transaction, during flush.
+@Component
+public class EntityChangeListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final ApplicationEventPublisher publisher;
+
+    public EntityChangeListener(EntityManagerFactory entityManagerFactory, ApplicationEventPublisher publisher) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.publisher = publisher;
+    }
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        publish(ChangeType.CREATED, event.getPersister(), event.getId(), null, event.getState());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        publish(ChangeType.UPDATED, event.getPersister(), event.getId(), event.getOldState(), event.getState());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        publish(ChangeType.DELETED, event.getPersister(), event.getId(), event.getDeletedState(), null);
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    private void publish(ChangeType type, EntityPersister persister, Object id, Object[] oldState, Object[] newState) {
+        Class<?> entityType = persister.getMappedClass();
+        if (entityType == Invoice.class) {
+            Invoice before = copy(Invoice::new, persister, oldState);
+            Invoice after = copy(Invoice::new, persister, newState);
+            if (before != null) before.setId((Long) id);
+            if (after != null) after.setId((Long) id);
+            publisher.publishEvent(new InvoiceChangedEvent(type, before, after));
+        } else if (entityType == Earning.class) {
+            Earning before = copy(Earning::new, persister, oldState);
+            Earning after = copy(Earning::new, persister, newState);
+            if (before != null) before.setId((Long) id);
+            if (after != null) after.setId((Long) id);
+            publisher.publishEvent(new EarningChangedEvent(type, before, after));
+        }
+    }
+
+    // A fresh instance filled from Hibernate's state array, so listeners never see later edits
+    private static <T> T copy(Supplier<T> factory, EntityPersister persister, Object[] state) {
+        if (state == null) {
+            return null;
+        }
+        T copy = factory.get();
+        persister.setValues(copy, state);
+        return copy;
+    }
+}
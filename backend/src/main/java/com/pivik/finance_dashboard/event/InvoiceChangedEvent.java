@@ -0,0 +1,7 @@
+package com.pivik.finance_dashboard.event;
+
+import com.pivik.finance_dashboard.model.Invoice;
+
+// Published for every invoice row written through JPA.
+// "before" is null for CREATED, "after" is null for DELETED; both are detached copies.
+public record InvoiceChangedEvent(ChangeType type, Invoice before, Invoice after) {}
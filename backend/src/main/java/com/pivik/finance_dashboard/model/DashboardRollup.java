@@ -0,0 +1,52 @@
+package com.pivik.finance_dashboard.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+// Running totals per (dimension, key, month), kept up to date on every invoice/earning write
+// so the dashboard never has to scan the full history.
+@Entity
+@IdClass(DashboardRollup.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DashboardRollup {
+
+    public enum Dimension { VENDOR, CATEGORY, PROJECT, EARNING_SOURCE }
+
+    // Rows without a value for the dimension are counted under NONE; rows without a date have "undated" set
+    // and UNDATED as their month, which then means nothing (a real 1970-01 row has undated = false)
+    public static final String NONE = "(none)";
+    public static final LocalDate UNDATED = LocalDate.EPOCH;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    private Dimension dimension;
+
+    @Id
+    private String dimKey;
+
+    @Id
+    private LocalDate month;    // first day of the month
+
+    @Id
+    private boolean undated;
+
+    private Double total;
+    private Long rowCount;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Dimension dimension;
+        private String dimKey;
+        private LocalDate month;
+        private boolean undated;
+    }
+}
@@ -1,19 +1,33 @@
 package com.pivik.finance_dashboard.model;
 
+import com.pivik.finance_dashboard.config.JpaConfig;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import java.time.LocalDate;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_earning_date_id", columnList = "date, id"),                       // keyset paging walks this index
+        @Index(name = "idx_earning_change_version", columnList = "changeVersion, id")})      // and delta sync this one
+@Cacheable // kept in the second-level cache between requests (see JpaConfig)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = JpaConfig.EARNING_REGION)
 public class Earning {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "earning_seq")
+    @SequenceGenerator(name = "earning_seq", sequenceName = "earning_seq", allocationSize = 50)
     private Long id;
 
     private LocalDate date;
     private Double amount;
     private String source; // e.g. "Register 1", "Catering", "Lottery"
 
+    // Stamped by the database on every insert and update (see ChangeFeedService), never written from here
+    @Column(insertable = false, updatable = false)
+    private Long changeVersion;
+
     public Earning() {}
 
     // Getters and Setters
@@ -28,4 +42,7 @@ public class Earning {
 
     public String getSource() { return source; }
     public void setSource(String source) { this.source = source; }
+
+    public Long getChangeVersion() { return changeVersion; }
+    public void setChangeVersion(Long changeVersion) { this.changeVersion = changeVersion; }
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package com.pivik.finance_dashboard.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+// What the AI extracted for one PDF, so re-uploads of the same invoice skip the OpenAI call
+@Entity
+@Table(indexes = {
+        @Index(name = "idx_extraction_cache_file_hash", columnList = "fileHash", unique = true),
+        @Index(name = "idx_extraction_cache_text_hash", columnList = "textHash"),
+        @Index(name = "idx_extraction_cache_last_used", columnList = "lastUsedAt")
+})
+@Data
+@NoArgsConstructor
+public class ExtractionCacheEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "extraction_cache_seq")
+    @SequenceGenerator(name = "extraction_cache_seq", sequenceName = "extraction_cache_seq", allocationSize = 50)
+    private Long id;
+
+    private String fileHash;     // SHA-256 of the file bytes
+    private String textHash;     // SHA-256 of the extracted text, whitespace/case normalized
+
+    // The extracted fields
+    private String vendor;
+    private String invoiceNumber;
+    private Double amount;
+    private LocalDate date;
+    private String category;
+
+    private Instant createdAt;
+    private Instant lastUsedAt;  // eviction drops the least recently used rows first
+    private long hitCount;
+}
@@ -0,0 +1,51 @@
+package com.pivik.finance_dashboard.model;
+
+import java.time.Instant;
+
+// Progress of one uploaded invoice through the ingestion pipeline (kept in memory, not a table)
+public class IngestionJob {
+
+    public enum Stage { QUEUED, EXTRACTING, ENRICHING, PERSISTING, DONE, FAILED }
+
+    private final String id;
+    private final String fileName;
+    private final Instant createdAt = Instant.now();
+
+    private volatile Stage stage = Stage.QUEUED;
+    private volatile Instant updatedAt = createdAt;
+    private volatile Long invoiceId;
+    private volatile String error;
+
+    public IngestionJob(String id, String fileName) {
+        this.id = id;
+        this.fileName = fileName;
+    }
+
+    public void moveTo(Stage stage) {
+        this.stage = stage;
+        this.updatedAt = Instant.now();
+    }
+
+    public void complete(Long invoiceId) {
+        this.invoiceId = invoiceId;
+        moveTo(Stage.DONE);
+    }
+
+    public void fail(String error) {
+        this.error = error;
+        moveTo(Stage.FAILED);
+    }
+
+    public boolean isFinished() {
+        return stage == Stage.DONE || stage == Stage.FAILED;
+    }
+
+    // Getters
+    public String getId() { return id; }
+    public String getFileName() { return fileName; }
+    public Instant getCreatedAt() { return createdAt; }
+    public Stage getStage() { return stage; }
+    public Instant getUpdatedAt() { return updatedAt; }
+    public Long getInvoiceId() { return invoiceId; }
+    public String getError() { return error; }
+}
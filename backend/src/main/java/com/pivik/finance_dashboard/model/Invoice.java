@@ -1,26 +1,41 @@
 package com.pivik.finance_dashboard.model;
 
+import com.pivik.finance_dashboard.config.JpaConfig;
+import jakarta.persistence.Cacheable;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.time.LocalDate;
 
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_invoice_date_id", columnList = "date, id"),                       // keyset paging walks this index
+        @Index(name = "idx_invoice_change_version", columnList = "changeVersion, id")})      // and delta sync this one
+@Cacheable // kept in the second-level cache between requests (see JpaConfig)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = JpaConfig.INVOICE_REGION)
 @Data // automatically creates my getters, setters, and tostring().
 @NoArgsConstructor
 @AllArgsConstructor
 public class Invoice {
 
     // @Id tells Spring this is the primary key
-    // @GeneratedValue means: "Auto-increment this number (1, 2, 3...)"
+    // @GeneratedValue means: "Give it the next number from the invoice_seq sequence"
+    // (ids are reserved 50 at a time so Hibernate can batch the inserts)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "invoice_seq")
+    @SequenceGenerator(name = "invoice_seq", sequenceName = "invoice_seq", allocationSize = 50)
     private Long id;
 
     // The fields of my table
@@ -33,6 +48,10 @@ public class Invoice {
     private String fileUrl;   // link to the file 
     private String project; // Will store "FED UP" or null
 
+    // Stamped by the database on every insert and update (see ChangeFeedService), never written from here
+    @Column(insertable = false, updatable = false)
+    private Long changeVersion;
+
     //Getters and setters for the FED-UP program.
     public String getProject() { return project; }
     public void setProject(String project) { this.project = project; }
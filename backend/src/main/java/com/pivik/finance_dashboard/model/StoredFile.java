@@ -0,0 +1,26 @@
+package com.pivik.finance_dashboard.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// One stored upload, named by the SHA-256 of its bytes and its extension. Identical uploads share the row
+// (and the file); refCount is how many invoices point at it, kept up to date on every invoice write.
+@Entity
+@Table(indexes = @Index(name = "idx_stored_file_ref_count", columnList = "refCount"))
+@Data
+@NoArgsConstructor
+public class StoredFile {
+
+    @Id
+    private String name;          // the file name: <hash>.<extension>, what invoice.fileUrl holds
+
+    private String hash;          // hex SHA-256 of the bytes
+    private String extension;     // "pdf"
+    private long size;
+    private long refCount;
+    private Instant lastStoredAt; // last time someone uploaded these bytes; unreferenced files get a grace period
+    private String originalName;  // the name it was first uploaded under
+}
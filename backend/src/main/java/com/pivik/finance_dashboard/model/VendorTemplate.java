@@ -0,0 +1,48 @@
+package com.pivik.finance_dashboard.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+// How to read one vendor's invoice layout without the AI, learned from invoices the user confirmed
+@Entity
+@Table(indexes = @Index(name = "idx_vendor_template_vendor", columnList = "vendor", unique = true))
+@Data
+@NoArgsConstructor
+public class VendorTemplate {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "vendor_template_seq")
+    @SequenceGenerator(name = "vendor_template_seq", sequenceName = "vendor_template_seq", allocationSize = 50)
+    private Long id;
+
+    private String vendor;       // as the user spelled it, e.g. "Costco"
+    private String category;
+
+    private String anchor;       // lowercase text that tells this vendor's invoices apart from the rest
+
+    // Regexes run against the extracted text; group 1 holds the value
+    @Column(length = 500)
+    private String invoiceNumberPattern;
+    @Column(length = 500)
+    private String amountPattern;
+    @Column(length = 500)
+    private String datePattern;
+    private String dateFormat;   // DateTimeFormatter pattern for the date group
+
+    private int confirmations;   // confirmed invoices this template read correctly (reset when it gets one wrong)
+
+    // The stored files behind those confirmations: saving the same invoice again doesn't count twice
+    @JsonIgnore
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "vendor_template_file", joinColumns = @JoinColumn(name = "template_id"))
+    @Column(name = "file_url")
+    private Set<String> confirmedFiles = new HashSet<>();
+    private long hitCount;       // uploads it handled instead of OpenAI
+    private Instant updatedAt;
+}
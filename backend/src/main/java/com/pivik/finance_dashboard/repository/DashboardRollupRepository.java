@@ -0,0 +1,27 @@
+package com.pivik.finance_dashboard.repository;
+
+import com.pivik.finance_dashboard.dto.GroupTotal;
+import com.pivik.finance_dashboard.model.DashboardRollup;
+import com.pivik.finance_dashboard.model.DashboardRollup.Dimension;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface DashboardRollupRepository extends JpaRepository<DashboardRollup, DashboardRollup.Key> {
+
+    // Totals per key of one dimension, over whole months (undated rows only when asked for: they are in no range)
+    @Query("SELECT new com.pivik.finance_dashboard.dto.GroupTotal(r.dimKey, SUM(r.total), SUM(r.rowCount)) " +
+           "FROM DashboardRollup r WHERE r.dimension = :dimension " +
+           "AND ((r.undated = false AND r.month BETWEEN :fromMonth AND :toMonth) OR (r.undated = true AND :withUndated = true)) " +
+           "GROUP BY r.dimKey HAVING SUM(r.rowCount) > 0 ORDER BY SUM(r.total) DESC")
+    List<GroupTotal> totalsByKey(Dimension dimension, LocalDate fromMonth, LocalDate toMonth, boolean withUndated);
+
+    // Totals per month of one dimension (every row is in exactly one key, so any dimension gives the same months)
+    @Query("SELECT r.month, SUM(r.total), SUM(r.rowCount) " +
+           "FROM DashboardRollup r WHERE r.dimension = :dimension AND r.undated = false " +
+           "AND r.month BETWEEN :fromMonth AND :toMonth " +
+           "GROUP BY r.month HAVING SUM(r.rowCount) > 0 ORDER BY r.month")
+    List<Object[]> totalsByMonth(Dimension dimension, LocalDate fromMonth, LocalDate toMonth);
+}
@@ -1,10 +1,31 @@
 package com.pivik.finance_dashboard.repository;
 
+import com.pivik.finance_dashboard.config.JpaConfig;
+import com.pivik.finance_dashboard.dto.GroupTotal;
 import com.pivik.finance_dashboard.model.Earning;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import java.time.LocalDate;
 import java.util.List;
 
-public interface EarningRepository extends JpaRepository<Earning, Long> {
-    // This helps us show the newest earnings at the top
+public interface EarningRepository extends JpaRepository<Earning, Long>, EarningRepositoryCustom {
+    // This helps us show the newest earnings at the top (from the query cache until an earning changes)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = JpaConfig.EARNING_QUERY_REGION)
+    })
     List<Earning> findAllByOrderByDateDesc();
+
+    // Earnings per source for a date range, added up by PostgreSQL
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = JpaConfig.EARNING_QUERY_REGION)
+    })
+    @Query("SELECT new com.pivik.finance_dashboard.dto.GroupTotal(e.source, SUM(e.amount), COUNT(e)) " +
+           "FROM Earning e WHERE e.date BETWEEN :startDate AND :endDate GROUP BY e.source ORDER BY SUM(e.amount) DESC")
+    List<GroupTotal> sumBySource(LocalDate startDate, LocalDate endDate);
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+package com.pivik.finance_dashboard.repository;
+
+import com.pivik.finance_dashboard.dto.CursorPage;
+import com.pivik.finance_dashboard.dto.EarningFilter;
+import com.pivik.finance_dashboard.dto.EarningSummary;
+import com.pivik.finance_dashboard.dto.PageCursor;
+
+// Queries that are easier to write by hand than as Spring Data method names
+public interface EarningRepositoryCustom {
+
+    // Newest first, filtered, one page at a time
+    CursorPage<EarningSummary> findPage(EarningFilter filter, PageCursor cursor, int limit);
+}
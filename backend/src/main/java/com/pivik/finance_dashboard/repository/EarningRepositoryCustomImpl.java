@@ -0,0 +1,36 @@
+package com.pivik.finance_dashboard.repository;
+
+import com.pivik.finance_dashboard.dto.CursorPage;
+import com.pivik.finance_dashboard.dto.EarningFilter;
+import com.pivik.finance_dashboard.dto.EarningSummary;
+import com.pivik.finance_dashboard.dto.PageCursor;
+import com.pivik.finance_dashboard.model.Earning;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Spring Data picks this up as the implementation of EarningRepositoryCustom
+class EarningRepositoryCustomImpl implements EarningRepositoryCustom {
+
+    private final KeysetPager<Earning, EarningSummary> pager;
+
+    EarningRepositoryCustomImpl(EntityManager entityManager, @Value("${pivik.listing.fetch-size:100}") int fetchSize) {
+        this.pager = new KeysetPager<>(entityManager, Earning.class, EarningSummary.class,
+                List.of("id", "date", "amount", "source"),
+                EarningSummary::date, EarningSummary::id, fetchSize);
+    }
+
+    @Override
+    public CursorPage<EarningSummary> findPage(EarningFilter filter, PageCursor cursor, int limit) {
+        return pager.page((cb, root) -> {
+            List<Predicate> where = new ArrayList<>();
+            if (filter.source() != null) where.add(cb.equal(root.get("source"), filter.source()));
+            if (filter.from() != null) where.add(cb.greaterThanOrEqualTo(root.get("date"), filter.from()));
+            if (filter.to() != null) where.add(cb.lessThanOrEqualTo(root.get("date"), filter.to()));
+            return where;
+        }, filter.from() == null && filter.to() == null, cursor, limit);
+    }
+}
@@ -0,0 +1,20 @@
+package com.pivik.finance_dashboard.repository;
+
+import com.pivik.finance_dashboard.model.ExtractionCacheEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface ExtractionCacheRepository extends JpaRepository<ExtractionCacheEntry, Long> {
+
+    Optional<ExtractionCacheEntry> findByFileHash(String fileHash);
+
+    Optional<ExtractionCacheEntry> findFirstByTextHash(String textHash);
+
+    // Oldest entries first, used to trim the cache back to its size limit
+    @Query("SELECT e.id FROM ExtractionCacheEntry e ORDER BY e.lastUsedAt ASC")
+    List<Long> findLeastRecentlyUsedIds(Pageable pageable);
+}
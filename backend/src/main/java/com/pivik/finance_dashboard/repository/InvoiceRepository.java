@@ -1,20 +1,89 @@
 package com.pivik.finance_dashboard.repository;
 
+import com.pivik.finance_dashboard.config.JpaConfig;
+import com.pivik.finance_dashboard.dto.GroupTotal;
+import com.pivik.finance_dashboard.dto.MonthlyTotal;
 import com.pivik.finance_dashboard.model.Invoice;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+
 import java.time.LocalDate;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 import java.util.List;
+import java.util.stream.Stream;
 
 // This interface facilitates the use of our database
 @Repository
-public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
+public interface InvoiceRepository extends JpaRepository<Invoice, Long>, InvoiceRepositoryCustom {
     // Spring automatically gives us: save(), findAll(), findById(), delete()
+    // (findById is answered from the second-level cache; the lists below from the query cache until an invoice changes.
+    // Not findAll: its one result is every invoice id, and once the entity cache can't hold them all, a hit
+    // would fetch the evicted invoices one query at a time.)
 
-    
-    // Find invoices between two dates (inclusive)
-    
+    // Find invoices between two dates (inclusive): the dashboard's short ranges, worth caching
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = JpaConfig.INVOICE_QUERY_REGION)
+    })
     List<Invoice> findByDateBetween(LocalDate startDate, LocalDate endDate);
+
+    // Same range for the ZIP exports, which can span a year: read past the caches, so one export doesn't
+    // evict the invoices everyone else is working on
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "GET")
+    })
+    @Query("SELECT i FROM Invoice i WHERE i.date BETWEEN :startDate AND :endDate")
+    List<Invoice> findForExport(LocalDate startDate, LocalDate endDate);
+
+    // Same range, read through a database cursor in report order (needs an open transaction). Sorted by the
+    // name the report groups under, no vendor being "Unknown", so each vendor is one run of rows
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "GET") // a year of invoices would flush the cache
+    })
+    @Query("SELECT i FROM Invoice i WHERE i.date BETWEEN :startDate AND :endDate " +
+           "ORDER BY coalesce(i.vendor, 'Unknown'), i.date, i.id")
+    Stream<Invoice> streamForReport(LocalDate startDate, LocalDate endDate);
+
+    // Spending totals for a date range, added up by PostgreSQL instead of the browser
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = JpaConfig.INVOICE_QUERY_REGION)
+    })
+    @Query("SELECT new com.pivik.finance_dashboard.dto.GroupTotal(i.vendor, SUM(i.amount), COUNT(i)) " +
+           "FROM Invoice i WHERE i.date BETWEEN :startDate AND :endDate GROUP BY i.vendor ORDER BY SUM(i.amount) DESC")
+    List<GroupTotal> sumByVendor(LocalDate startDate, LocalDate endDate);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = JpaConfig.INVOICE_QUERY_REGION)
+    })
+    @Query("SELECT new com.pivik.finance_dashboard.dto.GroupTotal(i.category, SUM(i.amount), COUNT(i)) " +
+           "FROM Invoice i WHERE i.date BETWEEN :startDate AND :endDate GROUP BY i.category ORDER BY SUM(i.amount) DESC")
+    List<GroupTotal> sumByCategory(LocalDate startDate, LocalDate endDate);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = JpaConfig.INVOICE_QUERY_REGION)
+    })
+    @Query("SELECT new com.pivik.finance_dashboard.dto.GroupTotal(i.project, SUM(i.amount), COUNT(i)) " +
+           "FROM Invoice i WHERE i.date BETWEEN :startDate AND :endDate GROUP BY i.project ORDER BY SUM(i.amount) DESC")
+    List<GroupTotal> sumByProject(LocalDate startDate, LocalDate endDate);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = JpaConfig.INVOICE_QUERY_REGION)
+    })
+    @Query("SELECT new com.pivik.finance_dashboard.dto.MonthlyTotal(YEAR(i.date), MONTH(i.date), SUM(i.amount), COUNT(i)) " +
+           "FROM Invoice i WHERE i.date BETWEEN :startDate AND :endDate " +
+           "GROUP BY YEAR(i.date), MONTH(i.date) ORDER BY YEAR(i.date), MONTH(i.date)")
+    List<MonthlyTotal> sumByMonth(LocalDate startDate, LocalDate endDate);
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+package com.pivik.finance_dashboard.repository;
+
+import com.pivik.finance_dashboard.dto.CursorPage;
+import com.pivik.finance_dashboard.dto.InvoiceFilter;
+import com.pivik.finance_dashboard.dto.InvoiceSummary;
+import com.pivik.finance_dashboard.dto.PageCursor;
+
+// Queries that are easier to write by hand than as Spring Data method names
+public interface InvoiceRepositoryCustom {
+
+    // Newest first, filtered, one page at a time
+    CursorPage<InvoiceSummary> findPage(InvoiceFilter filter, PageCursor cursor, int limit);
+}
@@ -0,0 +1,39 @@
+package com.pivik.finance_dashboard.repository;
+
+import com.pivik.finance_dashboard.dto.CursorPage;
+import com.pivik.finance_dashboard.dto.InvoiceFilter;
+import com.pivik.finance_dashboard.dto.InvoiceSummary;
+import com.pivik.finance_dashboard.dto.PageCursor;
+import com.pivik.finance_dashboard.model.Invoice;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Spring Data picks this up as the implementation of InvoiceRepositoryCustom
+class InvoiceRepositoryCustomImpl implements InvoiceRepositoryCustom {
+
+    private final KeysetPager<Invoice, InvoiceSummary> pager;
+
+    InvoiceRepositoryCustomImpl(EntityManager entityManager, @Value("${pivik.listing.fetch-size:100}") int fetchSize) {
+        this.pager = new KeysetPager<>(entityManager, Invoice.class, InvoiceSummary.class,
+                List.of("id", "vendor", "invoiceNumber", "amount", "date", "category", "status", "project", "fileUrl"),
+                InvoiceSummary::date, InvoiceSummary::id, fetchSize);
+    }
+
+    @Override
+    public CursorPage<InvoiceSummary> findPage(InvoiceFilter filter, PageCursor cursor, int limit) {
+        return pager.page((cb, root) -> {
+            List<Predicate> where = new ArrayList<>();
+            if (filter.vendor() != null) where.add(cb.equal(root.get("vendor"), filter.vendor()));
+            if (filter.status() != null) where.add(cb.equal(root.get("status"), filter.status()));
+            if (filter.category() != null) where.add(cb.equal(root.get("category"), filter.category()));
+            if (filter.project() != null) where.add(cb.equal(root.get("project"), filter.project()));
+            if (filter.from() != null) where.add(cb.greaterThanOrEqualTo(root.get("date"), filter.from()));
+            if (filter.to() != null) where.add(cb.lessThanOrEqualTo(root.get("date"), filter.to()));
+            return where;
+        }, filter.from() == null && filter.to() == null, cursor, limit);
+    }
+}
@@ -0,0 +1,104 @@
+package com.pivik.finance_dashboard.repository;
+
+import com.pivik.finance_dashboard.dto.CursorPage;
+import com.pivik.finance_dashboard.dto.PageCursor;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.hibernate.jpa.HibernateHints;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+// Shared keyset ("seek") paging over (date DESC, id DESC) for entities with a date and an id.
+// Each page is an index range scan that starts where the last one stopped, so page 500 costs the same as page 1.
+class KeysetPager<E, D> {
+
+    interface Filters<E> {
+        List<Predicate> build(CriteriaBuilder cb, Root<E> root);
+    }
+
+    private final EntityManager entityManager;
+    private final Class<E> entityType;
+    private final Class<D> rowType;
+    private final List<String> columns;     // constructor arguments of rowType, in order
+    private final Function<D, LocalDate> dateOf;
+    private final ToLongFunction<D> idOf;
+    private final int fetchSize;
+
+    KeysetPager(EntityManager entityManager, Class<E> entityType, Class<D> rowType, List<String> columns,
+                Function<D, LocalDate> dateOf, ToLongFunction<D> idOf, int fetchSize) {
+        this.entityManager = entityManager;
+        this.entityType = entityType;
+        this.rowType = rowType;
+        this.columns = columns;
+        this.dateOf = dateOf;
+        this.idOf = idOf;
+        this.fetchSize = fetchSize;
+    }
+
+    // Rows without a date come after all dated rows; they are only reachable when no date range is given
+    CursorPage<D> page(Filters<E> filters, boolean includeUndated, PageCursor cursor, int limit) {
+        List<D> rows = new ArrayList<>(limit + 1);
+        boolean inUndatedTail = cursor != null && cursor.date() == null;
+
+        // 1. Dated rows after the cursor (one extra row tells us if there is a next page)
+        if (!inUndatedTail) {
+            rows.addAll(query(filters, true, cursor, limit + 1));
+        }
+
+        // 2. Top up from the undated tail once the dated rows run out
+        if (includeUndated && rows.size() <= limit) {
+            rows.addAll(query(filters, false, inUndatedTail ? cursor : null, limit + 1 - rows.size()));
+        }
+
+        boolean hasMore = rows.size() > limit;
+        if (!hasMore) {
+            return new CursorPage<>(rows, null);
+        }
+
+        List<D> items = rows.subList(0, limit);
+        D last = items.get(limit - 1);
+        return new CursorPage<>(items, new PageCursor(dateOf.apply(last), idOf.applyAsLong(last)).encode());
+    }
+
+    private List<D> query(Filters<E> filters, boolean dated, PageCursor cursor, int maxRows) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<D> query = cb.createQuery(rowType);
+        Root<E> root = query.from(entityType);
+        query.select(cb.construct(rowType, columns.stream().map(root::get).toArray(Selection[]::new)));
+
+        Path<LocalDate> date = root.get("date");
+        Path<Long> id = root.get("id");
+        List<Predicate> where = new ArrayList<>(filters.build(cb, root));
+
+        if (dated) {
+            where.add(cb.isNotNull(date));
+            if (cursor != null) {
+                where.add(cb.or(
+                        cb.lessThan(date, cursor.date()),
+                        cb.and(cb.equal(date, cursor.date()), cb.lessThan(id, cursor.id()))));
+            }
+            query.orderBy(cb.desc(date), cb.desc(id));
+        } else {
+            where.add(cb.isNull(date));
+            if (cursor != null) {
+                where.add(cb.lessThan(id, cursor.id()));
+            }
+            query.orderBy(cb.desc(id));
+        }
+        query.where(where.toArray(Predicate[]::new));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(maxRows)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .getResultList();
+    }
+}
@@ -0,0 +1,19 @@
+package com.pivik.finance_dashboard.repository;
+
+import com.pivik.finance_dashboard.model.VendorTemplate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+public interface VendorTemplateRepository extends JpaRepository<VendorTemplate, Long> {
+
+    Optional<VendorTemplate> findByVendor(String vendor);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE VendorTemplate t SET t.hitCount = t.hitCount + :hits WHERE t.id = :id")
+    void addHits(Long id, long hits);
+}
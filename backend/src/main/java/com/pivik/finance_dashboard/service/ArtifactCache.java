@@ -0,0 +1,209 @@
+package com.pivik.finance_dashboard.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service // Keeps generated reports/ZIPs on disk, keyed by (type, date range, data version)
+public class ArtifactCache {
+
+    public interface ArtifactWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    // "temporary" artifacts were built while the data changed underneath them: serve once, then delete
+    public record Artifact(Path path, String etag, long size, boolean temporary) {}
+
+    public record Stats(long hits, long misses, int entries, long bytes, long maxBytes) {}
+
+    private static final Logger log = LoggerFactory.getLogger(ArtifactCache.class);
+
+    private final DataVersionService dataVersionService;
+    private final MeterRegistry meterRegistry;
+    private final Path directory;
+    private final long maxBytes;
+
+    // ETags must not survive a restart: data versions start again from zero
+    private final String bootId = Long.toString(System.currentTimeMillis(), 36);
+
+    // Least recently used first; guarded by "this"
+    private final LinkedHashMap<String, Artifact> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    // One build per key at a time; everyone else asking for the same artifact waits for it
+    private final Map<String, CompletableFuture<Artifact>> building = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ArtifactCache(DataVersionService dataVersionService,
+                         MeterRegistry meterRegistry,
+                         @Value("${pivik.artifact-cache.dir:cache/artifacts}") String directory,
+                         @Value("${pivik.artifact-cache.max-bytes:536870912}") long maxBytes) {
+        this.dataVersionService = dataVersionService;
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxBytes;
+        this.meterRegistry = meterRegistry;
+
+        FunctionCounter.builder("pivik.artifact.cache", hits, AtomicLong::get).tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("pivik.artifact.cache", misses, AtomicLong::get).tag("result", "miss").register(meterRegistry);
+        Gauge.builder("pivik.artifact.cache.size", this, cache -> cache.stats().bytes()).baseUnit("bytes").register(meterRegistry);
+
+        try {
+            Files.createDirectories(this.directory);
+            // Leftovers from the last run have versions we can no longer check
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory)) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not initialize artifact cache folder!", e);
+        }
+    }
+
+    public Artifact get(String type, LocalDate startDate, LocalDate endDate, ArtifactWriter writer) throws IOException {
+        long version = dataVersionService.versionOf(startDate, endDate);
+        String key = type + "_" + startDate + "_" + endDate + "_v" + version;
+
+        Artifact cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+
+        CompletableFuture<Artifact> mine = new CompletableFuture<>();
+        CompletableFuture<Artifact> running = building.putIfAbsent(key, mine);
+        if (running != null) {
+            Artifact built = awaitBuild(running);
+            // A temporary artifact belongs to the request that built it; the data has moved on, so look again
+            return built.temporary() ? get(type, startDate, endDate, writer) : built;
+        }
+
+        try {
+            Artifact built = build(type, key, version, startDate, endDate, writer);
+            mine.complete(built);
+            return built;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            building.remove(key, mine);
+        }
+    }
+
+    public Stats stats() {
+        synchronized (this) {
+            return new Stats(hits.get(), misses.get(), entries.size(), totalBytes, maxBytes);
+        }
+    }
+
+    private synchronized Artifact lookup(String key) {
+        Artifact artifact = entries.get(key);
+        if (artifact != null && !Files.exists(artifact.path())) {
+            entries.remove(key);
+            totalBytes -= artifact.size();
+            return null;
+        }
+        return artifact;
+    }
+
+    private Artifact build(String type, String key, long version, LocalDate startDate, LocalDate endDate, ArtifactWriter writer) throws IOException {
+        // 1. Render to a temp file next to the cache, so the move below is atomic
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+        long started = System.nanoTime();
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+            writer.write(out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        long size = Files.size(temp);
+        Timer.builder("pivik.report.build").tag("type", type).register(meterRegistry)
+                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("pivik.report.size").tag("type", type).baseUnit("bytes").register(meterRegistry)
+                .record(size);
+        String etag = "\"" + key + "-" + bootId + "\"";
+
+        // 2. Only keep it if no invoice in the range changed while we were rendering
+        if (dataVersionService.versionOf(startDate, endDate) != version) {
+            return new Artifact(temp, etag, size, true);
+        }
+
+        Path target = directory.resolve(key);
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Artifact artifact = new Artifact(target, etag, size, false);
+        store(type + "_" + startDate + "_" + endDate + "_v", key, artifact);
+        return artifact;
+    }
+
+    // 3. Add, replacing older versions of the same artifact, then drop least recently used
+    //    artifacts until we are back under the byte budget
+    private synchronized void store(String versionPrefix, String key, Artifact artifact) {
+        entries.entrySet().removeIf(entry -> {
+            boolean outdated = entry.getKey().startsWith(versionPrefix) && !entry.getKey().equals(key);
+            if (outdated) {
+                discard(entry.getValue());
+            }
+            return outdated;
+        });
+
+        Artifact previous = entries.put(key, artifact);
+        if (previous != null) {
+            totalBytes -= previous.size();
+        }
+        totalBytes += artifact.size();
+
+        Iterator<Map.Entry<String, Artifact>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && entries.size() > 1 && eldest.hasNext()) {
+            Artifact evicted = eldest.next().getValue();
+            eldest.remove();
+            discard(evicted);
+        }
+    }
+
+    private void discard(Artifact artifact) {
+        totalBytes -= artifact.size();
+        try {
+            Files.deleteIfExists(artifact.path()); // a download already reading it keeps its open handle
+        } catch (IOException e) {
+            log.warn("Could not delete cached artifact path={} error={}", artifact.path(), e.getMessage());
+        }
+    }
+
+    private static Artifact awaitBuild(CompletableFuture<Artifact> running) throws IOException {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.dto.SyncChanges;
+import com.pivik.finance_dashboard.dto.SyncCursor;
+import com.pivik.finance_dashboard.model.Earning;
+import com.pivik.finance_dashboard.model.Invoice;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Delta sync for the dashboard: what was created, edited or deleted since a client's cursor.
+//
+// Every insert and update of an invoice or earning is stamped (by a trigger) with the id of the transaction
+// that wrote it, and every delete leaves a tombstone stamped the same way. Transaction ids only grow, but they
+// don't commit in order: a long transaction can commit an older version after a newer one was sent. So a round
+// of changes ends at the horizon of its first snapshot (the oldest transaction still running then) instead of at
+// the newest version sent; anything that was still in flight is sent again next round, never skipped.
+@Service
+public class ChangeFeedService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangeFeedService.class);
+
+    // Changes come in (version, kind, id) order
+    static final int INVOICE = 0;
+    static final int EARNING = 1;
+    static final int DELETED_INVOICE = 2;
+    static final int DELETED_EARNING = 3;
+
+    private static final String VERSION = "pg_current_xact_id()::text::bigint";
+    private static final String HORIZON_SQL = "SELECT pg_snapshot_xmin(pg_current_snapshot())::text::bigint";
+
+    private static final String INVOICES_SQL =
+            "SELECT * FROM invoice WHERE (change_version, id) > (?, ?) ORDER BY change_version, id LIMIT ?";
+    private static final String EARNINGS_SQL =
+            "SELECT * FROM earning WHERE (change_version, id) > (?, ?) ORDER BY change_version, id LIMIT ?";
+    private static final String TOMBSTONES_SQL =
+            "SELECT entity_id, change_version FROM sync_tombstone WHERE entity = ? AND (change_version, entity_id) > (?, ?) " +
+            "ORDER BY change_version, entity_id LIMIT ?";
+
+    private static final RowMapper<Invoice> INVOICE_MAPPER = new BeanPropertyRowMapper<>(Invoice.class);
+    private static final RowMapper<Earning> EARNING_MAPPER = new BeanPropertyRowMapper<>(Earning.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate feedTransaction;
+    private final int tombstoneRetentionDays;
+
+    private record Change(int kind, long id, long version, Object row) {}
+
+    // The EntityManagerFactory is only here so Hibernate has created the tables before we run
+    public ChangeFeedService(JdbcTemplate jdbcTemplate,
+                             TransactionTemplate transactionTemplate,
+                             EntityManagerFactory entityManagerFactory,
+                             @Value("${pivik.sync.tombstone-retention-days:90}") int tombstoneRetentionDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.tombstoneRetentionDays = tombstoneRetentionDays;
+        // One snapshot for the horizon and all four reads
+        this.feedTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.feedTransaction.setReadOnly(true);
+        this.feedTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    }
+
+    // Triggers rather than entity callbacks, so plain-SQL writes (the earnings import) are stamped too
+    @PostConstruct
+    public void installTriggers() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS sync_tombstone (entity varchar(16) NOT NULL, " +
+                "entity_id bigint NOT NULL, change_version bigint NOT NULL, deleted_at timestamptz NOT NULL DEFAULT now(), " +
+                "PRIMARY KEY (entity, entity_id))");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_sync_tombstone_version " +
+                "ON sync_tombstone (entity, change_version, entity_id)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS sync_state (name varchar(64) PRIMARY KEY, value bigint NOT NULL)");
+
+        jdbcTemplate.execute("CREATE OR REPLACE FUNCTION pivik_stamp_change() RETURNS trigger LANGUAGE plpgsql AS $$ " +
+                "BEGIN NEW.change_version := " + VERSION + "; RETURN NEW; END $$");
+        jdbcTemplate.execute("CREATE OR REPLACE FUNCTION pivik_record_tombstone() RETURNS trigger LANGUAGE plpgsql AS $$ " +
+                "BEGIN INSERT INTO sync_tombstone (entity, entity_id, change_version) VALUES (TG_ARGV[0], OLD.id, " + VERSION + ") " +
+                "ON CONFLICT (entity, entity_id) DO UPDATE SET change_version = EXCLUDED.change_version, deleted_at = now(); " +
+                "RETURN OLD; END $$");
+        for (String table : List.of("invoice", "earning")) {
+            jdbcTemplate.execute("DROP TRIGGER IF EXISTS " + table + "_stamp_change ON " + table);
+            jdbcTemplate.execute("CREATE TRIGGER " + table + "_stamp_change BEFORE INSERT OR UPDATE ON " + table +
+                    " FOR EACH ROW EXECUTE FUNCTION pivik_stamp_change()");
+            jdbcTemplate.execute("DROP TRIGGER IF EXISTS " + table + "_tombstone ON " + table);
+            jdbcTemplate.execute("CREATE TRIGGER " + table + "_tombstone AFTER DELETE ON " + table +
+                    " FOR EACH ROW EXECUTE FUNCTION pivik_record_tombstone('" + table + "')");
+            // Rows from before the column existed (the trigger fills in the version)
+            int stamped = jdbcTemplate.update("UPDATE " + table + " SET change_version = 0 WHERE change_version IS NULL");
+            if (stamped > 0) {
+                log.info("Stamped change versions table={} rows={}", table, stamped);
+            }
+        }
+    }
+
+    // Old tombstones go; a client whose cursor is older than the last one dropped has to reload everything
+    @EventListener(ApplicationReadyEvent.class)
+    public void pruneTombstones() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Long newest = jdbcTemplate.queryForObject("WITH gone AS (DELETE FROM sync_tombstone " +
+                    "WHERE deleted_at < now() - make_interval(days => ?) RETURNING change_version) " +
+                    "SELECT max(change_version) FROM gone", Long.class, tombstoneRetentionDays);
+            if (newest != null) {
+                jdbcTemplate.update("INSERT INTO sync_state (name, value) VALUES ('tombstone_floor', ?) " +
+                        "ON CONFLICT (name) DO UPDATE SET value = GREATEST(sync_state.value, EXCLUDED.value)", newest + 1);
+            }
+        });
+    }
+
+    // Fails with 400 for a cursor we didn't hand out, 410 for one too old to be answered exactly
+    public SyncCursor validate(String cursor) {
+        SyncCursor decoded = SyncCursor.decode(cursor);
+        if (decoded.since() > 0) {
+            List<Long> floor = jdbcTemplate.queryForList("SELECT value FROM sync_state WHERE name = 'tombstone_floor'", Long.class);
+            if (!floor.isEmpty() && decoded.since() < floor.get(0)) {
+                throw new ResponseStatusException(HttpStatus.GONE, "Cursor is too old, reload everything and sync from there");
+            }
+        }
+        return decoded;
+    }
+
+    // Where a client that has just loaded everything should start (nothing to send yet)
+    public String currentCursor() {
+        return SyncCursor.start(jdbcTemplate.queryForObject(HORIZON_SQL, Long.class)).encode();
+    }
+
+    public SyncChanges changes(String cursorToken, int limit) {
+        SyncCursor cursor = validate(cursorToken);
+        return feedTransaction.execute(status -> {
+            long horizon = cursor.horizon() > 0 ? cursor.horizon() : jdbcTemplate.queryForObject(HORIZON_SQL, Long.class);
+
+            // Each source walks its own (change_version, id) index from the cursor; merged, the first "limit" win
+            List<Change> changes = new ArrayList<>();
+            jdbcTemplate.query(INVOICES_SQL, INVOICE_MAPPER, cursor.version(), idAfter(cursor, INVOICE), limit + 1)
+                    .forEach(invoice -> changes.add(new Change(INVOICE, invoice.getId(), invoice.getChangeVersion(), invoice)));
+            jdbcTemplate.query(EARNINGS_SQL, EARNING_MAPPER, cursor.version(), idAfter(cursor, EARNING), limit + 1)
+                    .forEach(earning -> changes.add(new Change(EARNING, earning.getId(), earning.getChangeVersion(), earning)));
+            addTombstones(changes, "invoice", DELETED_INVOICE, cursor, limit);
+            addTombstones(changes, "earning", DELETED_EARNING, cursor, limit);
+            changes.sort(Comparator.comparingLong(Change::version).thenComparingInt(Change::kind).thenComparingLong(Change::id));
+
+            boolean hasMore = changes.size() > limit;
+            List<Change> page = hasMore ? changes.subList(0, limit) : changes;
+            List<Invoice> invoices = new ArrayList<>();
+            List<Earning> earnings = new ArrayList<>();
+            List<Long> deletedInvoices = new ArrayList<>();
+            List<Long> deletedEarnings = new ArrayList<>();
+            for (Change change : page) {
+                switch (change.kind()) {
+                    case INVOICE -> invoices.add((Invoice) change.row());
+                    case EARNING -> earnings.add((Earning) change.row());
+                    case DELETED_INVOICE -> deletedInvoices.add(change.id());
+                    default -> deletedEarnings.add(change.id());
+                }
+            }
+
+            Change last = page.isEmpty() ? null : page.get(page.size() - 1);
+            SyncCursor next = hasMore
+                    ? new SyncCursor(cursor.since(), horizon, last.version(), last.kind(), last.id())
+                    : SyncCursor.start(horizon);
+            return new SyncChanges(invoices, earnings, deletedInvoices, deletedEarnings, next.encode(), hasMore);
+        });
+    }
+
+    private void addTombstones(List<Change> changes, String entity, int kind, SyncCursor cursor, int limit) {
+        jdbcTemplate.query(TOMBSTONES_SQL, rs -> {
+            changes.add(new Change(kind, rs.getLong(1), rs.getLong(2), null));
+        }, entity, cursor.version(), idAfter(cursor, kind), limit + 1);
+    }
+
+    // With (change_version, id) > (cursor.version, idAfter): a later kind starts at the cursor's version,
+    // the cursor's own kind right after its id, an earlier kind only at the next version
+    private static long idAfter(SyncCursor cursor, int kind) {
+        if (kind > cursor.kind()) {
+            return 0;
+        }
+        return kind == cursor.kind() ? cursor.id() : Long.MAX_VALUE;
+    }
+}
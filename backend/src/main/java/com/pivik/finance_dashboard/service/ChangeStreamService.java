@@ -0,0 +1,193 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.dto.SyncChanges;
+import com.pivik.finance_dashboard.event.EarningChangedEvent;
+import com.pivik.finance_dashboard.event.EarningsImportedEvent;
+import com.pivik.finance_dashboard.event.InvoiceChangedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Service // Pushes the change feed to open dashboards over Server-Sent Events, so they never have to poll
+public class ChangeStreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangeStreamService.class);
+
+    private final ChangeFeedService changeFeed;
+    private final long pushDelayMillis;
+    private final long heartbeatSeconds;
+    private final long streamTimeoutMillis;
+    private final int pageSize;
+
+    // Each open stream and the cursor of the last changes it was sent
+    private final Map<SseEmitter, String> cursors = new ConcurrentHashMap<>();
+    private final AtomicBoolean pushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService pusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sync-push");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ChangeStreamService(ChangeFeedService changeFeed,
+                               MeterRegistry meterRegistry,
+                               @Value("${pivik.sync.push-delay-ms:200}") long pushDelayMillis,
+                               @Value("${pivik.sync.heartbeat-seconds:30}") long heartbeatSeconds,
+                               @Value("${pivik.sync.stream-timeout-minutes:30}") long streamTimeoutMinutes,
+                               @Value("${pivik.sync.page-size:500}") int pageSize) {
+        this.changeFeed = changeFeed;
+        this.pushDelayMillis = pushDelayMillis;
+        this.heartbeatSeconds = heartbeatSeconds;
+        this.streamTimeoutMillis = TimeUnit.MINUTES.toMillis(streamTimeoutMinutes);
+        this.pageSize = pageSize;
+        meterRegistry.gauge("pivik.sync.streams", cursors, Map::size);
+    }
+
+    // The heartbeat keeps idle connections open through proxies, drops dead ones, and catches writes
+    // this instance didn't see (another instance, a manual fix in SQL)
+    @PostConstruct
+    public void start() {
+        pusher.scheduleWithFixedDelay(this::heartbeat, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        pusher.shutdownNow();
+        cursors.keySet().forEach(SseEmitter::complete);
+    }
+
+    // "since" is a cursor from /api/sync/changes or the id of the last event received (browsers send it back
+    // as Last-Event-ID when they reconnect); without one, the stream starts from now
+    public SseEmitter subscribe(String since) {
+        String cursor = since != null && !since.isBlank() ? since : changeFeed.currentCursor();
+        changeFeed.validate(cursor);
+
+        SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+        emitter.onCompletion(() -> cursors.remove(emitter));
+        emitter.onTimeout(() -> cursors.remove(emitter));
+        emitter.onError(e -> cursors.remove(emitter));
+        try {
+            // Sent before the stream is registered, so only this thread writes to it until then
+            emitter.send(SseEmitter.event().comment("connected"));
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+            return emitter;
+        }
+        cursors.put(emitter, cursor);
+        schedulePush(0); // catch up from the client's cursor
+        return emitter;
+    }
+
+    // Any write, once committed, means a push soon; writes close together share one
+    @EventListener
+    public void onInvoiceChanged(InvoiceChangedEvent event) {
+        afterCommit();
+    }
+
+    @EventListener
+    public void onEarningChanged(EarningChangedEvent event) {
+        afterCommit();
+    }
+
+    @EventListener
+    public void onEarningsImported(EarningsImportedEvent event) {
+        afterCommit();
+    }
+
+    private void afterCommit() {
+        if (cursors.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    schedulePush(pushDelayMillis);
+                }
+            });
+        } else {
+            schedulePush(pushDelayMillis);
+        }
+    }
+
+    private void schedulePush(long delayMillis) {
+        if (pushScheduled.compareAndSet(false, true)) {
+            pusher.schedule(this::push, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Runs on the push thread only, so no two sends to the same stream overlap
+    private void push() {
+        pushScheduled.set(false);
+
+        // Streams that are caught up share a cursor, so one query serves all of them
+        Map<String, List<SseEmitter>> byCursor = new HashMap<>();
+        cursors.forEach((emitter, cursor) -> byCursor.computeIfAbsent(cursor, c -> new ArrayList<>()).add(emitter));
+
+        boolean more = false;
+        for (Map.Entry<String, List<SseEmitter>> group : byCursor.entrySet()) {
+            SyncChanges changes;
+            try {
+                changes = changeFeed.changes(group.getKey(), pageSize);
+            } catch (RuntimeException e) {
+                // e.g. a cursor that has become too old: those clients reconnect and reload
+                log.warn("Change stream query failed, closing streams={}: {}", group.getValue().size(), e.getMessage());
+                group.getValue().forEach(emitter -> emitter.completeWithError(e));
+                continue;
+            }
+            boolean empty = changes.invoices().isEmpty() && changes.earnings().isEmpty()
+                    && changes.deletedInvoices().isEmpty() && changes.deletedEarnings().isEmpty();
+            for (SseEmitter emitter : group.getValue()) {
+                if (!empty && !send(emitter, SseEmitter.event().id(changes.cursor()).name("changes")
+                        .data(changes, MediaType.APPLICATION_JSON))) {
+                    continue;
+                }
+                cursors.replace(emitter, group.getKey(), changes.cursor());
+            }
+            more |= changes.hasMore();
+        }
+        if (more) {
+            schedulePush(0);
+        }
+    }
+
+    private void heartbeat() {
+        for (SseEmitter emitter : cursors.keySet()) {
+            send(emitter, SseEmitter.event().comment("heartbeat"));
+        }
+        if (!cursors.isEmpty()) {
+            schedulePush(0);
+        }
+    }
+
+    private boolean send(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // The client went away; the container may not have noticed yet
+            cursors.remove(emitter);
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+}
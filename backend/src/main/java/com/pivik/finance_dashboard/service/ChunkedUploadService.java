@@ -0,0 +1,278 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.dto.UploadStatus;
+import com.pivik.finance_dashboard.model.IngestionJob;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Resumable uploads for big scans over bad connections: start an upload, send it in chunks, finish it.
+// A dropped chunk costs only itself: the client asks how much arrived and carries on from there.
+//
+// Chunks are written where the file will be stored (the incoming folder, one rename away from storage) and
+// hashed as they arrive, so finishing is a rename and the bytes are never read back or copied.
+// Chunks have to come in order, which is what lets the hash keep up without rereading anything.
+@Service
+public class ChunkedUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkedUploadService.class);
+
+    private static final String PART_PREFIX = "chunked-";
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final FileStorageService fileStorageService;
+    private final InvoiceIngestionService ingestionService;
+    private final long maxBytes;
+    private final Duration expiry;
+
+    // Kept in memory like ingestion jobs: after a restart the client starts over
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+
+    // One upload in progress. Guarded by itself: one chunk at a time
+    private static class Upload {
+        final String id;
+        final String fileName;
+        final Long length;
+        final Path part;
+        final FileChannel channel;
+        final MessageDigest digest;
+        long received;
+        volatile Instant updatedAt = Instant.now();
+        boolean closed;
+
+        Upload(String id, String fileName, Long length, Path part, FileChannel channel, MessageDigest digest) {
+            this.id = id;
+            this.fileName = fileName;
+            this.length = length;
+            this.part = part;
+            this.channel = channel;
+            this.digest = digest;
+        }
+
+        UploadStatus status() {
+            return new UploadStatus(id, fileName, length, received);
+        }
+    }
+
+    public ChunkedUploadService(FileStorageService fileStorageService,
+                                InvoiceIngestionService ingestionService,
+                                MeterRegistry meterRegistry,
+                                @Value("${pivik.upload.max-bytes:104857600}") long maxBytes,
+                                @Value("${pivik.upload.expiry-hours:24}") long expiryHours) {
+        this.fileStorageService = fileStorageService;
+        this.ingestionService = ingestionService;
+        this.maxBytes = maxBytes;
+        this.expiry = Duration.ofHours(expiryHours);
+        meterRegistry.gauge("pivik.upload.in_progress", uploads, Map::size);
+    }
+
+    // Parts from before a restart belong to uploads nobody can finish any more
+    @EventListener(ApplicationReadyEvent.class)
+    public void deleteLeftovers() {
+        try (DirectoryStream<Path> parts = Files.newDirectoryStream(fileStorageService.incomingDirectory(), PART_PREFIX + "*")) {
+            for (Path part : parts) {
+                Files.deleteIfExists(part);
+            }
+        } catch (IOException e) {
+            log.warn("Could not delete leftover upload parts: {}", e.getMessage());
+        }
+    }
+
+    public UploadStatus start(String fileName, Long length) {
+        if (length != null && (length < 0 || length > maxBytes)) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "Uploads are limited to " + maxBytes + " bytes");
+        }
+        pruneExpired();
+
+        String id = UUID.randomUUID().toString();
+        Path part = fileStorageService.incomingDirectory().resolve(PART_PREFIX + id + ".part");
+        try {
+            FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            Upload upload = new Upload(id, fileName, length, part, channel, newDigest());
+            uploads.put(id, upload);
+            return upload.status();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start upload " + fileName, e);
+        }
+    }
+
+    public UploadStatus status(String id) {
+        Upload upload = find(id);
+        synchronized (upload) {
+            return upload.status();
+        }
+    }
+
+    // Writes the chunk at "offset", which must not be past what has arrived. A chunk sent again because its
+    // answer got lost overlaps what we have; that part is skipped. If the connection drops halfway, whatever
+    // arrived is kept and counted.
+    public UploadStatus write(String id, long offset, InputStream body) {
+        Upload upload = find(id);
+        synchronized (upload) {
+            checkOpen(upload);
+            if (offset < 0 || offset > upload.received) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                        "Upload " + id + " has " + upload.received + " bytes, send the next chunk from there");
+            }
+
+            byte[] bytes = new byte[BUFFER_BYTES];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long position = offset;
+            try {
+                int read;
+                while ((read = body.read(bytes)) != -1) {
+                    // Skip what we already have, write and hash the rest in place
+                    int skip = (int) Math.max(0, Math.min(read, upload.received - position));
+                    position += read;
+                    if (skip == read) {
+                        continue;
+                    }
+                    if (upload.received + (read - skip) > limit(upload)) {
+                        throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                                "Upload " + id + " is longer than " + limit(upload) + " bytes");
+                    }
+                    buffer.limit(read).position(skip);
+                    long at = upload.received;
+                    while (buffer.hasRemaining()) {
+                        at += upload.channel.write(buffer, at);
+                    }
+                    upload.digest.update(bytes, skip, read - skip);
+                    upload.received = at;
+                }
+            } catch (IOException e) {
+                // Usually the client going away mid-chunk; it resumes from "received"
+                log.debug("Chunk interrupted upload={} received={} error={}", id, upload.received, e.getMessage());
+            } finally {
+                upload.updatedAt = Instant.now();
+            }
+            return upload.status();
+        }
+    }
+
+    // Checks the upload is whole (and matches "sha256" when the client sent one), stores it by renaming it,
+    // and queues it for extraction. If the pipeline is full the upload stays, so finishing can be retried.
+    public IngestionJob complete(String id, String sha256) {
+        Upload upload = find(id);
+        synchronized (upload) {
+            checkOpen(upload);
+            if (upload.length != null && upload.received != upload.length) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                        "Upload " + id + " has " + upload.received + " of " + upload.length + " bytes");
+            }
+
+            // Hash a copy, so a failed finish leaves the running hash usable
+            String hash;
+            try {
+                hash = HexFormat.of().formatHex(((MessageDigest) upload.digest.clone()).digest());
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException("SHA-256 digest can't be copied", e);
+            }
+            if (sha256 != null && !sha256.isBlank() && !sha256.equalsIgnoreCase(hash)) {
+                discard(upload);
+                throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                        "Upload " + id + " arrived damaged (SHA-256 " + hash + "), start it again");
+            }
+
+            IngestionJob job;
+            try {
+                job = ingestionService.submit(upload.fileName, "chunked", () -> {
+                    try {
+                        upload.closed = true;
+                        upload.channel.truncate(upload.received); // a write that failed halfway may have left more
+                        upload.channel.close();
+                        return fileStorageService.storeHashed(upload.part, hash, upload.received, upload.fileName);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to store upload " + upload.fileName, e);
+                    }
+                });
+            } catch (RuntimeException e) {
+                if (upload.closed) {
+                    discard(upload); // got as far as storing it, so it can't be finished again
+                }
+                throw e;
+            }
+            discard(upload); // moved into storage by now, unless the same bytes were there already
+            return job;
+        }
+    }
+
+    public void cancel(String id) {
+        Upload upload = find(id);
+        synchronized (upload) {
+            discard(upload);
+        }
+    }
+
+    private Upload find(String id) {
+        Upload upload = uploads.get(id);
+        if (upload == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No upload " + id + ", start it again");
+        }
+        return upload;
+    }
+
+    // Lost the race with complete() or cancel()
+    private static void checkOpen(Upload upload) {
+        if (upload.closed) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No upload " + upload.id + ", start it again");
+        }
+    }
+
+    private long limit(Upload upload) {
+        return upload.length != null ? upload.length : maxBytes;
+    }
+
+    private void discard(Upload upload) {
+        uploads.remove(upload.id, upload);
+        upload.closed = true;
+        try {
+            upload.channel.close();
+            Files.deleteIfExists(upload.part);
+        } catch (IOException e) {
+            log.warn("Could not delete upload part path={} error={}", upload.part, e.getMessage());
+        }
+    }
+
+    private void pruneExpired() {
+        Instant cutoff = Instant.now().minus(expiry);
+        for (Upload upload : uploads.values()) {
+            if (upload.updatedAt.isBefore(cutoff)) {
+                synchronized (upload) {
+                    discard(upload);
+                }
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.dto.GroupTotal;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// One table held as parallel primitive arrays, sorted by day: ids, epoch days, amounts in cents,
+// and one dictionary-encoded int column per grouping dimension (vendor, category, ...).
+// Range totals come from a Fenwick tree over days; group-bys add up the rows of the range, which sit next
+// to each other because of the sort. Not thread-safe: ColumnarStore locks around it.
+final class ColumnTable {
+
+    record Total(long cents, long count) {}
+
+    record Row(long id, LocalDate date, Double amount, String... keyValues) {}
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int DAY_MARGIN = 366; // room around the known days before the tree is rebuilt
+
+    // The tree spans every day between the first and last row, so one typo'd year (0202, 20025) would make it
+    // millions of days long. Rows dated outside these bounds are left out, like undated ones.
+    static final LocalDate FIRST_DATE = LocalDate.of(1900, 1, 1);
+    static final LocalDate LAST_DATE = LocalDate.of(2199, 12, 31);
+
+    private final Dictionary[] dictionaries;
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private int[] days = new int[INITIAL_CAPACITY];
+    private long[] cents = new long[INITIAL_CAPACITY];
+    private final int[][] keys;                       // keys[dimension][row]
+    private int size;
+
+    // Which day a row sits on, so a change can find it with a binary search
+    private final Map<Long, Integer> dayById = new HashMap<>();
+
+    // Fenwick tree over days [firstDay, firstDay + length): range sums in O(log days)
+    private int firstDay;
+    private long[] treeCents = new long[0];
+    private long[] treeCounts = new long[0];
+
+    ColumnTable(int dimensions) {
+        this.dictionaries = new Dictionary[dimensions];
+        this.keys = new int[dimensions][INITIAL_CAPACITY];
+        for (int d = 0; d < dimensions; d++) {
+            dictionaries[d] = new Dictionary();
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    // 1. Writes: a row is replaced whole (idempotent, so replaying a change is harmless)
+
+    void upsert(long id, LocalDate date, Double amount, String... keyValues) {
+        remove(id);
+        if (!holds(date)) {
+            return; // undated rows never fall inside a date range
+        }
+        int day = (int) date.toEpochDay();
+        long amountCents = amount != null ? Math.round(amount * 100) : 0;
+
+        ensureCapacity(size + 1);
+        int row = upperBound(day); // after the rows of the same day, so loading in date order only appends
+        shift(row, row + 1, size - row);
+        ids[row] = id;
+        days[row] = day;
+        cents[row] = amountCents;
+        for (int d = 0; d < keys.length; d++) {
+            keys[d][row] = dictionaries[d].idOf(keyValues[d]);
+        }
+        size++;
+        dayById.put(id, day);
+        addToTree(day, amountCents, 1);
+    }
+
+    void remove(long id) {
+        Integer day = dayById.remove(id);
+        if (day == null) {
+            return;
+        }
+        for (int row = lowerBound(day), end = upperBound(day); row < end; row++) {
+            if (ids[row] == id) {
+                addToTree(day, -cents[row], -1);
+                shift(row + 1, row, size - row - 1);
+                size--;
+                return;
+            }
+        }
+    }
+
+    // Many rows at once (a bulk import). Rows that keep their day are changed where they sit; the others are
+    // merged in from the back in one pass, so only the rows after the earliest new day move, and each once.
+    void upsertAll(List<Row> rows) {
+        Map<Long, Row> byId = new LinkedHashMap<>(); // the last version of a row wins
+        for (Row row : rows) {
+            byId.put(row.id(), row);
+        }
+        List<Row> added = new ArrayList<>();
+        for (Row row : byId.values()) {
+            Integer day = dayById.get(row.id());
+            if (day != null && holds(row.date()) && day == row.date().toEpochDay() && replaceInPlace(row, day)) {
+                continue;
+            }
+            remove(row.id());
+            if (holds(row.date())) {
+                added.add(row);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        added.sort(Comparator.comparing(Row::date));
+
+        ensureCapacity(size + added.size());
+        int row = size - 1;
+        boolean outsideTree = false;
+        for (int next = added.size() - 1, out = size + added.size() - 1; next >= 0; out--) {
+            Row adding = added.get(next);
+            int day = (int) adding.date().toEpochDay();
+            if (row >= 0 && days[row] > day) {
+                move(row--, out); // existing rows stay ahead of new ones on the same day, like upsert()
+                continue;
+            }
+            ids[out] = adding.id();
+            days[out] = day;
+            cents[out] = adding.amount() != null ? Math.round(adding.amount() * 100) : 0;
+            for (int d = 0; d < keys.length; d++) {
+                keys[d][out] = dictionaries[d].idOf(adding.keyValues()[d]);
+            }
+            dayById.put(adding.id(), day);
+            outsideTree |= day < firstDay || day >= firstDay + treeCents.length;
+            next--;
+        }
+        size += added.size();
+
+        if (outsideTree) {
+            rebuildTree(days[0]); // counts every row, the new ones included
+        } else {
+            for (Row adding : added) {
+                addToTree((int) adding.date().toEpochDay(),
+                        adding.amount() != null ? Math.round(adding.amount() * 100) : 0, 1);
+            }
+        }
+    }
+
+    static boolean holds(LocalDate date) {
+        return date != null && !date.isBefore(FIRST_DATE) && !date.isAfter(LAST_DATE);
+    }
+
+    private boolean replaceInPlace(Row changed, int day) {
+        for (int row = lowerBound(day), end = upperBound(day); row < end; row++) {
+            if (ids[row] == changed.id()) {
+                long amountCents = changed.amount() != null ? Math.round(changed.amount() * 100) : 0;
+                addToTree(day, amountCents - cents[row], 0);
+                cents[row] = amountCents;
+                for (int d = 0; d < keys.length; d++) {
+                    keys[d][row] = dictionaries[d].idOf(changed.keyValues()[d]);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void move(int from, int to) {
+        ids[to] = ids[from];
+        days[to] = days[from];
+        cents[to] = cents[from];
+        for (int[] column : keys) {
+            column[to] = column[from];
+        }
+    }
+
+    private void shift(int from, int to, int length) {
+        System.arraycopy(ids, from, ids, to, length);
+        System.arraycopy(days, from, days, to, length);
+        System.arraycopy(cents, from, cents, to, length);
+        for (int[] column : keys) {
+            System.arraycopy(column, from, column, to, length);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int grown = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, grown);
+        days = Arrays.copyOf(days, grown);
+        cents = Arrays.copyOf(cents, grown);
+        for (int d = 0; d < keys.length; d++) {
+            keys[d] = Arrays.copyOf(keys[d], grown);
+        }
+    }
+
+    // 2. Reads: days are inclusive epoch days
+
+    Total total(int fromDay, int toDay) {
+        if (fromDay > toDay) {
+            return new Total(0, 0);
+        }
+        return new Total(prefix(treeCents, toDay) - prefix(treeCents, fromDay - 1),
+                prefix(treeCounts, toDay) - prefix(treeCounts, fromDay - 1));
+    }
+
+    // Totals per key of one dimension, biggest first
+    List<GroupTotal> groupBy(int dimension, int fromDay, int toDay) {
+        Dictionary dictionary = dictionaries[dimension];
+        long[] sums = new long[dictionary.size()];
+        long[] counts = new long[dictionary.size()];
+        int[] column = keys[dimension];
+        for (int row = lowerBound(fromDay), end = upperBound(toDay); row < end; row++) {
+            sums[column[row]] += cents[row];
+            counts[column[row]]++;
+        }
+
+        List<GroupTotal> totals = new ArrayList<>();
+        for (int key = 0; key < sums.length; key++) {
+            if (counts[key] > 0) {
+                totals.add(new GroupTotal(dictionary.valueOf(key), sums[key] / 100.0, counts[key]));
+            }
+        }
+        totals.sort(Comparator.comparing(GroupTotal::total).reversed());
+        return totals;
+    }
+
+    // Totals per calendar month ("2025-03"), oldest first: one tree lookup per month, no rows read
+    List<GroupTotal> groupByMonth(int fromDay, int toDay) {
+        List<GroupTotal> totals = new ArrayList<>();
+        if (size == 0) {
+            return totals;
+        }
+        int lastDay = Math.min(toDay, days[size - 1]);
+        LocalDate month = LocalDate.ofEpochDay(Math.max(fromDay, days[0])).withDayOfMonth(1);
+        for (; month.toEpochDay() <= lastDay; month = month.plusMonths(1)) {
+            int monthStart = (int) Math.max(fromDay, month.toEpochDay());
+            int monthEnd = (int) Math.min(lastDay, month.plusMonths(1).toEpochDay() - 1);
+            Total total = total(monthStart, monthEnd);
+            if (total.count() > 0) {
+                totals.add(new GroupTotal(month.toString().substring(0, 7), total.cents() / 100.0, total.count()));
+            }
+        }
+        return totals;
+    }
+
+    // First row on or after the day / first row after the day
+    private int lowerBound(int day) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (days[mid] < day) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private int upperBound(int day) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (days[mid] <= day) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // 3. The Fenwick tree (1-based inside the arrays)
+
+    private void addToTree(int day, long amountCents, long count) {
+        if (day < firstDay || day >= firstDay + treeCents.length) {
+            rebuildTree(day);
+            return; // the rebuild already counted every row, this one included
+        }
+        for (int i = day - firstDay + 1; i <= treeCents.length; i += i & -i) {
+            treeCents[i - 1] += amountCents;
+            treeCounts[i - 1] += count;
+        }
+    }
+
+    // Sum over [firstDay, day]
+    private long prefix(long[] tree, int day) {
+        int i = (int) Math.max(0, Math.min((long) day - firstDay + 1, tree.length));
+        long sum = 0;
+        for (; i > 0; i -= i & -i) {
+            sum += tree[i - 1];
+        }
+        return sum;
+    }
+
+    // A day outside the tree: widen it to cover every row plus a margin, then refill it in O(n)
+    private void rebuildTree(int day) {
+        int from = Math.min(day, size > 0 ? days[0] : day) - DAY_MARGIN;
+        int to = Math.max(day, size > 0 ? days[size - 1] : day) + DAY_MARGIN;
+        firstDay = from;
+        treeCents = new long[to - from + 1];
+        treeCounts = new long[to - from + 1];
+        for (int row = 0; row < size; row++) {
+            treeCents[days[row] - firstDay] += cents[row];
+            treeCounts[days[row] - firstDay]++;
+        }
+        for (int i = 1; i <= treeCents.length; i++) {
+            int parent = i + (i & -i);
+            if (parent <= treeCents.length) {
+                treeCents[parent - 1] += treeCents[i - 1];
+                treeCounts[parent - 1] += treeCounts[i - 1];
+            }
+        }
+    }
+
+    // String <-> small int; id 0 is "no value" (null)
+    private static final class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>(List.of(""));
+
+        int idOf(String value) {
+            if (value == null) {
+                return 0;
+            }
+            return ids.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size() - 1;
+            });
+        }
+
+        String valueOf(int id) {
+            return id == 0 ? null : values.get(id);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.dto.GroupTotal;
+import com.pivik.finance_dashboard.event.EarningChangedEvent;
+import com.pivik.finance_dashboard.event.EarningsImportedEvent;
+import com.pivik.finance_dashboard.event.InvoiceChangedEvent;
+import com.pivik.finance_dashboard.model.Earning;
+import com.pivik.finance_dashboard.model.Invoice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+
+@Service // Invoices and earnings in memory, column by column, for exact date-range totals without a query
+public class ColumnarStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ColumnarStore.class);
+
+    public enum InvoiceDimension { VENDOR, CATEGORY, PROJECT }
+
+    private static final int EARNING_SOURCE = 0;
+
+    // Past this many remembered versions, the ones no pending change can be older than are dropped
+    private static final int VERSIONS_TO_KEEP = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private ColumnTable invoices = new ColumnTable(InvoiceDimension.values().length);
+    private ColumnTable earnings = new ColumnTable(1);
+    private volatile boolean ready;
+
+    // Every change is numbered when it is made, inside its transaction. For one row that is the order the
+    // writes committed in (a second writer waits on the row lock until the first has committed), but afterCommit
+    // callbacks can run in any order, so each row keeps the number of the last change applied to it and an
+    // older one is dropped. Guarded by the write lock; kept across load() so a replay can't undo a newer row.
+    private final AtomicLong changeCounter = new AtomicLong();
+    private final ConcurrentSkipListSet<Long> uncommitted = new ConcurrentSkipListSet<>();
+    private final Map<Long, Long> invoiceVersions = new HashMap<>();
+    private final Map<Long, Long> earningVersions = new HashMap<>();
+
+    public ColumnarStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Until the first load is done, callers should ask the database instead
+    public boolean isReady() {
+        return ready;
+    }
+
+    // 1. Load everything once at startup, in date order (so every row is an append)
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long started = System.nanoTime();
+        ColumnTable loadedInvoices = new ColumnTable(InvoiceDimension.values().length);
+        ColumnTable loadedEarnings = new ColumnTable(1);
+
+        // Changes committed while we read wait for the lock, then replay on top (rows are replaced whole,
+        // so one that the read already saw is simply written again)
+        lock.writeLock().lock();
+        try {
+            jdbcTemplate.query("SELECT id, date, amount, vendor, category, project FROM invoice " +
+                            "WHERE date IS NOT NULL ORDER BY date, id",
+                    rs -> {
+                        loadedInvoices.upsert(rs.getLong(1), rs.getDate(2).toLocalDate(), rs.getObject(3, Double.class),
+                                rs.getString(4), rs.getString(5), rs.getString(6));
+                    });
+            jdbcTemplate.query("SELECT id, date, amount, source FROM earning WHERE date IS NOT NULL ORDER BY date, id",
+                    rs -> {
+                        loadedEarnings.upsert(rs.getLong(1), rs.getDate(2).toLocalDate(), rs.getObject(3, Double.class),
+                                rs.getString(4));
+                    });
+            invoices = loadedInvoices;
+            earnings = loadedEarnings;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Columnar store loaded invoices={} earnings={} ms={}", loadedInvoices.size(), loadedEarnings.size(),
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // 2. Follow every write, once it is committed (a rolled-back write must not show up in the totals)
+
+    @EventListener
+    public void onInvoiceChanged(InvoiceChangedEvent event) {
+        Invoice after = event.after();
+        long id = after != null ? after.getId() : event.before().getId();
+        afterCommit(version -> {
+            if (!newest(invoiceVersions, id, version)) {
+                return;
+            }
+            if (after == null) {
+                invoices.remove(id);
+            } else {
+                invoices.upsert(id, after.getDate(), after.getAmount(), after.getVendor(), after.getCategory(), after.getProject());
+            }
+        });
+    }
+
+    @EventListener
+    public void onEarningChanged(EarningChangedEvent event) {
+        Earning after = event.after();
+        long id = after != null ? after.getId() : event.before().getId();
+        afterCommit(version -> {
+            if (!newest(earningVersions, id, version)) {
+                return;
+            }
+            if (after == null) {
+                earnings.remove(id);
+            } else {
+                earnings.upsert(id, after.getDate(), after.getAmount(), after.getSource());
+            }
+        });
+    }
+
+    // A bulk import chunk: merged in one pass once committed (rows the store already holds are replaced)
+    @EventListener
+    public void onEarningsImported(EarningsImportedEvent event) {
+        List<ColumnTable.Row> rows = new ArrayList<>(event.after().size());
+        for (Earning earning : event.after()) {
+            rows.add(new ColumnTable.Row(earning.getId(), earning.getDate(), earning.getAmount(), earning.getSource()));
+        }
+        afterCommit(version -> earnings.upsertAll(rows.stream()
+                .filter(row -> newest(earningVersions, row.id(), version))
+                .toList()));
+    }
+
+    private void afterCommit(LongConsumer change) {
+        long version = changeCounter.incrementAndGet();
+        Runnable locked = () -> {
+            lock.writeLock().lock();
+            try {
+                change.accept(version);
+                forgetOldVersions();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            uncommitted.add(version);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    locked.run();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    uncommitted.remove(version);
+                }
+            });
+        } else {
+            locked.run();
+        }
+    }
+
+    // True (and remembered) unless a later change to the row has already been applied. Same number: two
+    // changes of one transaction, whose callbacks run in the order they were made.
+    private boolean newest(Map<Long, Long> versions, long id, long version) {
+        Long applied = versions.get(id);
+        if (applied != null && applied > version) {
+            return false;
+        }
+        versions.put(id, version);
+        return true;
+    }
+
+    // Anything still to come is numbered at least the oldest uncommitted change: older entries can no longer
+    // turn anything away
+    private void forgetOldVersions() {
+        if (invoiceVersions.size() + earningVersions.size() > VERSIONS_TO_KEEP) {
+            long oldestPending = uncommitted.isEmpty() ? changeCounter.get() + 1 : uncommitted.first();
+            invoiceVersions.values().removeIf(v -> v < oldestPending);
+            earningVersions.values().removeIf(v -> v < oldestPending);
+        }
+    }
+
+    // 3. Reads: "from" and "to" are inclusive, like BETWEEN
+
+    public List<GroupTotal> invoiceTotals(InvoiceDimension dimension, LocalDate from, LocalDate to) {
+        lock.readLock().lock();
+        try {
+            return invoices.groupBy(dimension.ordinal(), day(from), day(to));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<GroupTotal> invoiceTotalsByMonth(LocalDate from, LocalDate to) {
+        lock.readLock().lock();
+        try {
+            return invoices.groupByMonth(day(from), day(to));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<GroupTotal> earningTotalsBySource(LocalDate from, LocalDate to) {
+        lock.readLock().lock();
+        try {
+            return earnings.groupBy(EARNING_SOURCE, day(from), day(to));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Spending and earnings over the whole range, straight from the Fenwick trees
+    public GroupTotal totalSpending(LocalDate from, LocalDate to) {
+        return total(invoices, "spending", from, to);
+    }
+
+    public GroupTotal totalEarnings(LocalDate from, LocalDate to) {
+        return total(earnings, "earnings", from, to);
+    }
+
+    private GroupTotal total(ColumnTable table, String key, LocalDate from, LocalDate to) {
+        lock.readLock().lock();
+        try {
+            ColumnTable.Total total = table.total(day(from), day(to));
+            return new GroupTotal(key, total.cents() / 100.0, total.count());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int day(LocalDate date) {
+        // Far-off dates (LocalDate goes to year 999999999) clamp to the int range; no invoice lives there
+        return (int) Math.max(Integer.MIN_VALUE + 1, Math.min(Integer.MAX_VALUE - 1, date.toEpochDay()));
+    }
+}
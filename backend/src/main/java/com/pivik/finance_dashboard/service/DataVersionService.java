@@ -0,0 +1,72 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.event.InvoiceChangedEvent;
+import com.pivik.finance_dashboard.model.Invoice;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service // Tells cached reports whether the invoices in their date range have changed since they were built
+public class DataVersionService {
+
+    private final AtomicLong counter = new AtomicLong();
+
+    // Invoice date -> the last version that wrote an invoice on that day
+    private final ConcurrentNavigableMap<LocalDate, Long> dayVersions = new ConcurrentSkipListMap<>();
+
+    // The version of a date range: changes whenever any invoice dated inside it is saved, edited or deleted.
+    // A range that ends before it starts holds no invoices (and the report for it is empty), so it stays at 0.
+    public long versionOf(LocalDate startDate, LocalDate endDate) {
+        if (startDate.isAfter(endDate)) {
+            return 0;
+        }
+        long version = 0;
+        for (long dayVersion : dayVersions.subMap(startDate, true, endDate, true).values()) {
+            version = Math.max(version, dayVersion);
+        }
+        return version;
+    }
+
+    @EventListener
+    public void onInvoiceChanged(InvoiceChangedEvent event) {
+        List<LocalDate> touched = new ArrayList<>(2);
+        addDate(touched, event.before());
+        addDate(touched, event.after());
+        if (touched.isEmpty()) {
+            return; // undated invoices never show up in a date-range report
+        }
+
+        // Bump now, and again once the transaction is over: anything rendered while the write was
+        // still uncommitted carries the in-between version and is never served afterwards
+        bump(touched);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    bump(touched);
+                }
+            });
+        }
+    }
+
+    private void bump(List<LocalDate> dates) {
+        long version = counter.incrementAndGet();
+        for (LocalDate date : dates) {
+            dayVersions.merge(date, version, Math::max);
+        }
+    }
+
+    private static void addDate(List<LocalDate> dates, Invoice invoice) {
+        if (invoice != null && invoice.getDate() != null) {
+            dates.add(invoice.getDate());
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.pivik.finance_dashboard.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pivik.finance_dashboard.dto.ImportReport;
+import com.pivik.finance_dashboard.event.EarningsImportedEvent;
+import com.pivik.finance_dashboard.model.Earning;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+@Service // Streams POS/CSV exports of earnings into the earning table, upserting on (date, source)
+public class EarningImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(EarningImportService.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public enum Format { CSV, NDJSON }
+
+    private static final int ID_BLOCK = 50;          // earning_seq hands out blocks of 50, like Hibernate's pooled ids
+    private static final int MAX_REJECTIONS_LISTED = 100;
+    private static final DateTimeFormatter US_DATE = DateTimeFormatter.ofPattern("M/d/yyyy");
+
+    // One statement per chunk: the rows travel as four arrays. Keys that exist get their amount updated (unless
+    // it is the same, so re-importing a file writes nothing) and the rest are inserted; what comes back is each
+    // row that changed, next to its previous state. Every CTE sees the table as it was before the statement.
+    private static final String UPSERT_SQL =
+            "WITH input AS (SELECT * FROM unnest(CAST(? AS bigint[]), CAST(? AS date[]), CAST(? AS float8[]), " +
+            "    CAST(? AS text[])) AS i(id, date, amount, source)), " +
+            "previous AS (SELECT e.id, e.date, e.amount, e.source, i.amount AS new_amount " +
+            "    FROM earning e JOIN input i ON e.date = i.date AND e.source = i.source), " +
+            "updated AS (UPDATE earning e SET amount = p.new_amount FROM previous p " +
+            "    WHERE e.id = p.id AND e.amount IS DISTINCT FROM p.new_amount RETURNING e.id), " +
+            "inserted AS (INSERT INTO earning (id, date, amount, source) SELECT id, date, amount, source FROM input i " +
+            "    WHERE NOT EXISTS (SELECT 1 FROM previous p WHERE p.date = i.date AND p.source = i.source) " +
+            "    RETURNING id, date, amount, source) " +
+            "SELECT p.id, p.date, p.new_amount, p.source, true, p.amount FROM previous p JOIN updated u ON u.id = p.id " +
+            "UNION ALL " +
+            "SELECT id, date, amount, source, false, null FROM inserted";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher publisher;
+    private final int chunkSize;
+    private volatile boolean uniqueIndex;
+
+    // The EntityManagerFactory is only here so Hibernate has created the earning table before we run
+    public EarningImportService(JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                ApplicationEventPublisher publisher,
+                                EntityManagerFactory entityManagerFactory,
+                                @Value("${pivik.import.chunk-size:5000}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.publisher = publisher;
+        this.chunkSize = chunkSize;
+    }
+
+    // One earning per source per day: that is what makes a re-import update instead of duplicate
+    @PostConstruct
+    public void createUniqueIndex() {
+        try {
+            jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_earning_date_source ON earning (date, source)");
+            uniqueIndex = true;
+        } catch (Exception e) {
+            log.warn("Could not create unique index on earning(date, source), bulk import is disabled until "
+                    + "duplicate earnings are merged: {}", e.getMessage());
+        }
+    }
+
+    public static Format formatOf(String contentType, String filename) {
+        String type = contentType != null ? contentType.toLowerCase(Locale.ROOT) : "";
+        String name = filename != null ? filename.toLowerCase(Locale.ROOT) : "";
+        return type.contains("ndjson") || type.contains("jsonl") || name.endsWith(".ndjson") || name.endsWith(".jsonl")
+                ? Format.NDJSON : Format.CSV;
+    }
+
+    // Reads line by line and writes chunk by chunk, so memory stays flat whatever the file size.
+    // Each chunk is its own transaction: if an import stops half way, running it again finishes the job.
+    public ImportReport importEarnings(InputStream in, Format format) throws IOException {
+        if (!uniqueIndex) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Some dates have more than one earning for the same source; merge them before importing");
+        }
+
+        long started = System.nanoTime();
+        Chunk chunk = new Chunk();
+        Progress progress = new Progress(jdbcTemplate.queryForObject(
+                "SELECT GREATEST(reltuples, 0)::bigint FROM pg_class WHERE oid = 'earning'::regclass", Long.class));
+        long rejected = 0;
+        List<String> rejections = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16)) {
+            int[] columns = {0, 1, 2}; // date, amount, source
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    if (format == Format.NDJSON) {
+                        JsonNode row = MAPPER.readTree(line);
+                        chunk.add(parseDate(text(row, "date")), parseAmount(text(row, "amount")), text(row, "source"));
+                    } else {
+                        List<String> fields = splitCsv(line);
+                        if (lineNumber == 1 && isHeader(fields)) {
+                            columns = headerColumns(fields);
+                            continue;
+                        }
+                        chunk.add(parseDate(field(fields, columns[0])), parseAmount(field(fields, columns[1])),
+                                field(fields, columns[2]));
+                    }
+                } catch (IllegalArgumentException | DateTimeParseException | IOException e) {
+                    rejected++;
+                    if (rejections.size() < MAX_REJECTIONS_LISTED) {
+                        String reason = e instanceof JsonProcessingException json ? json.getOriginalMessage() : e.getMessage();
+                        rejections.add("line " + lineNumber + ": " + reason);
+                    }
+                }
+                if (chunk.size() >= chunkSize) {
+                    write(chunk, progress);
+                }
+            }
+            write(chunk, progress);
+        }
+
+        long millis = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        ImportReport report = new ImportReport(progress.rows, progress.inserted, progress.updated,
+                progress.rows - progress.inserted - progress.updated, rejected, rejections, millis, progress.rows * 1000 / millis);
+        log.info("Imported earnings rows={} inserted={} updated={} rejected={} ms={} rowsPerSecond={}",
+                progress.rows, progress.inserted, progress.updated, rejected, millis, report.rowsPerSecond());
+        return report;
+    }
+
+    private void write(Chunk chunk, Progress progress) {
+        int rows = chunk.size();
+        if (rows == 0) {
+            return;
+        }
+        // Reserve ids the way Hibernate does (a sequence value N covers N-49..N), so JPA inserts never collide
+        List<Long> blocks = jdbcTemplate.queryForList(
+                "SELECT nextval('earning_seq') FROM generate_series(1, ?)", Long.class, (rows + ID_BLOCK - 1) / ID_BLOCK);
+        Long[] ids = new Long[rows];
+        for (int i = 0; i < rows; i++) {
+            ids[i] = blocks.get(i / ID_BLOCK) - (ID_BLOCK - 1) + (i % ID_BLOCK);
+        }
+
+        Date[] dates = new Date[rows];
+        Double[] amounts = new Double[rows];
+        String[] sources = new String[rows];
+        int i = 0;
+        for (Map.Entry<Key, Double> row : chunk.rows.entrySet()) {
+            dates[i] = Date.valueOf(row.getKey().date());
+            amounts[i] = row.getValue();
+            sources[i] = row.getKey().source();
+            i++;
+        }
+
+        List<Earning> before = new ArrayList<>(rows);
+        List<Earning> after = new ArrayList<>(rows);
+        transactionTemplate.executeWithoutResult(status -> {
+            // Writers wait for this chunk, so "previous" is exactly what is there: no key can appear between the
+            // lookup and the insert, and the rollup adds up the right differences. Readers carry on.
+            jdbcTemplate.execute("LOCK TABLE earning IN SHARE ROW EXCLUSIVE MODE");
+            // A generic plan can't see how many rows the arrays hold and reads the whole table to join them
+            jdbcTemplate.execute("SET LOCAL plan_cache_mode = force_custom_plan");
+            jdbcTemplate.query(UPSERT_SQL, statement -> {
+                Connection connection = statement.getConnection();
+                statement.setArray(1, connection.createArrayOf("bigint", ids));
+                statement.setArray(2, connection.createArrayOf("date", dates));
+                statement.setArray(3, connection.createArrayOf("float8", amounts));
+                statement.setArray(4, connection.createArrayOf("text", sources));
+            }, rs -> {
+                Earning row = earning(rs.getLong(1), rs.getDate(2).toLocalDate(), rs.getObject(3, Double.class), rs.getString(4));
+                after.add(row);
+                before.add(rs.getBoolean(5)
+                        ? earning(row.getId(), row.getDate(), rs.getObject(6, Double.class), row.getSource())
+                        : null);
+            });
+            if (!after.isEmpty()) {
+                publisher.publishEvent(new EarningsImportedEvent(before, after));
+            }
+        });
+
+        long updated = before.stream().filter(Objects::nonNull).count();
+        progress.rows += rows;
+        progress.inserted += after.size() - updated;
+        progress.updated += updated;
+        chunk.rows.clear();
+
+        // Loading into a small table outgrows the planner's row estimate fast, and then it joins each chunk
+        // against the table by reading all of it; refreshing the statistics as the table doubles prevents that
+        progress.insertedSinceAnalyze += after.size() - updated;
+        if (progress.insertedSinceAnalyze > Math.max(progress.rowsAtLastAnalyze, chunkSize)) {
+            jdbcTemplate.execute("ANALYZE earning");
+            progress.rowsAtLastAnalyze += progress.insertedSinceAnalyze;
+            progress.insertedSinceAnalyze = 0;
+        }
+    }
+
+    private static final class Progress {
+        long rows;
+        long inserted;
+        long updated;        // rows - inserted - updated were already there with the same amount
+        long rowsAtLastAnalyze;
+        long insertedSinceAnalyze;
+
+        Progress(long tableRows) {
+            this.rowsAtLastAnalyze = tableRows;
+        }
+    }
+
+    private static Earning earning(long id, LocalDate date, Double amount, String source) {
+        Earning earning = new Earning();
+        earning.setId(id);
+        earning.setDate(date);
+        earning.setAmount(amount);
+        earning.setSource(source);
+        return earning;
+    }
+
+    private record Key(LocalDate date, String source) {}
+
+    // The rows waiting to be written; the same date and source twice in a chunk keeps the later line
+    // (one statement can't upsert the same row twice)
+    private static final class Chunk {
+        private final Map<Key, Double> rows = new LinkedHashMap<>();
+
+        void add(LocalDate date, double amount, String source) {
+            if (source == null || source.isBlank()) {
+                throw new IllegalArgumentException("missing source");
+            }
+            Key key = new Key(date, source.trim());
+            rows.remove(key);
+            rows.put(key, amount);
+        }
+
+        int size() {
+            return rows.size();
+        }
+    }
+
+    // Parsing
+
+    private static LocalDate parseDate(String value) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("missing date");
+        }
+        String date = value.trim();
+        return date.contains("/") ? LocalDate.parse(date, US_DATE) : LocalDate.parse(date);
+    }
+
+    private static double parseAmount(String value) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("missing amount");
+        }
+        double amount;
+        try {
+            amount = Double.parseDouble(value.trim().replace("$", "").replace(",", ""));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad amount '" + value + "'");
+        }
+        // "NaN", "Infinity" and "1e999" all parse, and one of them would poison every total it lands in
+        if (!Double.isFinite(amount)) {
+            throw new IllegalArgumentException("bad amount '" + value + "'");
+        }
+        return amount;
+    }
+
+    private static String text(JsonNode row, String field) {
+        JsonNode value = row.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static String field(List<String> fields, int column) {
+        return column < fields.size() ? fields.get(column) : null;
+    }
+
+    private static boolean isHeader(List<String> fields) {
+        return fields.stream().anyMatch(field -> field.trim().equalsIgnoreCase("date"));
+    }
+
+    // Columns by name, in any order: date, amount (or total), source (or register)
+    private static int[] headerColumns(List<String> header) {
+        int[] columns = {-1, -1, -1};
+        for (int i = 0; i < header.size(); i++) {
+            switch (header.get(i).trim().toLowerCase(Locale.ROOT)) {
+                case "date" -> columns[0] = i;
+                case "amount", "total" -> columns[1] = i;
+                case "source", "register" -> columns[2] = i;
+                default -> { }
+            }
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] < 0) {
+                columns[i] = Integer.MAX_VALUE; // every row will be rejected with "missing ..."
+            }
+        }
+        return columns;
+    }
+
+    // One CSV line: commas, with "quoted, fields" and "" for a quote inside quotes
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
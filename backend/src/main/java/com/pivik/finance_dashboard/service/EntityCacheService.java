@@ -0,0 +1,114 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.config.JpaConfig;
+import com.pivik.finance_dashboard.event.EarningChangedEvent;
+import com.pivik.finance_dashboard.event.EarningsImportedEvent;
+import com.pivik.finance_dashboard.event.InvoiceChangedEvent;
+import com.pivik.finance_dashboard.model.Earning;
+import com.pivik.finance_dashboard.model.Invoice;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+// Keeps the second-level cache honest about the writes Hibernate can't see, and reports how well it does.
+//
+// Hibernate updates the cache for every write that goes through JPA, but two kinds of change get past it:
+// the change_version the database stamps on each write (a trigger, so the cached copy still has the old one),
+// and the earnings import, which is plain SQL. Both are dealt with here once the transaction has committed.
+// Hit/miss counts per region are published by Hibernate's own metrics (hibernate.second.level.cache.requests,
+// hibernate.cache.query.requests); the hit ratios are added as pivik.cache.hit.ratio.
+@Service
+public class EntityCacheService {
+
+    // Past this many rows an import empties the earning region instead of going through it row by row
+    private static final int EVICT_REGION_ROWS = 1000;
+
+    private final SessionFactoryImplementor sessionFactory;
+
+    public EntityCacheService(EntityManagerFactory entityManagerFactory, MeterRegistry meterRegistry) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+
+        Statistics statistics = sessionFactory.getStatistics();
+        registerHitRatio(meterRegistry, JpaConfig.INVOICE_REGION, "entity", statistics::getDomainDataRegionStatistics);
+        registerHitRatio(meterRegistry, JpaConfig.EARNING_REGION, "entity", statistics::getDomainDataRegionStatistics);
+        registerHitRatio(meterRegistry, JpaConfig.INVOICE_QUERY_REGION, "query", statistics::getQueryRegionStatistics);
+        registerHitRatio(meterRegistry, JpaConfig.EARNING_QUERY_REGION, "query", statistics::getQueryRegionStatistics);
+    }
+
+    @EventListener
+    public void onInvoiceChanged(InvoiceChangedEvent event) {
+        Long id = event.after() != null ? event.after().getId() : event.before().getId();
+        afterCommit(() -> sessionFactory.getCache().evictEntityData(Invoice.class, id));
+    }
+
+    @EventListener
+    public void onEarningChanged(EarningChangedEvent event) {
+        Long id = event.after() != null ? event.after().getId() : event.before().getId();
+        afterCommit(() -> sessionFactory.getCache().evictEntityData(Earning.class, id));
+    }
+
+    // The import wrote with SQL: drop the rows it touched, and mark the earning table as changed now,
+    // which is what makes every cached query over it stale (the same thing Hibernate does after its own writes)
+    @EventListener
+    public void onEarningsImported(EarningsImportedEvent event) {
+        List<Long> ids = new ArrayList<>(event.after().size());
+        event.after().forEach(earning -> ids.add(earning.getId()));
+        afterCommit(() -> {
+            if (ids.size() > EVICT_REGION_ROWS) {
+                sessionFactory.getCache().evictEntityData(Earning.class);
+            } else {
+                ids.forEach(id -> sessionFactory.getCache().evictEntityData(Earning.class, id));
+            }
+            invalidateQueries(Earning.class);
+        });
+    }
+
+    private void invalidateQueries(Class<?> entity) {
+        String[] tables = Arrays.stream(sessionFactory.getMappingMetamodel().getEntityDescriptor(entity).getQuerySpaces())
+                .map(String::valueOf).toArray(String[]::new);
+        // No connection is taken: the session is only there to timestamp the invalidation
+        try (Session session = sessionFactory.openSession()) {
+            sessionFactory.getCache().getTimestampsCache()
+                    .invalidate(tables, (SharedSessionContractImplementor) session);
+        }
+    }
+
+    private static void afterCommit(Runnable eviction) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eviction.run();
+                }
+            });
+        } else {
+            eviction.run();
+        }
+    }
+
+    private static void registerHitRatio(MeterRegistry meterRegistry, String region, String kind,
+                                         Function<String, CacheRegionStatistics> statistics) {
+        Gauge.builder("pivik.cache.hit.ratio", () -> {
+                    CacheRegionStatistics counts = statistics.apply(region);
+                    long requests = counts == null ? 0 : counts.getHitCount() + counts.getMissCount();
+                    return requests == 0 ? Double.NaN : (double) counts.getHitCount() / requests;
+                })
+                .tag("region", region)
+                .tag("kind", kind)
+                .register(meterRegistry);
+    }
+}
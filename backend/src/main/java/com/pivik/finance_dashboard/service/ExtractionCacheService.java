@@ -0,0 +1,147 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.model.ExtractionCacheEntry;
+import com.pivik.finance_dashboard.model.Invoice;
+import com.pivik.finance_dashboard.repository.ExtractionCacheRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service // Remembers AI extraction results by file hash (exact re-upload) and by text hash (same invoice, new scan)
+public class ExtractionCacheService {
+
+    public record Stats(long fileHashHits, long textHashHits, long misses, long size, long maxEntries, double hitRate) {}
+
+    // Less normalized text than this says nothing about which invoice it is (an image-only scan reads as a few
+    // form feeds), so it gets no text key: every such scan would share it, and each other's fields
+    static final int MIN_TEXT_CHARS = 40;
+
+    private final ExtractionCacheRepository repository;
+    private final FileStorageService fileStorageService;
+    private final long maxEntries;
+
+    private final AtomicLong fileHashHits = new AtomicLong();
+    private final AtomicLong textHashHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ExtractionCacheService(ExtractionCacheRepository repository,
+                                  FileStorageService fileStorageService,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${pivik.extraction-cache.max-entries:50000}") long maxEntries) {
+        this.repository = repository;
+        this.fileStorageService = fileStorageService;
+        this.maxEntries = maxEntries;
+
+        FunctionCounter.builder("pivik.extraction.cache", fileHashHits, AtomicLong::get).tag("result", "file_hit").register(meterRegistry);
+        FunctionCounter.builder("pivik.extraction.cache", textHashHits, AtomicLong::get).tag("result", "text_hit").register(meterRegistry);
+        FunctionCounter.builder("pivik.extraction.cache", misses, AtomicLong::get).tag("result", "miss").register(meterRegistry);
+    }
+
+    // 1. Try the exact file first, then the normalized text
+    public Optional<ExtractionCacheEntry> lookup(String fileHash, String invoiceText) {
+        Optional<ExtractionCacheEntry> hit = repository.findByFileHash(fileHash);
+        if (hit.isPresent()) {
+            fileHashHits.incrementAndGet();
+        } else {
+            String textHash = textHash(invoiceText);
+            hit = textHash != null ? repository.findFirstByTextHash(textHash) : Optional.empty();
+            if (hit.isPresent()) {
+                textHashHits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+                return Optional.empty();
+            }
+        }
+
+        ExtractionCacheEntry entry = hit.get();
+        entry.setLastUsedAt(Instant.now());
+        entry.setHitCount(entry.getHitCount() + 1);
+        return Optional.of(repository.save(entry));
+    }
+
+    // 2. Remember a successful AI extraction
+    public void store(String fileHash, String invoiceText, Invoice invoice) {
+        ExtractionCacheEntry entry = new ExtractionCacheEntry();
+        entry.setFileHash(fileHash);
+        entry.setTextHash(textHash(invoiceText));
+        entry.setVendor(invoice.getVendor());
+        entry.setInvoiceNumber(invoice.getInvoiceNumber());
+        entry.setAmount(invoice.getAmount());
+        entry.setDate(invoice.getDate());
+        entry.setCategory(invoice.getCategory());
+        entry.setCreatedAt(Instant.now());
+        entry.setLastUsedAt(entry.getCreatedAt());
+
+        try {
+            repository.save(entry);
+        } catch (DataIntegrityViolationException e) {
+            return; // the same file was uploaded twice at once, the other upload already cached it
+        }
+
+        evictOverflow();
+    }
+
+    // A user fixed the fields by hand: the next upload of this file should get the corrected values
+    public void correct(Invoice invoice) {
+        if (invoice.getFileUrl() == null || !Files.exists(fileStorageService.resolve(invoice.getFileUrl()))) {
+            return;
+        }
+
+        repository.findByFileHash(fileStorageService.sha256(invoice.getFileUrl())).ifPresent(entry -> {
+            entry.setVendor(invoice.getVendor());
+            entry.setInvoiceNumber(invoice.getInvoiceNumber());
+            entry.setAmount(invoice.getAmount());
+            entry.setDate(invoice.getDate());
+            entry.setCategory(invoice.getCategory());
+            repository.save(entry);
+        });
+    }
+
+    // 3. Keep the table at maxEntries rows by dropping the least recently used ones
+    private void evictOverflow() {
+        long overflow = repository.count() - maxEntries;
+        if (overflow > 0) {
+            List<Long> ids = repository.findLeastRecentlyUsedIds(PageRequest.of(0, (int) Math.min(overflow, 1000)));
+            repository.deleteAllByIdInBatch(ids);
+        }
+    }
+
+    public Stats stats() {
+        long fileHits = fileHashHits.get();
+        long textHits = textHashHits.get();
+        long missed = misses.get();
+        long lookups = fileHits + textHits + missed;
+        double hitRate = lookups == 0 ? 0 : (double) (fileHits + textHits) / lookups;
+        return new Stats(fileHits, textHits, missed, repository.count(), maxEntries, hitRate);
+    }
+
+    // Re-scans of the same invoice differ in spacing and line breaks, not in words; null for too little text
+    static String textHash(String invoiceText) {
+        String normalized = invoiceText.toLowerCase().replaceAll("\\s+", " ").trim();
+        if (normalized.length() < MIN_TEXT_CHARS) {
+            return null;
+        }
+        return sha256(normalized.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.pivik.finance_dashboard.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+// The PDF couldn't be read right now: every extraction slot was taken, or reading it ran out of time.
+// Says nothing about the file itself, so it must not be saved as an empty invoice; a 503, try again later.
+public class ExtractionUnavailableException extends ResponseStatusException {
+
+    private final boolean timedOut;
+
+    ExtractionUnavailableException(String reason, boolean timedOut) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, reason);
+        this.timedOut = timedOut;
+    }
+
+    // True when the file itself took too long (a retry may too), false when the server was just busy
+    public boolean timedOut() {
+        return timedOut;
+    }
+}
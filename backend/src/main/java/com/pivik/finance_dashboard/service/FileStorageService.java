@@ -1,39 +1,296 @@
 package com.pivik.finance_dashboard.service;
 
+import com.pivik.finance_dashboard.event.InvoiceChangedEvent;
+import com.pivik.finance_dashboard.model.Invoice;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
+
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.*;
-import java.util.UUID;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 @Service // Utility worker to save the folder on my device
 public class FileStorageService {
 
-    // The folder where files will live
-    private final Path storageLocation = Paths.get("uploads");
+    private static final Logger log = LoggerFactory.getLogger(FileStorageService.class);
+
+    // "<sha-256>.<ext>": files stored by content. Anything else is a legacy "UUID_name.pdf" in the flat folder.
+    private static final Pattern CONTENT_NAME = Pattern.compile("[0-9a-f]{64}\\.[a-z0-9]{1,8}");
+    private static final Pattern EXTENSION = Pattern.compile("[a-z0-9]{1,8}");
+
+    // Rows are keyed by the stored name, not the hash: the same bytes uploaded as .pdf and as .jpg are two files
+    private static final String CLAIM_SQL =
+            "INSERT INTO stored_file (name, hash, extension, size, ref_count, last_stored_at, original_name) VALUES (?, ?, ?, ?, 0, ?, ?) " +
+            "ON CONFLICT (name) DO UPDATE SET last_stored_at = EXCLUDED.last_stored_at";
+
+    private static final String REF_SQL =
+            "INSERT INTO stored_file (name, hash, extension, size, ref_count, last_stored_at) VALUES (?, ?, ?, 0, ?, now()) " +
+            "ON CONFLICT (name) DO UPDATE SET ref_count = stored_file.ref_count + EXCLUDED.ref_count";
+
+    // The folder where files will live: uploads/objects/ab/cd/abcd….pdf (two levels of 256 folders)
+    private final Path storageLocation;
+    private final Path objects;
+    private final Path incoming;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate sweepTransaction;
+    private final Duration orphanGrace;
+
+    // Hashes of old UUID-named files, so repeat downloads don't re-read them for an ETag
+    private final Map<String, LegacyHash> legacyHashes = new ConcurrentHashMap<>();
+
+    private final Counter deduplicated;
+    private final Counter reclaimed;
+
+    public FileStorageService(@Value("${pivik.storage.dir:uploads}") String directory,
+                              @Value("${pivik.storage.orphan-grace-minutes:60}") long orphanGraceMinutes,
+                              JdbcTemplate jdbcTemplate,
+                              TransactionTemplate transactionTemplate,
+                              MeterRegistry meterRegistry) {
+        this.storageLocation = Paths.get(directory);
+        this.objects = storageLocation.resolve("objects");
+        this.incoming = storageLocation.resolve("incoming");
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        // The sweep also runs from afterCommit, where the finished transaction is still bound: always start a new one
+        this.sweepTransaction = new TransactionTemplate(
+                transactionTemplate == null ? null : transactionTemplate.getTransactionManager());
+        this.sweepTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.orphanGrace = Duration.ofMinutes(orphanGraceMinutes);
+        this.deduplicated = meterRegistry.counter("pivik.storage.deduplicated");
+        this.reclaimed = meterRegistry.counter("pivik.storage.reclaimed");
 
-    public FileStorageService() {
         try {
-            Files.createDirectories(storageLocation);
+            Files.createDirectories(objects);
+            Files.createDirectories(incoming);
         } catch (Exception e) {
             throw new RuntimeException("Could not create upload directory!");
         }
     }
 
     public String storeFile(MultipartFile file) {
-        try {
-            // 1. Give it a unique name (uuid-filename.pdf)
-            String fileName = UUID.randomUUID() + "_" + file.getOriginalFilename();
-            
-            // 2. Figure out the destination path
-            Path targetLocation = this.storageLocation.resolve(fileName);
-            
-            // 3. Copy the bits
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
-            
-            return fileName;
+        try (InputStream in = file.getInputStream()) {
+            return store(in, file.getOriginalFilename());
         } catch (IOException e) {
             throw new RuntimeException("Failed to store file " + file.getOriginalFilename(), e);
         }
     }
-}
\ No newline at end of file
+
+    // Stores the bytes once, however many times they are uploaded, and returns the name to keep in fileUrl
+    public String store(InputStream in, String originalName) throws IOException {
+        // 1. Copy to a temp file, hashing on the way (one pass over the bytes)
+        Path temp = Files.createTempFile(incoming, "upload-", ".part");
+        try {
+            MessageDigest digest = newDigest();
+            long size;
+            try (InputStream hashing = new DigestInputStream(in, digest)) {
+                size = Files.copy(hashing, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return storeHashed(temp, HexFormat.of().formatHex(digest.digest()), size, originalName);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Same, for bytes that are already in the incoming folder and already hashed (a chunked upload).
+    // The file is moved, never copied; if the same bytes are stored already it is left for the caller to delete.
+    public String storeHashed(Path file, String hash, long size, String originalName) throws IOException {
+        String extension = extensionOf(originalName);
+        String fileName = hash + "." + extension;
+
+        // 2. Claim the row before looking at the disk: a sweep deleting these bytes holds the row lock,
+        //    so we wait for it to finish and then see the file gone
+        jdbcTemplate.update(CLAIM_SQL, fileName, hash, extension, size, Timestamp.from(Instant.now()), originalName);
+
+        // 3. Move into place, unless the same bytes are already stored
+        Path target = resolve(fileName);
+        if (Files.exists(target)) {
+            deduplicated.increment();
+        } else {
+            Files.createDirectories(target.getParent());
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return fileName;
+    }
+
+    // Uploads in progress live here, on the same file system as the stored files, so storing them is a rename
+    public Path incomingDirectory() {
+        return incoming;
+    }
+
+    // Where a stored file lives on disk. Legacy names are "UUID_<original name>", and the original name may
+    // well contain "..", so only separators and names that are a "." or ".." segment are refused
+    public Path resolve(String fileName) {
+        if (fileName.isEmpty() || fileName.contains("/") || fileName.contains("\\")
+                || fileName.equals(".") || fileName.equals("..")) {
+            throw new IllegalArgumentException("Not a stored file name: " + fileName);
+        }
+        if (isContentAddressed(fileName)) {
+            return objects.resolve(fileName.substring(0, 2)).resolve(fileName.substring(2, 4)).resolve(fileName);
+        }
+        return storageLocation.resolve(fileName);
+    }
+
+    // Content-addressed names always hold the same bytes; legacy files could in principle be replaced
+    public boolean isImmutable(String fileName) {
+        return isContentAddressed(fileName);
+    }
+
+    // SHA-256 of a stored file: free for content-addressed names, otherwise read in chunks once per file version
+    public String sha256(String fileName) {
+        if (isContentAddressed(fileName)) {
+            return fileName.substring(0, 64);
+        }
+        Path path = resolve(fileName);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            LegacyHash known = legacyHashes.get(fileName);
+            if (known != null && known.size() == attributes.size() && known.modified().equals(attributes.lastModifiedTime())) {
+                return known.hash();
+            }
+            String hash = hash(path);
+            legacyHashes.put(fileName, new LegacyHash(attributes.size(), attributes.lastModifiedTime(), hash));
+            return hash;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to hash file " + fileName, e);
+        }
+    }
+
+    private record LegacyHash(long size, FileTime modified, String hash) {}
+
+    private static String hash(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            MessageDigest digest = newDigest();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        }
+    }
+
+    // Reference counting: follows every invoice write, in the same transaction
+    @EventListener
+    public void onInvoiceChanged(InvoiceChangedEvent event) {
+        String before = fileOf(event.before());
+        String after = fileOf(event.after());
+        if (Objects.equals(before, after)) {
+            return;
+        }
+        if (after != null) {
+            addReference(after, 1);
+        }
+        if (before != null) {
+            addReference(before, -1);
+            // The file may now be unreferenced; look once the delete is committed
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        sweep();
+                    }
+                });
+            }
+        }
+    }
+
+    private void addReference(String fileName, int delta) {
+        jdbcTemplate.update(REF_SQL, fileName, fileName.substring(0, 64), fileName.substring(65), delta);
+    }
+
+    private static String fileOf(Invoice invoice) {
+        return invoice != null && invoice.getFileUrl() != null && isContentAddressed(invoice.getFileUrl())
+                ? invoice.getFileUrl() : null;
+    }
+
+    // Recount from the invoice table on startup (repairs anything a crash left behind), then clean up
+    @EventListener(ApplicationReadyEvent.class)
+    public void recountAndSweep() {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("LOCK TABLE invoice IN SHARE MODE");
+            jdbcTemplate.update("UPDATE stored_file SET ref_count = 0 WHERE ref_count <> 0");
+            jdbcTemplate.update(
+                    "UPDATE stored_file s SET ref_count = c.n " +
+                    "FROM (SELECT file_url, COUNT(*) AS n FROM invoice WHERE file_url IS NOT NULL GROUP BY file_url) c " +
+                    "WHERE c.file_url = s.name");
+        });
+        sweep();
+    }
+
+    // Deletes files no invoice points at, once nobody has uploaded them for the grace period
+    // (an upload still on its way through the pipeline has no invoice yet).
+    public void sweep() {
+        try {
+            sweepTransaction.executeWithoutResult(status -> {
+                // Row locks keep a concurrent upload of the same bytes waiting until the file is gone
+                List<String> unreferenced = jdbcTemplate.queryForList(
+                        "SELECT name FROM stored_file WHERE ref_count <= 0 AND last_stored_at < ? " +
+                        "ORDER BY last_stored_at LIMIT 1000 FOR UPDATE SKIP LOCKED",
+                        String.class, Timestamp.from(Instant.now().minus(orphanGrace)));
+                for (String fileName : unreferenced) {
+                    try {
+                        Files.deleteIfExists(resolve(fileName));
+                    } catch (IOException e) {
+                        throw new RuntimeException("Failed to delete stored file " + fileName, e);
+                    }
+                }
+                jdbcTemplate.batchUpdate("DELETE FROM stored_file WHERE name = ?",
+                        unreferenced.stream().map(fileName -> new Object[]{fileName}).toList());
+                reclaimed.increment(unreferenced.size());
+            });
+        } catch (RuntimeException e) {
+            log.warn("Stored file sweep failed: {}", e.getMessage());
+        }
+    }
+
+    private static boolean isContentAddressed(String fileName) {
+        return CONTENT_NAME.matcher(fileName).matches();
+    }
+
+    private static String extensionOf(String originalName) {
+        if (originalName != null) {
+            String extension = originalName.substring(originalName.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+            if (originalName.contains(".") && EXTENSION.matcher(extension).matches()) {
+                return extension;
+            }
+        }
+        return "pdf";
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
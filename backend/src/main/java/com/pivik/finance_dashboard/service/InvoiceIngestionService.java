@@ -0,0 +1,436 @@
+package com.pivik.finance_dashboard.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pivik.finance_dashboard.dto.BulkUploadResult;
+import com.pivik.finance_dashboard.model.ExtractionCacheEntry;
+import com.pivik.finance_dashboard.model.IngestionJob;
+import com.pivik.finance_dashboard.model.IngestionJob.Stage;
+import com.pivik.finance_dashboard.model.Invoice;
+import com.pivik.finance_dashboard.repository.InvoiceRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+@Service // Runs an upload through store -> extract -> AI enrich -> persist
+public class InvoiceIngestionService {
+
+    private static final Duration FINISHED_JOB_RETENTION = Duration.ofHours(1);
+    // How long a bulk upload waits, in all, for pipeline slots before the rest of its files are turned away
+    private static final Duration BULK_ADMISSION_WAIT = Duration.ofMinutes(2);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Logger log = LoggerFactory.getLogger(InvoiceIngestionService.class);
+
+    private final FileStorageService fileStorageService;
+    private final PdfExtractionService pdfExtractionService;
+    private final OpenAiService openAiService;
+    private final ExtractionCacheService extractionCache;
+    private final VendorTemplateService vendorTemplates;
+    private final InvoiceTextCompactor compactor;
+    private final InvoiceSearchService searchService;
+    private final InvoiceRepository invoiceRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObservationRegistry observationRegistry;
+
+    // One pool per stage: PDFBox is CPU bound, the AI call mostly waits on the network, the save is short
+    private final ExecutorService extractExecutor;
+    private final ExecutorService aiExecutor;
+    private final ExecutorService persistExecutor;
+
+    // Backpressure: at most this many async uploads in the pipeline, the rest get a 429
+    private final Semaphore inFlight;
+    private final int bulkAiConcurrency;
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+
+    public InvoiceIngestionService(FileStorageService fileStorageService,
+                                   PdfExtractionService pdfExtractionService,
+                                   OpenAiService openAiService,
+                                   ExtractionCacheService extractionCache,
+                                   VendorTemplateService vendorTemplates,
+                                   InvoiceTextCompactor compactor,
+                                   InvoiceSearchService searchService,
+                                   InvoiceRepository invoiceRepository,
+                                   TransactionTemplate transactionTemplate,
+                                   ObservationRegistry observationRegistry,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${pivik.ingestion.extract-threads:0}") int extractThreads,
+                                   @Value("${pivik.ingestion.ai-threads:16}") int aiThreads,
+                                   @Value("${pivik.ingestion.persist-threads:2}") int persistThreads,
+                                   @Value("${pivik.ingestion.max-in-flight:200}") int maxInFlight,
+                                   @Value("${pivik.ingestion.bulk-ai-concurrency:8}") int bulkAiConcurrency) {
+        this.fileStorageService = fileStorageService;
+        this.pdfExtractionService = pdfExtractionService;
+        this.openAiService = openAiService;
+        this.extractionCache = extractionCache;
+        this.vendorTemplates = vendorTemplates;
+        this.compactor = compactor;
+        this.searchService = searchService;
+        this.invoiceRepository = invoiceRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.observationRegistry = observationRegistry;
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.extractExecutor = newStagePool("ingest-extract", extractThreads > 0 ? extractThreads : cores, maxInFlight);
+        this.aiExecutor = newStagePool("ingest-ai", aiThreads, maxInFlight);
+        this.persistExecutor = newStagePool("ingest-persist", persistThreads, maxInFlight);
+        this.inFlight = new Semaphore(maxInFlight);
+        this.bulkAiConcurrency = Math.max(1, bulkAiConcurrency);
+
+        meterRegistry.gauge("pivik.ingest.in_flight", inFlight, permits -> maxInFlight - permits.availablePermits());
+    }
+
+    // Queues are as big as the admission limit, so a job that got in never gets rejected by a later stage
+    private static ExecutorService newStagePool(String name, int threads, int queueCapacity) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    // Synchronous upload: same stages, all on the caller's thread
+    public Invoice ingest(MultipartFile file) {
+        Observation upload = startUpload("sync");
+        try {
+            String filename = stage("store", upload, () -> store(file));
+            String invoiceText = stage("extract", upload, () -> extract(filename));
+            Invoice invoice = stage("enrich", upload, () -> enrich(filename, invoiceText));
+            return stage("persist", upload, () -> persist(invoice, invoiceText));
+        } catch (RuntimeException e) {
+            upload.error(e);
+            throw e;
+        } finally {
+            upload.stop();
+        }
+    }
+
+    // Asynchronous upload: the file is copied before we return (the multipart temp file dies with the request)
+    public IngestionJob submit(MultipartFile file) {
+        return submit(file.getOriginalFilename(), "async", () -> store(file));
+    }
+
+    // Same pipeline for a file that is already on our disk: "store" puts it into storage and returns its
+    // stored name, and only runs once the job has been admitted
+    public IngestionJob submit(String originalName, String mode, Supplier<String> store) {
+        if (!inFlight.tryAcquire()) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Ingestion pipeline is full, retry shortly");
+        }
+
+        pruneFinishedJobs();
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), originalName);
+        jobs.put(job.getId(), job);
+        Observation upload = startUpload(mode);
+
+        String filename;
+        try {
+            filename = stage("store", upload, store);
+        } catch (RuntimeException e) {
+            job.fail(e.getMessage());
+            upload.error(e);
+            upload.stop();
+            inFlight.release();
+            throw e;
+        }
+
+        CompletableFuture
+                .supplyAsync(() -> {
+                    job.moveTo(Stage.EXTRACTING);
+                    return stage("extract", upload, () -> extract(filename));
+                }, extractExecutor)
+                .thenApplyAsync(text -> {
+                    job.moveTo(Stage.ENRICHING);
+                    Invoice invoice = stage("enrich", upload, () -> enrich(filename, text));
+                    return Map.entry(invoice, text);
+                }, aiExecutor)
+                .thenApplyAsync(enriched -> {
+                    job.moveTo(Stage.PERSISTING);
+                    return stage("persist", upload, () -> persist(enriched.getKey(), enriched.getValue()));
+                }, persistExecutor)
+                .whenComplete((saved, error) -> {
+                    if (error != null) {
+                        Throwable cause = error.getCause() != null ? error.getCause() : error;
+                        job.fail(reason(cause));
+                        upload.error(cause);
+                    } else {
+                        job.complete(saved.getId());
+                    }
+                    upload.stop();
+                    inFlight.release();
+                });
+
+        return job;
+    }
+
+    // Bulk upload: extraction fans out across cores, AI calls are capped, and everything is saved in one batch.
+    // Files enter the pipeline one permit at a time, so a batch bigger than the in-flight limit drains through
+    // it instead of being turned away; each file gets its own result, and a bad one doesn't sink the rest.
+    public List<BulkUploadResult> ingestAll(List<MultipartFile> files) {
+        Observation upload = startUpload("bulk");
+        try {
+            long admissionDeadline = System.nanoTime() + BULK_ADMISSION_WAIT.toNanos();
+            List<CompletableFuture<Map.Entry<Invoice, String>>> analyses = new ArrayList<>(files.size());
+            List<CompletableFuture<?>> lanes = new ArrayList<>(Collections.nCopies(bulkAiConcurrency, CompletableFuture.completedFuture(null)));
+            for (int i = 0; i < files.size(); i++) {
+                MultipartFile file = files.get(i);
+                if (!admit(admissionDeadline)) {
+                    analyses.add(CompletableFuture.failedFuture(
+                            new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Ingestion pipeline is full, retry this file shortly")));
+                    continue;
+                }
+
+                CompletableFuture<Map.Entry<Invoice, String>> analysis;
+                try {
+                    // 1. Store while the request (and its multipart temp file) is still alive
+                    String filename = stage("store", upload, () -> store(file));
+
+                    // 2. Extract in parallel across cores
+                    CompletableFuture<String> text = CompletableFuture.supplyAsync(
+                            () -> stage("extract", upload, () -> extract(filename)), extractExecutor);
+
+                    // 3. Enrich through bulkAiConcurrency "lanes": each lane sends one file at a time to OpenAI,
+                    //    so the cap holds without parking pool threads on a lock
+                    int lane = i % bulkAiConcurrency;
+                    analysis = lanes.get(lane)
+                            .handle((ignored, error) -> null) // a failed file must not stall the rest of its lane
+                            .thenCombineAsync(text, (ignored, invoiceText) ->
+                                    Map.entry(stage("enrich", upload, () -> enrich(filename, invoiceText)), invoiceText), aiExecutor);
+                    lanes.set(lane, analysis);
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    analyses.add(CompletableFuture.failedFuture(e));
+                    continue;
+                }
+                analysis.whenComplete((result, error) -> inFlight.release());
+                analyses.add(analysis);
+            }
+
+            BulkUploadResult[] results = new BulkUploadResult[files.size()];
+            List<Integer> ready = new ArrayList<>();
+            List<Invoice> invoices = new ArrayList<>();
+            List<String> texts = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    Map.Entry<Invoice, String> analyzed = analyses.get(i).join();
+                    ready.add(i);
+                    invoices.add(analyzed.getKey());
+                    texts.add(analyzed.getValue());
+                } catch (CompletionException | CancellationException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    log.warn("Bulk upload file failed file={} error={}", files.get(i).getOriginalFilename(), reason(cause));
+                    results[i] = BulkUploadResult.failed(files.get(i).getOriginalFilename(), reason(cause));
+                }
+            }
+
+            // 4. One transaction for the inserts (in JDBC batches) and the search index rows, so either both
+            //    land or neither does. If it rolls back, each invoice is saved on its own so only the bad ones fail.
+            stage("persist", upload, () -> {
+                try {
+                    List<Invoice> saved = transactionTemplate.execute(status -> {
+                        List<Invoice> batch = invoiceRepository.saveAll(invoices);
+                        searchService.indexAll(batch, texts);
+                        return batch;
+                    });
+                    for (int j = 0; j < ready.size(); j++) {
+                        results[ready.get(j)] = BulkUploadResult.saved(files.get(ready.get(j)).getOriginalFilename(), saved.get(j));
+                    }
+                } catch (RuntimeException batchError) {
+                    log.warn("Bulk save failed, saving one by one: {}", batchError.getMessage());
+                    for (int j = 0; j < ready.size(); j++) {
+                        String fileName = files.get(ready.get(j)).getOriginalFilename();
+                        try {
+                            invoices.get(j).setId(null); // handed out by the rolled-back batch
+                            results[ready.get(j)] = BulkUploadResult.saved(fileName, persist(invoices.get(j), texts.get(j)));
+                        } catch (RuntimeException e) {
+                            results[ready.get(j)] = BulkUploadResult.failed(fileName, reason(e));
+                        }
+                    }
+                }
+                return null;
+            });
+            return List.of(results);
+        } catch (RuntimeException e) {
+            upload.error(e);
+            throw e;
+        } finally {
+            upload.stop();
+        }
+    }
+
+    // Waits for a pipeline slot, but not past the batch's deadline
+    private boolean admit(long deadlineNanos) {
+        try {
+            return inFlight.tryAcquire(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static String reason(Throwable error) {
+        if (error instanceof ResponseStatusException status && status.getReason() != null) {
+            return status.getReason();
+        }
+        return error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+    }
+
+    public Optional<IngestionJob> findJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private void pruneFinishedJobs() {
+        Instant cutoff = Instant.now().minus(FINISHED_JOB_RETENTION);
+        jobs.values().removeIf(job -> job.isFinished() && job.getUpdatedAt().isBefore(cutoff));
+    }
+
+    // Timing: one "pivik.ingest" observation per upload (tagged sync/async/bulk/chunked), with a child
+    // "pivik.ingest.stage" observation per stage, so a slow upload shows where its time went
+    private Observation startUpload(String mode) {
+        return Observation.createNotStarted("pivik.ingest", observationRegistry)
+                .lowCardinalityKeyValue("mode", mode)
+                .start();
+    }
+
+    private <T> T stage(String stage, Observation upload, Supplier<T> work) {
+        return Observation.createNotStarted("pivik.ingest.stage", observationRegistry)
+                .lowCardinalityKeyValue("stage", stage)
+                .parentObservation(upload)
+                .observe(work);
+    }
+
+    // 1. Save the File to Disk
+    private String store(MultipartFile file) {
+        return fileStorageService.storeFile(file);
+    }
+
+    // 2. Extract Text (a busy or timed-out extractor throws a 503 rather than handing enrich() an empty invoice)
+    private String extract(String filename) {
+        String invoiceText = pdfExtractionService.extractText(fileStorageService.resolve(filename).toAbsolutePath().toString());
+
+        if (log.isDebugEnabled()) {
+            log.debug("Extracted text file={} chars={} preview={}", filename, invoiceText.length(),
+                    invoiceText.length() > 50 ? invoiceText.substring(0, 50) + "..." : invoiceText);
+        }
+        return invoiceText;
+    }
+
+    // 3. Create the Invoice and fill it from the AI analysis
+    private Invoice enrich(String filename, String invoiceText) {
+        Invoice invoice = new Invoice();
+        invoice.setFileUrl(filename);
+        invoice.setStatus("On Payment Term");
+
+        if (invoiceText != null && !invoiceText.isBlank() && !invoiceText.startsWith("Error")) {
+            // Seen this invoice before? Reuse what the AI said last time
+            String fileHash = fileStorageService.sha256(filename);
+            Optional<ExtractionCacheEntry> cached = extractionCache.lookup(fileHash, invoiceText);
+            if (cached.isPresent()) {
+                applyCached(invoice, cached.get());
+                return invoice;
+            }
+
+            // A vendor whose layout we have learned? Read the fields locally instead of asking OpenAI
+            if (vendorTemplates.apply(invoice, invoiceText)) {
+                return invoice;
+            }
+
+            // Only the lines that matter go into the prompt (fewer tokens, faster answer)
+            String jsonResponse = openAiService.extractInvoiceDetails(compactor.compact(invoiceText).text());
+
+            if (jsonResponse != null) {
+                if (applyAiResponse(invoice, jsonResponse)) {
+                    extractionCache.store(fileHash, invoiceText, invoice);
+                }
+            } else {
+                invoice.setVendor("Unknown (AI Failed)");
+                invoice.setDate(LocalDate.now());
+            }
+        } else {
+            invoice.setVendor("Unknown (PDF Empty)");
+            invoice.setDate(LocalDate.now());
+        }
+
+        return invoice;
+    }
+
+    // Fills the invoice from the AI's JSON answer; true if the answer named a vendor (worth caching)
+    static boolean applyAiResponse(Invoice invoice, String jsonResponse) {
+        try {
+            JsonNode root = MAPPER.readTree(jsonResponse);
+
+            // Safely fill fields
+            if (root.has("vendor")) invoice.setVendor(root.get("vendor").asText());
+            if (root.has("invoiceNumber")) invoice.setInvoiceNumber(root.get("invoiceNumber").asText());
+            if (root.has("amount")) invoice.setAmount(root.get("amount").asDouble());
+            if (root.has("category")) invoice.setCategory(root.get("category").asText());
+
+            if (root.has("date")) {
+                invoice.setDate(LocalDate.parse(root.get("date").asText()));
+            } else {
+                invoice.setDate(LocalDate.now());
+            }
+            return root.has("vendor");
+        } catch (Exception e) {
+            log.warn("Could not parse the AI answer: {}", e.getMessage());
+            invoice.setVendor("Unknown (Parse Error)");
+            invoice.setDate(LocalDate.now());
+            return false;
+        }
+    }
+
+    private void applyCached(Invoice invoice, ExtractionCacheEntry cached) {
+        invoice.setVendor(cached.getVendor());
+        invoice.setInvoiceNumber(cached.getInvoiceNumber());
+        invoice.setAmount(cached.getAmount());
+        invoice.setDate(cached.getDate() != null ? cached.getDate() : LocalDate.now());
+        invoice.setCategory(cached.getCategory());
+    }
+
+    // 4. Save to the database, and make the text searchable (one transaction: no invoice without its index row)
+    private Invoice persist(Invoice invoice, String invoiceText) {
+        return transactionTemplate.execute(status -> {
+            Invoice saved = invoiceRepository.save(invoice);
+            searchService.index(saved.getId(), invoiceText);
+            return saved;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        extractExecutor.shutdown();
+        aiExecutor.shutdown();
+        persistExecutor.shutdown();
+    }
+}
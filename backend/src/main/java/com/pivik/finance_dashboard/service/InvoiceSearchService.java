@@ -0,0 +1,271 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.dto.InvoiceFilter;
+import com.pivik.finance_dashboard.dto.InvoiceSearchHit;
+import com.pivik.finance_dashboard.dto.InvoiceSummary;
+import com.pivik.finance_dashboard.event.ChangeType;
+import com.pivik.finance_dashboard.event.InvoiceChangedEvent;
+import com.pivik.finance_dashboard.model.Invoice;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+@Service // Keeps the extracted PDF text in a PostgreSQL full-text index (invoice_text) and searches it
+public class InvoiceSearchService {
+
+    private static final Logger log = LoggerFactory.getLogger(InvoiceSearchService.class);
+
+    private static final String CONFIG = "english"; // stemming: "deposits" finds "deposit"
+    private static final String TSQUERY = "websearch_to_tsquery('" + CONFIG + "', ?)"; // "pallet deposit", "-fuel", "\"exact words\""
+    private static final int MAX_BODY_CHARS = 200_000; // tsvector tops out at 1 MB
+
+    // Vendor and number weigh most, then category/project, then the PDF text ("i" is the invoice's fields)
+    private static final String DOCUMENT =
+            "setweight(to_tsvector('" + CONFIG + "', coalesce(i.vendor, '') || ' ' || coalesce(i.invoice_number, '')), 'A') || " +
+            "setweight(to_tsvector('" + CONFIG + "', coalesce(i.category, '') || ' ' || coalesce(i.project, '')), 'B') || " +
+            "setweight(to_tsvector('" + CONFIG + "', %s), 'D')";
+
+    // No row is written for an invoice that was deleted in the meantime
+    private static final String INDEX_SQL =
+            "INSERT INTO invoice_text (invoice_id, body, document) " +
+            "SELECT i.id, CAST(? AS text), " + DOCUMENT.formatted("CAST(? AS text)") + " FROM invoice i WHERE i.id = ? " +
+            "ON CONFLICT (invoice_id) DO UPDATE SET body = EXCLUDED.body, document = EXCLUDED.document";
+
+    // Takes the new fields as parameters: the invoice UPDATE itself may still be sitting in a JDBC batch
+    private static final String REWEIGH_SQL =
+            "UPDATE invoice_text t SET document = " + DOCUMENT.formatted("t.body") +
+            " FROM (SELECT CAST(? AS text) AS vendor, CAST(? AS text) AS invoice_number," +
+            " CAST(? AS text) AS category, CAST(? AS text) AS project) i WHERE t.invoice_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FileStorageService fileStorageService;
+    private final PdfExtractionService pdfExtractionService;
+    private final int maxCandidates;
+    private final int backfillBatch;
+    private final ExecutorService backfillExecutor;
+    private final TransactionTemplate searchTransaction;
+    private final Timer searchTimer;
+
+    // The EntityManagerFactory is only here so Hibernate has created the invoice table before we run
+    public InvoiceSearchService(JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                FileStorageService fileStorageService,
+                                PdfExtractionService pdfExtractionService,
+                                EntityManagerFactory entityManagerFactory,
+                                MeterRegistry meterRegistry,
+                                @Value("${pivik.search.max-candidates:10000}") int maxCandidates,
+                                @Value("${pivik.search.backfill-threads:0}") int backfillThreads,
+                                @Value("${pivik.search.backfill-batch:500}") int backfillBatch) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fileStorageService = fileStorageService;
+        this.pdfExtractionService = pdfExtractionService;
+        this.maxCandidates = maxCandidates;
+        this.backfillBatch = backfillBatch;
+        this.searchTimer = meterRegistry.timer("pivik.search.query");
+        this.searchTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.searchTransaction.setReadOnly(true);
+
+        int threads = backfillThreads > 0 ? backfillThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.backfillExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "search-backfill-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PostConstruct
+    public void createIndex() {
+        // Plain SQL: Hibernate can't declare tsvector columns or GIN indexes
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS invoice_text (" +
+                "invoice_id bigint PRIMARY KEY, body text NOT NULL, document tsvector NOT NULL)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_invoice_text_document ON invoice_text USING GIN (document)");
+    }
+
+    // 1. Upload: store the text we already extracted for the AI (failed extractions index the fields only)
+
+    public void index(Long invoiceId, String text) {
+        jdbcTemplate.update(INDEX_SQL, bodyOf(text), bodyOf(text), invoiceId);
+    }
+
+    public void indexAll(List<Invoice> invoices, List<String> texts) {
+        List<Object[]> rows = new ArrayList<>(invoices.size());
+        for (int i = 0; i < invoices.size(); i++) {
+            String body = bodyOf(texts.get(i));
+            rows.add(new Object[]{body, body, invoices.get(i).getId()});
+        }
+        jdbcTemplate.batchUpdate(INDEX_SQL, rows);
+    }
+
+    private static String bodyOf(String text) {
+        if (text == null || text.startsWith("Error")) {
+            return "";
+        }
+        // PDFs can carry NUL characters, which PostgreSQL text refuses
+        String body = text.replace('\u0000', ' ');
+        return body.length() > MAX_BODY_CHARS ? body.substring(0, MAX_BODY_CHARS) : body;
+    }
+
+    // 2. Edit and delete: follow every invoice write, in the same transaction
+
+    @EventListener
+    public void onInvoiceChanged(InvoiceChangedEvent event) {
+        if (event.type() == ChangeType.DELETED) {
+            jdbcTemplate.update("DELETE FROM invoice_text WHERE invoice_id = ?", event.before().getId());
+        } else if (event.type() == ChangeType.UPDATED && (event.before() == null || !sameSearchFields(event.before(), event.after()))) {
+            Invoice after = event.after();
+            jdbcTemplate.update(REWEIGH_SQL, after.getVendor(), after.getInvoiceNumber(), after.getCategory(),
+                    after.getProject(), after.getId());
+        }
+    }
+
+    private static boolean sameSearchFields(Invoice a, Invoice b) {
+        return Objects.equals(a.getVendor(), b.getVendor())
+                && Objects.equals(a.getInvoiceNumber(), b.getInvoiceNumber())
+                && Objects.equals(a.getCategory(), b.getCategory())
+                && Objects.equals(a.getProject(), b.getProject());
+    }
+
+    // 3. Search: best matches first, narrowed by the same filters as the listing.
+    //    A query matching more than maxCandidates invoices is ranked among the newest maxCandidates of them.
+
+    public List<InvoiceSearchHit> search(String query, InvoiceFilter filter, int limit, int offset) {
+        StringBuilder where = new StringBuilder("t.document @@ " + TSQUERY);
+        List<Object> args = new ArrayList<>();
+        args.add(query);
+        if (filter.vendor() != null) { where.append(" AND i.vendor = ?"); args.add(filter.vendor()); }
+        if (filter.status() != null) { where.append(" AND i.status = ?"); args.add(filter.status()); }
+        if (filter.category() != null) { where.append(" AND i.category = ?"); args.add(filter.category()); }
+        if (filter.project() != null) { where.append(" AND i.project = ?"); args.add(filter.project()); }
+        if (filter.from() != null) { where.append(" AND i.date >= ?"); args.add(Date.valueOf(filter.from())); }
+        if (filter.to() != null) { where.append(" AND i.date <= ?"); args.add(Date.valueOf(filter.to())); }
+        args.add(maxCandidates);
+        args.add(query);
+        args.add(limit);
+        args.add(offset);
+        args.add(query);
+
+        // 1. match: the newest maxCandidates matching invoices. A selective query reads them from the GIN index;
+        //    one that matches nearly everything walks the primary key backwards and stops early.
+        // 2. hit: rank those, keep one page. 3. Build snippets (the slow part) for that page only.
+        String sql = "WITH match AS (SELECT t.invoice_id, t.document FROM invoice_text t JOIN invoice i ON i.id = t.invoice_id " +
+                "WHERE " + where + " ORDER BY t.invoice_id DESC LIMIT ?), " +
+                "hit AS (SELECT m.invoice_id, ts_rank_cd(m.document, " + TSQUERY + ") AS rank FROM match m " +
+                "ORDER BY rank DESC, m.invoice_id DESC LIMIT ? OFFSET ?) " +
+                "SELECT i.id, i.vendor, i.invoice_number, i.amount, i.date, i.category, i.status, i.project, i.file_url, hit.rank, " +
+                "ts_headline('" + CONFIG + "', t.body, " + TSQUERY + ", 'MaxFragments=2, MinWords=5, MaxWords=20') AS snippet " +
+                "FROM hit JOIN invoice i ON i.id = hit.invoice_id JOIN invoice_text t ON t.invoice_id = hit.invoice_id " +
+                "ORDER BY hit.rank DESC, i.id DESC";
+
+        return searchTimer.record(() -> searchTransaction.execute(status -> {
+            // Which of the two paths is right depends on how common the words are, so plan with the actual query
+            // every time rather than a cached generic plan
+            jdbcTemplate.execute("SET LOCAL plan_cache_mode = force_custom_plan");
+            return jdbcTemplate.query(sql, (rs, rowNum) -> new InvoiceSearchHit(
+                    new InvoiceSummary(
+                            rs.getLong("id"),
+                            rs.getString("vendor"),
+                            rs.getString("invoice_number"),
+                            rs.getObject("amount", Double.class),
+                            rs.getObject("date", LocalDate.class),
+                            rs.getString("category"),
+                            rs.getString("status"),
+                            rs.getString("project"),
+                            rs.getString("file_url")),
+                    rs.getDouble("rank"),
+                    rs.getString("snippet")), args.toArray());
+        }));
+    }
+
+    // 4. Backfill: invoices from before the index existed, extracted in parallel (each PDF once)
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillInBackground() {
+        Thread thread = new Thread(this::backfill, "search-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void backfill() {
+        long lastId = 0;
+        int indexed = 0;
+        try {
+            while (true) {
+                List<Map<String, Object>> missing = jdbcTemplate.queryForList(
+                        "SELECT i.id, i.file_url FROM invoice i LEFT JOIN invoice_text t ON t.invoice_id = i.id " +
+                        "WHERE t.invoice_id IS NULL AND i.id > ? ORDER BY i.id LIMIT ?", lastId, backfillBatch);
+                if (missing.isEmpty()) {
+                    break;
+                }
+                lastId = ((Number) missing.get(missing.size() - 1).get("id")).longValue();
+
+                // Invoices sharing a file share its text
+                Map<String, List<Long>> idsByFile = missing.stream().collect(Collectors.groupingBy(
+                        row -> Objects.toString(row.get("file_url"), ""),
+                        Collectors.mapping(row -> ((Number) row.get("id")).longValue(), Collectors.toList())));
+
+                List<CompletableFuture<Void>> work = idsByFile.entrySet().stream()
+                        .map(entry -> CompletableFuture.runAsync(() -> {
+                            String text = textOf(entry.getKey());
+                            jdbcTemplate.batchUpdate(INDEX_SQL, entry.getValue().stream()
+                                    .map(id -> new Object[]{bodyOf(text), bodyOf(text), id}).toList());
+                        }, backfillExecutor))
+                        .toList();
+                CompletableFuture.allOf(work.toArray(CompletableFuture[]::new)).join();
+                indexed += missing.size();
+            }
+            if (indexed > 0) {
+                log.info("Search backfill finished invoices={}", indexed);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Search backfill stopped after invoices={}: {}", indexed, e.getMessage());
+        }
+    }
+
+    private String textOf(String fileUrl) {
+        try {
+            if (fileUrl.isEmpty() || !Files.exists(fileStorageService.resolve(fileUrl))) {
+                return null;
+            }
+            return pdfExtractionService.extractText(fileStorageService.resolve(fileUrl).toAbsolutePath().toString());
+        } catch (ExtractionUnavailableException e) {
+            if (!e.timedOut()) {
+                throw e; // busy: stop here, the rest is picked up on the next start
+            }
+            return null; // this file always takes too long: index it without its text rather than stall on it
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        backfillExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,144 @@
+package com.pivik.finance_dashboard.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+@Service // Shrinks invoice text to what the AI needs (vendor, number, total, date) before it goes into the prompt
+public class InvoiceTextCompactor {
+
+    private static final Logger log = LoggerFactory.getLogger(InvoiceTextCompactor.class);
+
+    public record Result(String text, int originalTokens, int compactTokens) {
+        public double ratio() {
+            return originalTokens == 0 ? 1 : (double) compactTokens / originalTokens;
+        }
+    }
+
+    // Lines that point at a field we want, and the ones around them
+    private static final Pattern CUE = Pattern.compile(
+            "invoice|inv\\b|\\bno\\.|number|#|total|amount|balance|due|date|bill to|sold to|subtotal|tax|gst|hst|pst|vat",
+            Pattern.CASE_INSENSITIVE);
+
+    // Legal text and page furniture the model never needs
+    private static final Pattern BOILERPLATE = Pattern.compile(
+            "terms and conditions|terms & conditions|all rights reserved|thank you|please remit|return policy|warranty"
+                    + "|liable|liability|subject to|governed by|interest will be charged|www\\.|https?://",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern PAGE_MARKER = Pattern.compile("^page \\d+( of \\d+)?$", Pattern.CASE_INSENSITIVE);
+
+    private static final int HEADER_LINES = 8; // the vendor's name and address are at the top
+    private static final int PRIORITY_KEEP = 3;
+    private static final int PRIORITY_NEAR_CUE = 2;
+    private static final int PRIORITY_OTHER = 1;
+
+    private final int tokenBudget;
+    private final DistributionSummary ratios;
+    private final Counter originalTokens;
+    private final Counter sentTokens;
+
+    public InvoiceTextCompactor(@Value("${pivik.compaction.token-budget:600}") int tokenBudget,
+                                MeterRegistry meterRegistry) {
+        this.tokenBudget = tokenBudget;
+        this.ratios = DistributionSummary.builder("pivik.compaction.ratio")
+                .description("Compacted size / original size of the text sent to OpenAI")
+                .register(meterRegistry);
+        this.originalTokens = meterRegistry.counter("pivik.compaction.tokens", "stage", "original");
+        this.sentTokens = meterRegistry.counter("pivik.compaction.tokens", "stage", "sent");
+    }
+
+    public Result compact(String text) {
+        int before = estimateTokens(text);
+
+        // 1. Clean lines; drop empties, boilerplate and anything repeated (page headers/footers)
+        List<String> lines = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (String raw : text.split("\\R")) {
+            String line = raw.trim().replaceAll("\\s+", " ");
+            if (line.isEmpty() || PAGE_MARKER.matcher(line).matches()
+                    || (BOILERPLATE.matcher(line).find() && !hasDigit(line))) {
+                continue;
+            }
+            if (seen.add(line.toLowerCase(Locale.ROOT))) {
+                lines.add(line);
+            }
+        }
+
+        // 2. Over budget? Keep the header and the cue lines first, then their neighbours, then the rest in order
+        List<String> kept = lines;
+        if (tokenBudget > 0 && estimateTokens(lines) > tokenBudget) {
+            kept = withinBudget(lines);
+        }
+
+        String compacted = String.join("\n", kept);
+        Result result = new Result(compacted, before, estimateTokens(compacted));
+
+        ratios.record(result.ratio());
+        originalTokens.increment(result.originalTokens());
+        sentTokens.increment(result.compactTokens());
+        log.debug("Compacted invoice text tokens={}->{} ratio={}", result.originalTokens(), result.compactTokens(),
+                String.format("%.2f", result.ratio()));
+        return result;
+    }
+
+    private List<String> withinBudget(List<String> lines) {
+        int[] priority = new int[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            priority[i] = Math.max(priority[i], i < HEADER_LINES ? PRIORITY_KEEP : PRIORITY_OTHER);
+            if (CUE.matcher(lines.get(i)).find()) {
+                priority[i] = PRIORITY_KEEP;
+                if (i > 0) priority[i - 1] = Math.max(priority[i - 1], PRIORITY_NEAR_CUE);
+                if (i + 1 < lines.size()) priority[i + 1] = Math.max(priority[i + 1], PRIORITY_NEAR_CUE);
+            }
+        }
+
+        // Highest priority first; among equals, the earlier line
+        List<Integer> order = IntStream.range(0, lines.size()).boxed()
+                .sorted(Comparator.comparingInt((Integer i) -> -priority[i]).thenComparingInt(i -> i))
+                .toList();
+
+        Set<Integer> chosen = new HashSet<>();
+        int tokens = 0;
+        for (int i : order) {
+            int cost = estimateTokens(lines.get(i)) + 1; // + the line break
+            if (tokens + cost > tokenBudget) {
+                continue; // a shorter line further down may still fit
+            }
+            chosen.add(i);
+            tokens += cost;
+        }
+
+        return IntStream.range(0, lines.size()).filter(chosen::contains).mapToObj(lines::get).toList();
+    }
+
+    // About 4 characters per token for English text and numbers; close enough for a budget
+    static int estimateTokens(String text) {
+        return (text.length() + 3) / 4;
+    }
+
+    private static int estimateTokens(List<String> lines) {
+        return lines.stream().mapToInt(line -> estimateTokens(line) + 1).sum();
+    }
+
+    private static boolean hasDigit(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (Character.isDigit(line.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
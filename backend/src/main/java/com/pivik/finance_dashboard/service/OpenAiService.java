@@ -4,13 +4,28 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class OpenAiService {
@@ -21,8 +36,63 @@ public class OpenAiService {
     @Value("${openai.model}")
     private String model;
 
+    // Overridable so tests and load runs can point at a local stub
+    @Value("${openai.api.url:https://api.openai.com/v1/chat/completions}")
+    private String apiUrl;
+
+    @Value("${openai.request-timeout-seconds:60}")
+    private long requestTimeoutSeconds;
+
+    @Value("${openai.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${openai.backoff-initial-ms:500}")
+    private long backoffInitialMs;
+
+    @Value("${openai.backoff-max-ms:30000}")
+    private long backoffMaxMs;
+
+    @Value("${openai.rate-limit.requests-per-minute:500}")
+    private long requestsPerMinute;
+
+    @Value("${openai.rate-limit.burst:20}")
+    private long burst;
+
+    @Value("${openai.circuit-breaker.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${openai.circuit-breaker.open-seconds:30}")
+    private long openSeconds;
+
+    private static final Logger log = LoggerFactory.getLogger(OpenAiService.class);
+
+    private final HttpClient httpClient;
+    private final MeterRegistry meterRegistry;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    private final Counter retries;
+    private final Counter promptTokens;
+    private final Counter completionTokens;
+
+    private TokenBucket rateLimiter;
+    private CircuitBreaker circuitBreaker;
+
+    public OpenAiService(HttpClient openAiHttpClient, MeterRegistry meterRegistry) {
+        this.httpClient = openAiHttpClient;
+        this.meterRegistry = meterRegistry;
+        this.retries = meterRegistry.counter("pivik.openai.retries");
+        this.promptTokens = meterRegistry.counter("pivik.openai.tokens", "type", "prompt");
+        this.completionTokens = meterRegistry.counter("pivik.openai.tokens", "type", "completion");
+    }
+
+    @PostConstruct
+    public void init() {
+        rateLimiter = new TokenBucket(burst, requestsPerMinute);
+        circuitBreaker = new CircuitBreaker(failureThreshold, Duration.ofSeconds(openSeconds));
+        // 0 = closed, 1 = open, 2 = half-open
+        meterRegistry.gauge("pivik.openai.circuit.state", circuitBreaker, breaker -> breaker.state().ordinal());
+    }
+
     public String extractInvoiceDetails(String invoiceText) {
         try {
             // 1. Prepare the Prompt (Clearer structure)
@@ -53,44 +123,152 @@ public class OpenAiService {
 
             String requestBody = objectMapper.writeValueAsString(requestJson);
 
-            // 3. Send Request
+            // 3. Send Request (rate limited, retried on 429/5xx, short-circuited while OpenAI is down)
             HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create("https://api.openai.com/v1/chat/completions"))
+                    .uri(URI.create(apiUrl))
+                    .timeout(Duration.ofSeconds(requestTimeoutSeconds))
                     .header("Content-Type", "application/json")
                     .header("Authorization", "Bearer " + apiKey)
                     .POST(HttpRequest.BodyPublishers.ofString(requestBody))
                     .build();
 
-            HttpClient client = HttpClient.newHttpClient();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response = send(request);
+            if (response == null) {
+                return null; // Gave up: the caller falls back to "Unknown (AI Failed)"
+            }
 
-            // Print what OpenAI actually said!
-            System.out.println("Status Code: " + response.statusCode());
-            System.out.println("OpenAI Raw Response: " + response.body());
+            log.debug("OpenAI response status={} body={}", response.statusCode(), response.body());
 
             if (response.statusCode() != 200) {
+                log.warn("OpenAI request failed status={}", response.statusCode());
                 return null; // Stop if API failed
             }
 
             // 4. Parse Response
             return extractContentFromOpenAiResponse(response.body());
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("OpenAI request could not be made", e);
             return null;
         }
     }
 
-    private String extractContentFromOpenAiResponse(String rawResponse) {
+    // Returns the final response, or null when the circuit is open, the quota wait is too long,
+    // or every retry failed
+    private HttpResponse<String> send(HttpRequest request) throws InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            if (attempt > 0) {
+                retries.increment();
+            }
+            // Circuit first, so an open circuit fails fast; only a call that will go out takes a token
+            if (!circuitBreaker.allowRequest()) {
+                log.warn("OpenAI circuit is open, skipping the call");
+                meterRegistry.counter("pivik.openai.rejected", "reason", "circuit_open").increment();
+                return null;
+            }
+            if (!acquireQuota()) {
+                circuitBreaker.release(); // no call made: hand the slot (maybe the half-open trial) back
+                log.warn("OpenAI rate limit reached, skipping the call");
+                meterRegistry.counter("pivik.openai.rejected", "reason", "rate_limited").increment();
+                return null;
+            }
+
+            long retryAfterMs = -1;
+            long started = System.nanoTime();
+            boolean recorded = false;
+            try {
+                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+                int status = response.statusCode();
+                recordRequest(started, Integer.toString(status));
+                if (status != 429 && status < 500) {
+                    circuitBreaker.recordSuccess(); // 200, or a 4xx that retrying won't fix
+                    recorded = true;
+                    return response;
+                }
+                circuitBreaker.recordFailure();
+                recorded = true;
+                retryAfterMs = retryAfterMillis(response.headers());
+                if (attempt >= maxRetries) {
+                    return response;
+                }
+            } catch (IOException e) { // includes HttpTimeoutException
+                recordRequest(started, e instanceof HttpTimeoutException ? "timeout" : "io_error");
+                circuitBreaker.recordFailure();
+                recorded = true;
+                log.warn("OpenAI call failed attempt={} error={}", attempt + 1, e.toString());
+                if (attempt >= maxRetries) {
+                    return null;
+                }
+            } finally {
+                if (!recorded) {
+                    circuitBreaker.release(); // interrupted, or failed in a way that says nothing about OpenAI
+                }
+            }
+
+            Thread.sleep(retryAfterMs > 0 ? Math.min(retryAfterMs, backoffMaxMs) : backoff(attempt));
+        }
+    }
+
+    // Waits up to the request timeout for a token; an interrupt gives the circuit slot back like any unmade call
+    private boolean acquireQuota() throws InterruptedException {
+        try {
+            return rateLimiter.tryAcquire(Duration.ofSeconds(requestTimeoutSeconds));
+        } catch (InterruptedException e) {
+            circuitBreaker.release();
+            throw e;
+        }
+    }
+
+    // Retry-After is either a number of seconds or an HTTP date; -1 when it's missing or neither
+    static long retryAfterMillis(HttpHeaders headers) {
+        String value = headers.firstValue("Retry-After").map(String::trim).orElse("");
+        if (value.isEmpty()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value) * 1000;
+        } catch (NumberFormatException e) {
+            // not seconds, try the date form
+        }
+        try {
+            ZonedDateTime at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    // One timer per HTTP attempt, tagged with the status code (or how it failed)
+    private void recordRequest(long startedNanos, String outcome) {
+        Timer.builder("pivik.openai.request")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Exponential backoff with full jitter: random wait in [0, initial * 2^attempt], capped
+    private long backoff(int attempt) {
+        long ceiling = Math.min(backoffMaxMs, backoffInitialMs << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    String extractContentFromOpenAiResponse(String rawResponse) {
         try {
             JsonNode rootNode = objectMapper.readTree(rawResponse);
+            JsonNode usage = rootNode.path("usage");
+            promptTokens.increment(usage.path("prompt_tokens").asDouble());
+            completionTokens.increment(usage.path("completion_tokens").asDouble());
+
             // Dig down to the content
             String content = rootNode.path("choices").get(0).path("message").path("content").asText();
             
             // Clean markdown if AI added it
             return content.replace("```json", "").replace("```", "").trim();
         } catch (Exception e) {
-            System.out.println("Error extracting content: " + e.getMessage());
+            log.warn("Could not read the OpenAI response: {}", e.getMessage());
             return "{}";
         }
     }
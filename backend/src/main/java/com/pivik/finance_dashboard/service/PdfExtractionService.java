@@ -1,36 +1,147 @@
 package com.pivik.finance_dashboard.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 @Service // Utility worker to help expract the information from the PDF
 public class PdfExtractionService {
 
+    private static final Logger log = LoggerFactory.getLogger(PdfExtractionService.class);
+
+    // A damaged file: there really is no text to be had. Busy and timed out are exceptions, see extract()
+    private static final String READ_ERROR = "Error: Could not read PDF.";
+
+    private final long maxMainMemoryBytes;
+    private final long maxStorageBytes;
+    private final int maxPages;
+    private final long timeoutNanos;
+    private final MeterRegistry meterRegistry;
+
+    // Each open document may hold up to maxMainMemoryBytes on the heap (the rest spills to a temp file),
+    // so the heap used by extraction tops out at maxConcurrent * maxMainMemoryBytes
+    private final Semaphore slots;
+
+    public PdfExtractionService(@Value("${pivik.pdf.max-main-memory-bytes:8388608}") long maxMainMemoryBytes,
+                                @Value("${pivik.pdf.max-storage-bytes:268435456}") long maxStorageBytes,
+                                @Value("${pivik.pdf.max-pages:3}") int maxPages,
+                                @Value("${pivik.pdf.timeout-seconds:30}") long timeoutSeconds,
+                                @Value("${pivik.pdf.max-concurrent:0}") int maxConcurrent,
+                                MeterRegistry meterRegistry) {
+        this.maxMainMemoryBytes = maxMainMemoryBytes;
+        this.maxStorageBytes = maxStorageBytes;
+        this.maxPages = maxPages;
+        this.timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        this.meterRegistry = meterRegistry;
+        this.slots = new Semaphore(maxConcurrent > 0 ? maxConcurrent : Runtime.getRuntime().availableProcessors());
+    }
+
+    // From a file on disk: PDFBox reads it in place, nothing is copied
     public String extractText(String filePath) {
+        return extract(filePath, memory -> PDDocument.load(new File(filePath), memory));
+    }
+
+    // Straight from a stream (e.g. the upload itself): buffered up to the memory limit, then to a temp file
+    public String extractText(InputStream in) {
+        return extract("stream", memory -> PDDocument.load(in, memory));
+    }
+
+    private interface DocumentSource {
+        PDDocument open(MemoryUsageSetting memory) throws IOException;
+    }
+
+    // Throws ExtractionUnavailableException when no slot frees up or the deadline passes: those are about the
+    // server, not the file, and must not end up saved as an empty invoice
+    private String extract(String name, DocumentSource source) {
+        long deadline = System.nanoTime() + timeoutNanos;
+
+        // 1. Wait for a slot, but not past our own deadline
         try {
-            // 1. Load the file from the hard drive
-            File file = new File(filePath);
-            
-            // 2. Open the PDF document
-            PDDocument document = PDDocument.load(file);
-            
-            // 3. Create the "Stripper" (The tool that pulls text out)
-            PDFTextStripper stripper = new PDFTextStripper();
-            
-            // 4. Run the stripper on the document to get the text
-            String text = stripper.getText(document);
-            
-            // 5. Close document to free ups space
-            document.close();
-            
-            return text;
-
-        } catch (IOException e) {
-            e.printStackTrace();
-            return "Error: Could not read PDF.";
+            if (!slots.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                fail("busy", name, "no free extraction slot");
+                throw new ExtractionUnavailableException("Too many PDFs being read, try again", false);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExtractionUnavailableException("Interrupted while waiting to read the PDF, try again", false);
+        }
+
+        try (PDDocument document = source.open(MemoryUsageSetting.setupMixed(maxMainMemoryBytes, maxStorageBytes))) {
+            PDFTextStripper stripper = new DeadlineStripper(deadline);
+            int pages = document.getNumberOfPages();
+            if (maxPages <= 0 || pages <= maxPages) {
+                return stripper.getText(document);
+            }
+
+            // 2. Long document: the first pages (vendor, number, date) and the last one (the total)
+            stripper.setEndPage(maxPages);
+            String head = stripper.getText(document);
+            stripper.setStartPage(pages);
+            stripper.setEndPage(pages);
+            return head + stripper.getText(document);
+
+        } catch (ExtractionTimeout e) {
+            fail("timeout", name, e.getMessage());
+            throw new ExtractionUnavailableException("PDF extraction timed out, try again", true);
+        } catch (IOException | RuntimeException e) {
+            // PDFBox throws plenty of unchecked exceptions on damaged files
+            fail("error", name, e.toString());
+            return READ_ERROR;
+        } finally {
+            slots.release();
+        }
+    }
+
+    private void fail(String reason, String name, String detail) {
+        meterRegistry.counter("pivik.pdf.failures", "reason", reason).increment();
+        log.warn("Could not read PDF file={} reason={}: {}", name, reason, detail);
+    }
+
+    private static class ExtractionTimeout extends IOException {
+        ExtractionTimeout() {
+            super("extraction deadline passed");
+        }
+    }
+
+    // PDFBox can't be interrupted, so the stripper checks the clock itself at every page and line
+    private static class DeadlineStripper extends PDFTextStripper {
+
+        private final long deadline;
+
+        DeadlineStripper(long deadline) throws IOException {
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected void startPage(PDPage page) throws IOException {
+            checkDeadline();
+            super.startPage(page);
+        }
+
+        @Override
+        protected void writeString(String text, List<TextPosition> textPositions) throws IOException {
+            checkDeadline();
+            super.writeString(text, textPositions);
+        }
+
+        private void checkDeadline() throws ExtractionTimeout {
+            if (System.nanoTime() - deadline > 0) {
+                throw new ExtractionTimeout();
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -6,181 +6,427 @@ import com.lowagie.text.pdf.PdfPTable;
 import com.lowagie.text.pdf.PdfWriter;
 import com.pivik.finance_dashboard.model.Invoice;
 import com.pivik.finance_dashboard.repository.InvoiceRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 @Service
 public class ReportService {
 
+    private static final Logger log = LoggerFactory.getLogger(ReportService.class);
+
+    // Fonts are looked up once, not once per vendor/row
+    private static final Font TITLE_FONT = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 18);
+    private static final Font VENDOR_FONT = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 14);
+    private static final Font HEADER_FONT = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10);
+    private static final Font TOTAL_FONT = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 16);
+
+    // Rows are handed to the document in chunks of this size, so a vendor table never sits whole in memory
+    private static final int ROWS_PER_CHUNK = 200;
+    private static final String UNKNOWN_VENDOR = "Unknown"; // also in InvoiceRepository.streamForReport
+
     @Autowired
     private InvoiceRepository invoiceRepository;
 
-    public byte[] generateWeeklyReport(LocalDate startDate, LocalDate endDate) {
-        // 1. Fetch Invoices for the specific week
-        List<Invoice> invoices = invoiceRepository.findByDateBetween(startDate, endDate);
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
-        // 2. Group invoices by Vendor (Vendor -> List of Invoices)
-        Map<String, List<Invoice>> invoicesByVendor = invoices.stream()
-                .collect(Collectors.groupingBy(Invoice::getVendor));
+    // Project reports render here, one per core; the PDF work is all CPU
+    private final ExecutorService renderExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
 
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "report-render-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    @PreDestroy
+    public void shutdown() {
+        renderExecutor.shutdown();
+    }
+
+    @Transactional(readOnly = true)
+    public byte[] generateWeeklyReport(LocalDate startDate, LocalDate endDate) {
         try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            Document document = new Document();
-            PdfWriter.getInstance(document, out);
+            writeWeeklyReport(startDate, endDate, out);
+            return out.toByteArray();
+        } catch (Exception e) {
+            log.error("Weekly report failed start={} end={}", startDate, endDate, e);
+            return null;
+        }
+    }
+
+    // Streaming mode: invoices come off a database cursor already sorted by vendor, and the PDF goes
+    // straight to "out", so a year of invoices costs about as much heap as a week.
+    @Transactional(readOnly = true)
+    public void writeWeeklyReport(LocalDate startDate, LocalDate endDate, OutputStream out) {
+        ReportWriter report = new ReportWriter(out, startDate, endDate, null);
+        try (Stream<Invoice> invoices = invoiceRepository.streamForReport(startDate, endDate)) {
+            invoices.forEach(invoice -> {
+                report.add(invoice);
+                entityManager.detach(invoice); // keep the persistence context from growing with the cursor
+            });
+        }
+        report.finish();
+    }
+
+    // Same report for invoices we already hold in memory (the ZIP exports need the list anyway)
+    private void writeReport(List<Invoice> invoices, LocalDate startDate, LocalDate endDate, String project, OutputStream out) {
+        ReportWriter report = new ReportWriter(out, startDate, endDate, project);
+        invoices.stream()
+                .sorted(Comparator.comparing(ReportService::vendorOf)
+                        .thenComparing(Invoice::getDate, Comparator.nullsLast(Comparator.naturalOrder())))
+                .forEach(report::add);
+        report.finish();
+    }
+
+    // The name an invoice is grouped under; streamForReport sorts by the same thing
+    private static String vendorOf(Invoice invoice) {
+        return invoice.getVendor() != null ? invoice.getVendor() : UNKNOWN_VENDOR;
+    }
+
+    // Writes the report one invoice at a time. Invoices must arrive grouped by vendor.
+    // The stream is left open so the report can be a ZIP entry.
+    private static class ReportWriter {
+
+        private final Document document = new Document();
+        private final PdfPCell headerTemplate = new PdfPCell();
+        private final StringBuilder money = new StringBuilder(16);
+
+        private String vendorName;
+        private PdfPTable table;
+        private int rowsInChunk;
+        private long vendorTotalCents;
+        private long grandTotalCents;
+
+        ReportWriter(OutputStream out, LocalDate startDate, LocalDate endDate, String project) {
+            PdfWriter writer = PdfWriter.getInstance(document, out);
+            writer.setCloseStream(false);
             document.open();
 
+            headerTemplate.setBackgroundColor(java.awt.Color.LIGHT_GRAY);
+            headerTemplate.setHorizontalAlignment(Element.ALIGN_CENTER);
+
             // --- REPORT TITLE ---
-            Font titleFont = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 18);
-            Paragraph title = new Paragraph("Weekly Payment Report", titleFont);
+            Paragraph title = new Paragraph("Weekly Payment Report", TITLE_FONT);
             title.setAlignment(Element.ALIGN_CENTER);
             document.add(title);
-            
+
             Paragraph dateRange = new Paragraph("Period: " + startDate + " to " + endDate);
             dateRange.setAlignment(Element.ALIGN_CENTER);
             document.add(dateRange);
+
+            if (project != null) {
+                Paragraph projectName = new Paragraph("Project: " + project);
+                projectName.setAlignment(Element.ALIGN_CENTER);
+                document.add(projectName);
+            }
             document.add(new Paragraph(" ")); // Spacer
+        }
 
-            double grandTotal = 0;
-
-            // --- LOOP THROUGH EACH VENDOR ---
-            for (Map.Entry<String, List<Invoice>> entry : invoicesByVendor.entrySet()) {
-                String vendorName = entry.getKey();
-                List<Invoice> vendorInvoices = entry.getValue();
-
-                // 1. Vendor Header (Big Text)
-                Paragraph vendorHeader = new Paragraph(vendorName.toUpperCase(), FontFactory.getFont(FontFactory.HELVETICA_BOLD, 14));
-                vendorHeader.setSpacingBefore(10);
-                document.add(vendorHeader);
-
-                // 2. The Table for this Vendor
-                PdfPTable table = new PdfPTable(3); // Cols: Date | Invoice # | Amount
-                table.setWidthPercentage(100);
-                table.setSpacingBefore(5);
-
-                // Table Headers
-                addHeader(table, "Date");
-                addHeader(table, "Invoice #");
-                addHeader(table, "Amount");
-
-                double vendorTotal = 0;
-
-                // 3. List every invoice for this vendor
-                for (Invoice inv : vendorInvoices) {
-                    table.addCell(inv.getDate() != null ? inv.getDate().toString() : "N/A");
-                    table.addCell(inv.getInvoiceNumber() != null ? inv.getInvoiceNumber() : "N/A");
-                    table.addCell("$" + String.format("%.2f", inv.getAmount()));
-                    
-                    vendorTotal += (inv.getAmount() != null ? inv.getAmount() : 0);
-                }
+        void add(Invoice inv) {
+            String vendor = vendorOf(inv);
+            if (!vendor.equals(vendorName)) {
+                endVendor();
+                startVendor(vendor);
+            }
 
-                document.add(table);
+            // List every invoice for this vendor
+            table.addCell(inv.getDate() != null ? inv.getDate().toString() : "N/A");
+            table.addCell(inv.getInvoiceNumber() != null ? inv.getInvoiceNumber() : "N/A");
+            table.addCell(inv.getAmount() != null ? formatMoney(toCents(inv.getAmount())) : "N/A");
 
-                // 4. Vendor Subtotal
-                Paragraph subtotal = new Paragraph("Total for " + vendorName + ": $" + String.format("%.2f", vendorTotal));
-                subtotal.setAlignment(Element.ALIGN_RIGHT);
-                subtotal.setSpacingAfter(10);
-                document.add(subtotal);
-                
-                // Add faint line separator
-                document.add(new Paragraph("----------------------------------------------------------------"));
+            vendorTotalCents += inv.getAmount() != null ? toCents(inv.getAmount()) : 0;
 
-                grandTotal += vendorTotal;
+            if (++rowsInChunk == ROWS_PER_CHUNK) {
+                document.add(table); // writes the finished rows and lets them go
+                rowsInChunk = 0;
             }
+        }
+
+        void finish() {
+            endVendor();
 
             // --- GRAND TOTAL ---
             document.add(new Paragraph(" "));
-            Font totalFont = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 16);
-            Paragraph totalPara = new Paragraph("GRAND TOTAL: $" + String.format("%.2f", grandTotal), totalFont);
+            Paragraph totalPara = new Paragraph("GRAND TOTAL: " + formatMoney(grandTotalCents), TOTAL_FONT);
             totalPara.setAlignment(Element.ALIGN_RIGHT);
             document.add(totalPara);
 
             document.close();
-            return out.toByteArray();
+        }
+
+        private void startVendor(String vendor) {
+            vendorName = vendor;
+            vendorTotalCents = 0;
+            rowsInChunk = 0;
+
+            // 1. Vendor Header (Big Text)
+            Paragraph vendorHeader = new Paragraph(vendor.toUpperCase(), VENDOR_FONT);
+            vendorHeader.setSpacingBefore(10);
+            document.add(vendorHeader);
+
+            // 2. The Table for this Vendor
+            table = new PdfPTable(3); // Cols: Date | Invoice # | Amount
+            table.setWidthPercentage(100);
+            table.setSpacingBefore(5);
+            table.setHeaderRows(1);
+            table.setComplete(false);
+
+            // Table Headers
+            addHeader("Date");
+            addHeader("Invoice #");
+            addHeader("Amount");
+        }
+
+        private void endVendor() {
+            if (vendorName == null) {
+                return;
+            }
+
+            table.setComplete(true);
+            document.add(table);
+
+            // 4. Vendor Subtotal
+            Paragraph subtotal = new Paragraph("Total for " + vendorName + ": " + formatMoney(vendorTotalCents));
+            subtotal.setAlignment(Element.ALIGN_RIGHT);
+            subtotal.setSpacingAfter(10);
+            document.add(subtotal);
+
+            // Add faint line separator
+            document.add(new Paragraph("----------------------------------------------------------------"));
+
+            grandTotalCents += vendorTotalCents;
+        }
+
+        private void addHeader(String text) {
+            PdfPCell header = new PdfPCell(headerTemplate);
+            header.setPhrase(new Phrase(text, HEADER_FONT));
+            table.addCell(header);
+        }
+
+        private static long toCents(double amount) {
+            return Math.round(amount * 100);
+        }
+
+        // "$1234.50" without going through String.format for every row
+        private String formatMoney(long cents) {
+            money.setLength(0);
+            if (cents < 0) {
+                money.append('-');
+                cents = -cents;
+            }
+            long fraction = cents % 100;
+            money.append('$').append(cents / 100).append('.');
+            if (fraction < 10) {
+                money.append('0');
+            }
+            return money.append(fraction).toString();
+        }
+    }
+
+    public byte[] generateZipBundle(LocalDate startDate, LocalDate endDate) {
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            writeZipBundle(startDate, endDate, baos);
+            return baos.toByteArray();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("ZIP bundle failed start={} end={}", startDate, endDate, e);
             return null;
         }
     }
 
-    private void addHeader(PdfPTable table, String text) {
-        PdfPCell header = new PdfPCell();
-        header.setPhrase(new Phrase(text, FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10)));
-        header.setBackgroundColor(java.awt.Color.LIGHT_GRAY);
-        header.setHorizontalAlignment(Element.ALIGN_CENTER);
-        table.addCell(header);
+    // Streaming mode: entries go straight to "out", so memory stays flat however many invoices are in the range.
+    public void writeZipBundle(LocalDate startDate, LocalDate endDate, OutputStream out) throws IOException {
+        // 1. Get Invoices (once - the report below reuses this list)
+        List<Invoice> invoices = invoiceRepository.findForExport(startDate, endDate);
+
+        ZipOutputStream zos = new ZipOutputStream(out);
+        WritableByteChannel zipChannel = Channels.newChannel(zos);
+
+        // 2. Add the PDF Summary Report
+        zos.putNextEntry(new ZipEntry("Weekly_Summary_Report.pdf"));
+        writeReport(invoices, startDate, endDate, null, zos);
+        zos.closeEntry();
+
+        // 3. Add each Original Invoice PDF
+        addProofs(invoices, "Proofs/", zos, zipChannel);
+
+        zos.finish();
+        zos.flush();
     }
 
-    // You need to add this import at the top of the file:
-    // import java.time.format.DateTimeFormatter;
+    // One folder per project (and one for invoices without a project), each with its own report and proofs.
+    // The reports render in parallel while this thread writes the archive, so the export takes about as
+    // long as the biggest project instead of all of them end to end.
+    public void writeProjectBundle(LocalDate startDate, LocalDate endDate, OutputStream out) throws IOException {
+        // 1. One pass over the range, split by project (named projects in order, unassigned last;
+        //    spellings that differ only in case are one project)
+        Map<String, List<Invoice>> byProject = new TreeMap<>(Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+        for (Invoice invoice : invoiceRepository.findForExport(startDate, endDate)) {
+            String project = invoice.getProject() != null && !invoice.getProject().isBlank() ? invoice.getProject().trim() : null;
+            byProject.computeIfAbsent(project, p -> new ArrayList<>()).add(invoice);
+        }
+
+        // 2. Render every project's report to its own temp file, all at once
+        Map<String, CompletableFuture<Path>> reports = new LinkedHashMap<>();
+        byProject.forEach((project, invoices) -> reports.put(project,
+                CompletableFuture.supplyAsync(() -> renderToTempFile(invoices, startDate, endDate, project), renderExecutor)));
 
-    public byte[] generateZipBundle(LocalDate startDate, LocalDate endDate) {
-        // 1. Get Invoices
-        List<Invoice> invoices = invoiceRepository.findByDateBetween(startDate, endDate);
-
-        // 2. Generate the PDF Report first
-        byte[] pdfReport = generateWeeklyReport(startDate, endDate);
-
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             ZipOutputStream zos = new ZipOutputStream(baos)) {
-
-            // 3. Add the PDF Summary Report
-            ZipEntry reportEntry = new ZipEntry("Weekly_Summary_Report.pdf");
-            zos.putNextEntry(reportEntry);
-            zos.write(pdfReport);
-            zos.closeEntry();
-
-            // Create Date Formatter (dd-MonthName-yyyy)
-            DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd-MMMM-yyyy");
-
-            // 4. Add each Original Invoice PDF
-            for (Invoice invoice : invoices) {
-                if (invoice.getFileUrl() != null) {
-                    try {
-                        Path filePath = Paths.get("uploads").resolve(invoice.getFileUrl());
-                        
-                        if (Files.exists(filePath)) {
-                            // --- NEW NAMING LOGIC ---
-                            // 1. Vendor (Sanitized)
-                            String safeVendor = invoice.getVendor().replaceAll("[^a-zA-Z0-9 ]", "").trim();
-                            
-                            // 2. Date (Formatted as 15-December-2025)
-                            String dateStr = (invoice.getDate() != null) ? invoice.getDate().format(dateFormatter) : "NoDate";
-                            
-                            // 3. Invoice Number
-                            String safeInvNum = (invoice.getInvoiceNumber() != null) ? invoice.getInvoiceNumber() : String.valueOf(invoice.getId());
-
-                            // Combine: "Costco 15-December-2025 #INV123.pdf"
-                            String niceFileName = safeVendor + " " + dateStr + " #" + safeInvNum + ".pdf";
-                            // ------------------------
-                            
-                            ZipEntry invoiceEntry = new ZipEntry("Proofs/" + niceFileName);
-                            zos.putNextEntry(invoiceEntry);
-                            Files.copy(filePath, zos);
-                            zos.closeEntry();
-                        }
-                    } catch (Exception e) {
-                        System.err.println("Could not add file to zip: " + invoice.getFileUrl());
-                    }
+        // 3. Meanwhile, fill in the archive in project order, each report as soon as it's ready
+        ZipOutputStream zos = new ZipOutputStream(out);
+        WritableByteChannel zipChannel = Channels.newChannel(zos);
+        try {
+            Set<String> folders = new HashSet<>();
+            for (Map.Entry<String, List<Invoice>> entry : byProject.entrySet()) {
+                String folder = projectFolder(entry.getKey(), folders);
+                Path report = awaitReport(reports.get(entry.getKey()));
+                try {
+                    zos.putNextEntry(new ZipEntry(folder + "Summary_Report.pdf"));
+                    copyFile(report, zipChannel);
+                    zos.closeEntry();
+                } finally {
+                    Files.deleteIfExists(report);
                 }
+                addProofs(entry.getValue(), folder + "Proofs/", zos, zipChannel);
             }
+        } finally {
+            // On failure, wait out the other renders and drop their files (a render can't be interrupted)
+            for (CompletableFuture<Path> report : reports.values()) {
+                Path leftover = report.handle((path, e) -> path).join();
+                if (leftover != null) {
+                    Files.deleteIfExists(leftover);
+                }
+            }
+        }
 
-            zos.finish();
-            return baos.toByteArray();
+        zos.finish();
+        zos.flush();
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
+    private Path renderToTempFile(List<Invoice> invoices, LocalDate startDate, LocalDate endDate, String project) {
+        try {
+            Path file = Files.createTempFile("pivik-report-", ".pdf");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+                writeReport(invoices, startDate, endDate, project != null ? project : "Unassigned", out);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(file);
+                throw e;
+            }
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Path awaitReport(CompletableFuture<Path> report) throws IOException {
+        try {
+            return report.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) throw io.getCause();
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    // "FED UP/" - names that differ only in characters a file system can't take still get their own folder
+    private static String projectFolder(String project, Set<String> taken) {
+        String base = project == null ? "Unassigned" : project.replaceAll("[^a-zA-Z0-9 ._-]", "").trim();
+        if (base.isEmpty() || base.startsWith(".")) {
+            base = "Project " + base;
+        }
+        String folder = base;
+        for (int i = 2; !taken.add(folder.toLowerCase()); i++) {
+            folder = base + " (" + i + ")";
+        }
+        return folder + "/";
+    }
+
+    private void addProofs(List<Invoice> invoices, String folder, ZipOutputStream zos, WritableByteChannel zipChannel) {
+        // Create Date Formatter (dd-MonthName-yyyy)
+        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd-MMMM-yyyy");
+
+        for (Invoice invoice : invoices) {
+            if (invoice.getFileUrl() != null) {
+                try {
+                    Path filePath = fileStorageService.resolve(invoice.getFileUrl());
+
+                    if (Files.exists(filePath)) {
+                        // --- NEW NAMING LOGIC ---
+                        // 1. Vendor (Sanitized)
+                        String safeVendor = invoice.getVendor().replaceAll("[^a-zA-Z0-9 ]", "").trim();
+
+                        // 2. Date (Formatted as 15-December-2025)
+                        String dateStr = (invoice.getDate() != null) ? invoice.getDate().format(dateFormatter) : "NoDate";
+
+                        // 3. Invoice Number
+                        String safeInvNum = (invoice.getInvoiceNumber() != null) ? invoice.getInvoiceNumber() : String.valueOf(invoice.getId());
+
+                        // Combine: "Costco 15-December-2025 #INV123.pdf"
+                        String niceFileName = safeVendor + " " + dateStr + " #" + safeInvNum + ".pdf";
+                        // ------------------------
+
+                        zos.putNextEntry(new ZipEntry(folder + niceFileName));
+                        copyFile(filePath, zipChannel);
+                        zos.closeEntry();
+                    }
+                } catch (Exception e) {
+                    log.warn("Could not add file to zip: file={} error={}", invoice.getFileUrl(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Channel transfer: the JDK moves the file in small chunks instead of us reading it into the heap
+    private void copyFile(Path filePath, WritableByteChannel target) throws IOException {
+        try (FileChannel source = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long position = 0;
+            long size = source.size();
+            while (position < size) {
+                position += source.transferTo(position, size - position, target);
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,268 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.dto.DashboardSummary;
+import com.pivik.finance_dashboard.dto.GroupTotal;
+import com.pivik.finance_dashboard.event.ChangeType;
+import com.pivik.finance_dashboard.event.EarningChangedEvent;
+import com.pivik.finance_dashboard.event.EarningsImportedEvent;
+import com.pivik.finance_dashboard.event.InvoiceChangedEvent;
+import com.pivik.finance_dashboard.model.DashboardRollup;
+import com.pivik.finance_dashboard.model.DashboardRollup.Dimension;
+import com.pivik.finance_dashboard.model.Earning;
+import com.pivik.finance_dashboard.model.Invoice;
+import com.pivik.finance_dashboard.repository.DashboardRollupRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+@Service // Keeps the dashboard_rollup table in step with every invoice/earning write
+public class RollupService {
+
+    private static final Logger log = LoggerFactory.getLogger(RollupService.class);
+
+    // Every cell of a transaction in one statement, in key order: each cell appears once, so ON CONFLICT touches
+    // a row at most once, and two transactions lock the rows they share in the same order (no deadlock)
+    private static final String UPSERT_SQL =
+            "INSERT INTO dashboard_rollup (dimension, dim_key, month, undated, total, row_count) " +
+            "SELECT * FROM unnest(CAST(? AS text[]), CAST(? AS text[]), CAST(? AS date[]), CAST(? AS boolean[]), " +
+            "CAST(? AS float8[]), CAST(? AS bigint[])) " +
+            "ON CONFLICT (dimension, dim_key, month, undated) DO UPDATE SET " +
+            "total = dashboard_rollup.total + EXCLUDED.total, row_count = dashboard_rollup.row_count + EXCLUDED.row_count";
+
+    private static final Comparator<Cell> KEY_ORDER = Comparator.comparing(Cell::dimension)
+            .thenComparing(Cell::key)
+            .thenComparing(Cell::month, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    // One (dimension, key, month) total; a null month is the undated cell
+    private record Cell(Dimension dimension, String key, LocalDate month) {}
+
+    private final DashboardRollupRepository rollupRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+
+    public RollupService(DashboardRollupRepository rollupRepository,
+                         JdbcTemplate jdbcTemplate,
+                         TransactionTemplate transactionTemplate,
+                         EntityManagerFactory entityManagerFactory) {
+        this.rollupRepository = rollupRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    // 1. Incremental maintenance: take the old row out, put the new row in (same transaction as the write).
+    // Deltas are added up per cell for the whole transaction and written once, just before it commits.
+
+    @EventListener
+    public void onInvoiceChanged(InvoiceChangedEvent event) {
+        if (event.type() == ChangeType.UPDATED && event.before() == null) {
+            log.warn("Invoice id={} updated without its previous state, rollup needs a rebuild", event.after().getId());
+        }
+        if (event.before() != null && event.after() != null && sameRollupFields(event.before(), event.after())) {
+            return; // e.g. a status change: nothing we total has moved
+        }
+
+        Map<Cell, double[]> cells = pendingCells();
+        if (event.before() != null) addInvoiceDeltas(cells, event.before(), -1);
+        if (event.after() != null) addInvoiceDeltas(cells, event.after(), 1);
+        applyUnlessPending(cells);
+    }
+
+    @EventListener
+    public void onEarningChanged(EarningChangedEvent event) {
+        Map<Cell, double[]> cells = pendingCells();
+        if (event.before() != null) addEarningDelta(cells, event.before(), -1);
+        if (event.after() != null) addEarningDelta(cells, event.after(), 1);
+        applyUnlessPending(cells);
+    }
+
+    // A bulk import chunk: thousands of rows, but only a few (source, month) cells
+    @EventListener
+    public void onEarningsImported(EarningsImportedEvent event) {
+        Map<Cell, double[]> cells = pendingCells();
+        for (int i = 0; i < event.after().size(); i++) {
+            Earning before = event.before().get(i);
+            if (before != null) addEarningDelta(cells, before, -1);
+            addEarningDelta(cells, event.after().get(i), 1);
+        }
+        applyUnlessPending(cells);
+    }
+
+    // The cells of the current JPA transaction, written by Hibernate right before it commits: after the flush
+    // that raised the events (which for most writes is the one at commit), still inside the transaction.
+    // Outside one, a fresh map the caller applies right away.
+    @SuppressWarnings("unchecked")
+    private Map<Cell, double[]> pendingCells() {
+        Map<Cell, double[]> cells = (Map<Cell, double[]>) TransactionSynchronizationManager.getResource(this);
+        if (cells != null) {
+            return cells;
+        }
+        cells = new TreeMap<>(KEY_ORDER);
+        EntityManagerHolder holder = (EntityManagerHolder) TransactionSynchronizationManager.getResource(entityManagerFactory);
+        if (holder == null || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return cells;
+        }
+
+        Map<Cell, double[]> pending = cells;
+        TransactionSynchronizationManager.bindResource(this, pending);
+        holder.getEntityManager().unwrap(SessionImplementor.class).getActionQueue()
+                .registerProcess((BeforeTransactionCompletionProcess) session -> apply(pending));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(RollupService.this);
+            }
+        });
+        return pending;
+    }
+
+    private void applyUnlessPending(Map<Cell, double[]> cells) {
+        if (TransactionSynchronizationManager.getResource(this) != cells) {
+            apply(cells);
+        }
+    }
+
+    private void apply(Map<Cell, double[]> cells) {
+        cells.values().removeIf(sums -> sums[0] == 0 && sums[1] == 0);
+        if (cells.isEmpty()) {
+            return;
+        }
+
+        String[] dimensions = new String[cells.size()];
+        String[] keys = new String[cells.size()];
+        Date[] months = new Date[cells.size()];
+        Boolean[] undated = new Boolean[cells.size()];
+        Double[] totals = new Double[cells.size()];
+        Long[] counts = new Long[cells.size()];
+        int i = 0;
+        for (Map.Entry<Cell, double[]> cell : cells.entrySet()) {
+            dimensions[i] = cell.getKey().dimension().name();
+            keys[i] = cell.getKey().key();
+            undated[i] = cell.getKey().month() == null;
+            months[i] = Date.valueOf(undated[i] ? DashboardRollup.UNDATED : cell.getKey().month());
+            totals[i] = cell.getValue()[0];
+            counts[i] = (long) cell.getValue()[1];
+            i++;
+        }
+        jdbcTemplate.update(UPSERT_SQL, statement -> {
+            Connection connection = statement.getConnection();
+            statement.setArray(1, connection.createArrayOf("text", dimensions));
+            statement.setArray(2, connection.createArrayOf("text", keys));
+            statement.setArray(3, connection.createArrayOf("date", months));
+            statement.setArray(4, connection.createArrayOf("boolean", undated));
+            statement.setArray(5, connection.createArrayOf("float8", totals));
+            statement.setArray(6, connection.createArrayOf("bigint", counts));
+        });
+    }
+
+    private static boolean sameRollupFields(Invoice a, Invoice b) {
+        return Objects.equals(a.getAmount(), b.getAmount())
+                && Objects.equals(a.getDate(), b.getDate())
+                && Objects.equals(a.getVendor(), b.getVendor())
+                && Objects.equals(a.getCategory(), b.getCategory())
+                && Objects.equals(a.getProject(), b.getProject());
+    }
+
+    private static void addInvoiceDeltas(Map<Cell, double[]> cells, Invoice invoice, int sign) {
+        LocalDate month = monthOf(invoice.getDate());
+        double amount = sign * (invoice.getAmount() != null ? invoice.getAmount() : 0);
+        add(cells, new Cell(Dimension.VENDOR, keyOf(invoice.getVendor()), month), amount, sign);
+        add(cells, new Cell(Dimension.CATEGORY, keyOf(invoice.getCategory()), month), amount, sign);
+        add(cells, new Cell(Dimension.PROJECT, keyOf(invoice.getProject()), month), amount, sign);
+    }
+
+    private static void addEarningDelta(Map<Cell, double[]> cells, Earning earning, int sign) {
+        double amount = sign * (earning.getAmount() != null ? earning.getAmount() : 0);
+        add(cells, new Cell(Dimension.EARNING_SOURCE, keyOf(earning.getSource()), monthOf(earning.getDate())), amount, sign);
+    }
+
+    private static void add(Map<Cell, double[]> cells, Cell cell, double amount, int sign) {
+        double[] sums = cells.computeIfAbsent(cell, c -> new double[2]);
+        sums[0] += amount;
+        sums[1] += sign;
+    }
+
+    private static String keyOf(String value) {
+        return value != null ? value : DashboardRollup.NONE;
+    }
+
+    private static LocalDate monthOf(LocalDate date) {
+        return date != null ? date.withDayOfMonth(1) : null;
+    }
+
+    // 2. Full rebuild from the source tables (first start, or to repair drift)
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        if (rollupRepository.count() == 0) {
+            rebuild();
+        }
+    }
+
+    public void rebuild() {
+        transactionTemplate.executeWithoutResult(status -> {
+            // Writers wait while we recount, so no increment can land between the DELETE and the INSERTs
+            jdbcTemplate.execute("LOCK TABLE invoice, earning IN SHARE MODE");
+            jdbcTemplate.update("DELETE FROM dashboard_rollup");
+            rebuildDimension(Dimension.VENDOR, "vendor", "invoice");
+            rebuildDimension(Dimension.CATEGORY, "category", "invoice");
+            rebuildDimension(Dimension.PROJECT, "project", "invoice");
+            rebuildDimension(Dimension.EARNING_SOURCE, "source", "earning");
+        });
+    }
+
+    private void rebuildDimension(Dimension dimension, String column, String table) {
+        jdbcTemplate.update(
+                "INSERT INTO dashboard_rollup (dimension, dim_key, month, undated, total, row_count) " +
+                "SELECT ?, COALESCE(" + column + ", ?), COALESCE(CAST(date_trunc('month', date) AS date), ?), date IS NULL, " +
+                "COALESCE(SUM(amount), 0), COUNT(*) FROM " + table + " GROUP BY 2, 3, 4",
+                dimension.name(), DashboardRollup.NONE, Date.valueOf(DashboardRollup.UNDATED));
+    }
+
+    // 3. Reading: whole months between "from" and "to" (both optional)
+
+    public DashboardSummary summary(LocalDate from, LocalDate to) {
+        LocalDate fromMonth = from != null ? from.withDayOfMonth(1) : LocalDate.of(1, 1, 1);
+        LocalDate toMonth = to != null ? to.withDayOfMonth(1) : LocalDate.of(9999, 12, 1);
+        boolean withUndated = from == null && to == null; // an undated row is in no date range
+
+        List<GroupTotal> byVendor = rollupRepository.totalsByKey(Dimension.VENDOR, fromMonth, toMonth, withUndated);
+        List<GroupTotal> bySource = rollupRepository.totalsByKey(Dimension.EARNING_SOURCE, fromMonth, toMonth, withUndated);
+
+        List<GroupTotal> byMonth = new ArrayList<>();
+        for (Object[] row : rollupRepository.totalsByMonth(Dimension.VENDOR, fromMonth, toMonth)) {
+            LocalDate month = (LocalDate) row[0];
+            byMonth.add(new GroupTotal(month.toString().substring(0, 7), (Double) row[1], (Long) row[2]));
+        }
+
+        return new DashboardSummary(
+                byVendor.stream().mapToDouble(GroupTotal::total).sum(),
+                bySource.stream().mapToDouble(GroupTotal::total).sum(),
+                byVendor,
+                rollupRepository.totalsByKey(Dimension.CATEGORY, fromMonth, toMonth, withUndated),
+                rollupRepository.totalsByKey(Dimension.PROJECT, fromMonth, toMonth, withUndated),
+                byMonth,
+                bySource);
+    }
+}
@@ -0,0 +1,48 @@
+package com.pivik.finance_dashboard.service;
+
+import java.time.Duration;
+
+// Classic token bucket: refills at a steady rate up to "capacity", each call takes one token.
+// Used to keep our OpenAI calls inside the account's requests-per-minute quota.
+class TokenBucket {
+
+    private final long capacity;
+    private final double tokensPerNano;
+
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(long capacity, long tokensPerMinute) {
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerMinute / (double) Duration.ofMinutes(1).toNanos();
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    // Waits up to maxWait for a token; false means the quota is exhausted for longer than we are willing to wait
+    boolean tryAcquire(Duration maxWait) throws InterruptedException {
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                refill();
+                if (tokens >= 1) {
+                    tokens -= 1;
+                    return true;
+                }
+                waitNanos = (long) Math.ceil((1 - tokens) / tokensPerNano);
+            }
+
+            if (System.nanoTime() + waitNanos > deadline) {
+                return false;
+            }
+            Thread.sleep(Math.max(1, waitNanos / 1_000_000));
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,432 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.model.Invoice;
+import com.pivik.finance_dashboard.model.VendorTemplate;
+import com.pivik.finance_dashboard.repository.VendorTemplateRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@Service // Reads invoices from known vendors locally, so their uploads skip the OpenAI round-trip
+public class VendorTemplateService {
+
+    private static final Logger log = LoggerFactory.getLogger(VendorTemplateService.class);
+
+    // Date layouts we know how to find in invoice text, with a regex for each
+    private static final String[][] DATE_FORMATS = {
+            {"yyyy-MM-dd", "\\d{4}-\\d{2}-\\d{2}"},
+            {"MM/dd/yyyy", "\\d{2}/\\d{2}/\\d{4}"},
+            {"dd/MM/yyyy", "\\d{2}/\\d{2}/\\d{4}"},
+            {"M/d/yyyy", "\\d{1,2}/\\d{1,2}/\\d{4}"},
+            {"MM/dd/yy", "\\d{2}/\\d{2}/\\d{2}"},
+            {"dd-MMM-yyyy", "\\d{2}-[A-Za-z]{3}-\\d{4}"},
+            {"MMM d, yyyy", "[A-Za-z]{3} \\d{1,2}, \\d{4}"},
+            {"MMMM d, yyyy", "[A-Za-z]+ \\d{1,2}, \\d{4}"},
+            {"d MMMM yyyy", "\\d{1,2} [A-Za-z]+ \\d{4}"}
+    };
+
+    private static final String AMOUNT_REGEX = "\\d{1,3}(?:,\\d{3})*\\.\\d{2}|\\d+\\.\\d{2}";
+    private static final Pattern AMOUNT = Pattern.compile(AMOUNT_REGEX);
+    private static final String SEPARATOR = "[\\s:#$]*"; // between a label and its value, may cross a line break
+    private static final int LABEL_WORDS = 2;
+
+    private final VendorTemplateRepository repository;
+    private final PdfExtractionService pdfExtractionService;
+    private final FileStorageService fileStorageService;
+    private final int minConfirmations;
+    private final long hitFlushSeconds;
+
+    // Learning re-reads the PDF, so it runs on one background thread instead of the edit request
+    private final ExecutorService learner;
+
+    // Template id -> uploads it read since the last flush. Hits are counted here and written every
+    // hitFlushSeconds, so a burst of uploads is a few UPDATEs and never takes the learner's queue
+    private final Map<Long, Long> pendingHits = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService hitFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "template-hits");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Templates trusted enough to use, longest anchor first; replaced whole after every change
+    private volatile List<CompiledTemplate> templates = List.of();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public VendorTemplateService(VendorTemplateRepository repository,
+                                 PdfExtractionService pdfExtractionService,
+                                 FileStorageService fileStorageService,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${pivik.templates.min-confirmations:2}") int minConfirmations,
+                                 @Value("${pivik.templates.hit-flush-seconds:30}") long hitFlushSeconds) {
+        this.repository = repository;
+        this.pdfExtractionService = pdfExtractionService;
+        this.fileStorageService = fileStorageService;
+        this.minConfirmations = Math.max(1, minConfirmations);
+        this.hitFlushSeconds = Math.max(1, hitFlushSeconds);
+        this.learner = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(100),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "template-learner");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, executor) -> log.warn("Template learner is behind, skipping one confirmation"));
+        this.hits = meterRegistry.counter("pivik.template.match", "result", "hit");
+        this.misses = meterRegistry.counter("pivik.template.match", "result", "miss");
+    }
+
+    @PostConstruct
+    public void start() {
+        hitFlusher.scheduleWithFixedDelay(this::flushHits, hitFlushSeconds, hitFlushSeconds, TimeUnit.SECONDS);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reload() {
+        templates = repository.findAll().stream()
+                .filter(template -> template.getConfirmations() >= minConfirmations)
+                .map(CompiledTemplate::new)
+                .sorted(Comparator.comparingInt((CompiledTemplate template) -> template.anchor.length()).reversed())
+                .toList();
+    }
+
+    public List<VendorTemplate> findAll() {
+        return repository.findAll();
+    }
+
+    // 1. The fast path: fill the invoice if a trusted template reads every field, otherwise leave it alone
+    public boolean apply(Invoice invoice, String invoiceText) {
+        String lower = invoiceText.toLowerCase(Locale.ROOT);
+        for (CompiledTemplate template : templates) {
+            if (!lower.contains(template.anchor)) {
+                continue;
+            }
+            Optional<Fields> fields = template.read(invoiceText);
+            if (fields.isPresent()) {
+                invoice.setVendor(template.vendor);
+                invoice.setCategory(template.category);
+                invoice.setInvoiceNumber(fields.get().invoiceNumber());
+                invoice.setAmount(fields.get().amount());
+                invoice.setDate(fields.get().date());
+                hits.increment();
+                pendingHits.merge(template.id, 1L, Long::sum);
+                return true;
+            }
+        }
+        misses.increment();
+        return false;
+    }
+
+    // Writes the hits counted since the last flush. A hit counted while this runs lands in a new entry
+    // and waits for the next flush; hits that couldn't be written are put back for it
+    void flushHits() {
+        for (Long id : List.copyOf(pendingHits.keySet())) {
+            Long count = pendingHits.remove(id);
+            if (count == null) {
+                continue;
+            }
+            try {
+                repository.addHits(id, count);
+            } catch (RuntimeException e) {
+                pendingHits.merge(id, count, Long::sum);
+                log.warn("Could not record template hits id={} hits={}: {}", id, count, e.toString());
+                return;
+            }
+        }
+    }
+
+    // 2. Learning: a user confirmed (or corrected) an invoice's fields
+    public void learn(Invoice invoice) {
+        Fields confirmed = new Fields(invoice.getInvoiceNumber(), invoice.getAmount(), invoice.getDate());
+        String vendor = invoice.getVendor();
+        String category = invoice.getCategory();
+        String fileUrl = invoice.getFileUrl();
+        if (vendor == null || vendor.isBlank() || vendor.startsWith("Unknown") || fileUrl == null
+                || confirmed.invoiceNumber() == null || confirmed.invoiceNumber().isBlank()
+                || confirmed.amount() == null || confirmed.date() == null) {
+            return;
+        }
+        learner.execute(() -> {
+            try {
+                learn(vendor, category, fileUrl, confirmed);
+            } catch (ExtractionUnavailableException e) {
+                // Not the file's fault; the next confirmed save gets another go
+                log.debug("Skipped learning a template vendor={} file={}: {}", vendor, fileUrl, e.getReason());
+            } catch (RuntimeException e) {
+                log.warn("Could not learn a template vendor={} file={}: {}", vendor, fileUrl, e.toString());
+            }
+        });
+    }
+
+    private void learn(String vendor, String category, String fileUrl, Fields confirmed) {
+        String text = pdfExtractionService.extractText(fileStorageService.resolve(fileUrl).toAbsolutePath().toString());
+        if (text.startsWith("Error")) {
+            return;
+        }
+
+        VendorTemplate template = repository.findByVendor(vendor).orElseGet(VendorTemplate::new);
+
+        // Already reads this invoice right? Then it has earned a bit more trust, once per invoice file
+        if (template.getId() != null && text.toLowerCase(Locale.ROOT).contains(template.getAnchor())
+                && new CompiledTemplate(template).read(text).filter(confirmed::equals).isPresent()) {
+            if (!template.getConfirmedFiles().add(fileUrl)) {
+                return; // the same invoice saved again
+            }
+            template.setConfirmations(template.getConfirmations() + 1);
+        } else {
+            // New vendor, or a layout the template got wrong: start over from this invoice
+            String anchor = findAnchor(text, vendor, repository.findAll());
+            if (anchor == null) {
+                log.debug("No template for vendor={}: nothing in file={} tells its invoices apart", vendor, fileUrl);
+                return;
+            }
+            String numberPattern = findNumberPattern(text, confirmed.invoiceNumber());
+            String amountPattern = findAmountPattern(text, confirmed.amount());
+            String[] date = findDatePattern(text, confirmed.date());
+            if (numberPattern == null || amountPattern == null || date == null) {
+                log.debug("No template for vendor={}: could not locate every field in file={}", vendor, fileUrl);
+                return;
+            }
+            template.setVendor(vendor);
+            template.setAnchor(anchor);
+            template.setInvoiceNumberPattern(numberPattern);
+            template.setAmountPattern(amountPattern);
+            template.setDatePattern(date[0]);
+            template.setDateFormat(date[1]);
+            template.getConfirmedFiles().clear();
+            template.getConfirmedFiles().add(fileUrl);
+            template.setConfirmations(1);
+        }
+
+        template.setCategory(category);
+        template.setUpdatedAt(Instant.now());
+        repository.save(template);
+        reload();
+    }
+
+    // What identifies the vendor: its name if the text spells it, else a line without numbers that has one of
+    // the name's words in it. Never a line any invoice could have ("invoice", "bill to"): without something
+    // vendor-specific there is no template. An anchor that overlaps another vendor's would read their invoices
+    // as ours (or ours as theirs), so that is no anchor either.
+    static String findAnchor(String text, String vendor, List<VendorTemplate> others) {
+        String lowerVendor = vendor.toLowerCase(Locale.ROOT).trim();
+        List<String> candidates = new ArrayList<>();
+        if (text.toLowerCase(Locale.ROOT).contains(lowerVendor)) {
+            candidates.add(lowerVendor);
+        }
+        List<String> vendorWords = Arrays.stream(lowerVendor.split("[^\\p{L}\\p{N}]+"))
+                .filter(word -> word.length() >= 4)
+                .toList();
+        for (String line : text.split("\\R")) {
+            String candidate = line.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+            if (candidate.length() >= 4 && !candidate.matches(".*\\d.*")
+                    && vendorWords.stream().anyMatch(candidate::contains)) {
+                candidates.add(candidate.length() > 60 ? candidate.substring(0, 60) : candidate);
+            }
+        }
+        for (String candidate : candidates) {
+            boolean shared = others.stream()
+                    .filter(other -> !vendor.equals(other.getVendor()) && other.getAnchor() != null)
+                    .anyMatch(other -> other.getAnchor().contains(candidate) || candidate.contains(other.getAnchor()));
+            if (!shared) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    // "INV-004512" -> label + "INV-\d+": the leading letters stay, digits may vary
+    static String findNumberPattern(String text, String invoiceNumber) {
+        StringBuilder shape = new StringBuilder();
+        Matcher runs = Pattern.compile("\\d+|[A-Za-z]+|[^A-Za-z\\d]").matcher(invoiceNumber.trim());
+        boolean first = true;
+        while (runs.find()) {
+            String run = runs.group();
+            if (Character.isDigit(run.charAt(0))) {
+                shape.append("\\d+");
+            } else if (Character.isLetter(run.charAt(0))) {
+                shape.append(first ? Pattern.quote(run) : "[A-Za-z]+");
+            } else {
+                shape.append(Pattern.quote(run));
+            }
+            first = false;
+        }
+
+        for (int at : occurrences(text, invoiceNumber.trim())) {
+            String pattern = labelled(text, at, shape.toString());
+            if (pattern != null && invoiceNumber.trim().equals(firstGroup(pattern, text))) {
+                return pattern;
+            }
+        }
+        return null;
+    }
+
+    // Totals sit at the bottom, so try the last matching figure first
+    static String findAmountPattern(String text, double amount) {
+        List<Integer> candidates = new ArrayList<>();
+        Matcher figures = AMOUNT.matcher(text);
+        while (figures.find()) {
+            if (Math.abs(parseAmount(figures.group()) - amount) < 0.005) {
+                candidates.add(figures.start());
+            }
+        }
+        for (int i = candidates.size() - 1; i >= 0; i--) {
+            String pattern = labelled(text, candidates.get(i), AMOUNT_REGEX);
+            String read = pattern != null ? firstGroup(pattern, text) : null;
+            if (read != null && Math.abs(parseAmount(read) - amount) < 0.005) {
+                return pattern;
+            }
+        }
+        return null;
+    }
+
+    // Returns {pattern, date format}
+    static String[] findDatePattern(String text, LocalDate date) {
+        for (String[] format : DATE_FORMATS) {
+            DateTimeFormatter formatter = formatter(format[0]);
+            String written = date.format(formatter);
+            for (int at : occurrences(text, written)) {
+                String pattern = labelled(text, at, format[1]);
+                if (pattern != null && date.equals(parseDate(firstGroup(pattern, text), formatter))) {
+                    return new String[]{pattern, format[0]};
+                }
+            }
+        }
+        return null;
+    }
+
+    // The words right before the value ("Invoice #:", "TOTAL DUE") make the regex find the same spot next time.
+    // Words on the value's own line win; the line above is only used when the value stands alone.
+    private static String labelled(String text, int valueStart, String valueRegex) {
+        int lineStart = Math.max(text.lastIndexOf('\n', valueStart - 1), text.lastIndexOf('\r', valueStart - 1)) + 1;
+        String sameLine = text.substring(lineStart, valueStart);
+        String before = sameLine.matches("(?s).*[A-Za-z].*") ? sameLine : text.substring(Math.max(0, valueStart - 80), valueStart);
+
+        String[] words = before.trim().split("\\s+");
+        Deque<String> label = new ArrayDeque<>();
+        for (int i = words.length - 1; i >= 0 && label.size() < LABEL_WORDS; i--) {
+            String word = words[i].replaceAll("[:#$]+$", "");
+            if (word.matches(".*\\d.*")) {
+                break; // a changing value, not part of the label
+            }
+            if (!word.isEmpty()) {
+                label.addFirst(Pattern.quote(word));
+            }
+        }
+        if (label.isEmpty()) {
+            return null;
+        }
+        return "\\b" + String.join("\\s+", label) + SEPARATOR + "(" + valueRegex + ")";
+    }
+
+    private static List<Integer> occurrences(String text, String value) {
+        List<Integer> found = new ArrayList<>();
+        String lowerText = text.toLowerCase(Locale.ROOT);
+        String lowerValue = value.toLowerCase(Locale.ROOT);
+        for (int at = lowerText.indexOf(lowerValue); at >= 0; at = lowerText.indexOf(lowerValue, at + 1)) {
+            found.add(at);
+        }
+        return found;
+    }
+
+    private static String firstGroup(String pattern, String text) {
+        Matcher matcher = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE).matcher(text);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static double parseAmount(String figure) {
+        return Double.parseDouble(figure.replace(",", ""));
+    }
+
+    private static DateTimeFormatter formatter(String pattern) {
+        return new DateTimeFormatterBuilder().parseCaseInsensitive().appendPattern(pattern).toFormatter(Locale.ENGLISH);
+    }
+
+    private static LocalDate parseDate(String value, DateTimeFormatter formatter) {
+        try {
+            return value != null ? LocalDate.parse(value, formatter) : null;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hitFlusher.shutdownNow();
+        flushHits();
+        learner.shutdown();
+    }
+
+    private record Fields(String invoiceNumber, Double amount, LocalDate date) {}
+
+    // A template with its regexes compiled once
+    private static final class CompiledTemplate {
+
+        final Long id;
+        final String vendor;
+        final String category;
+        final String anchor;
+        final Pattern invoiceNumber;
+        final Pattern amount;
+        final Pattern date;
+        final DateTimeFormatter dateFormat;
+
+        CompiledTemplate(VendorTemplate template) {
+            this.id = template.getId();
+            this.vendor = template.getVendor();
+            this.category = template.getCategory();
+            this.anchor = template.getAnchor();
+            this.invoiceNumber = Pattern.compile(template.getInvoiceNumberPattern(), Pattern.CASE_INSENSITIVE);
+            this.amount = Pattern.compile(template.getAmountPattern(), Pattern.CASE_INSENSITIVE);
+            this.date = Pattern.compile(template.getDatePattern(), Pattern.CASE_INSENSITIVE);
+            this.dateFormat = formatter(template.getDateFormat());
+        }
+
+        // All three fields or nothing: a half-read invoice goes to the AI instead
+        Optional<Fields> read(String text) {
+            String number = group(invoiceNumber, text);
+            String total = group(amount, text);
+            LocalDate day = parseDate(group(date, text), dateFormat);
+            if (number == null || total == null || day == null) {
+                return Optional.empty();
+            }
+            return Optional.of(new Fields(number, parseAmount(total), day));
+        }
+
+        private static String group(Pattern pattern, String text) {
+            Matcher matcher = pattern.matcher(text);
+            return matcher.find() ? matcher.group(1) : null;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.event.InvoiceChangedEvent;
+import com.pivik.finance_dashboard.model.Invoice;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The Monday payment run: last week's report and ZIP are built off-hours, before anyone asks for them, and kept
+// on disk under the fingerprint of the invoices they were built from, so a restart doesn't throw them away.
+// When an invoice in that week changes, they are rebuilt in the background; until then requests fall through
+// to the artifact cache, which builds each one only once however many people are waiting for it.
+@Service
+public class WeeklyArtifactService {
+
+    public static final String REPORT = "report";
+    public static final String ZIP = "zip";
+
+    private static final List<String> TYPES = List.of(REPORT, ZIP);
+
+    private static final Logger log = LoggerFactory.getLogger(WeeklyArtifactService.class);
+
+    // Which invoices a week's artifacts were built from: any insert, edit or delete in the range changes it,
+    // because every write stamps a new change_version (see ChangeFeedService)
+    private static final String FINGERPRINT_SQL = "SELECT count(*) || '.' || coalesce(max(change_version), 0) || '.' || " +
+            "coalesce(sum(change_version), 0) FROM invoice WHERE date BETWEEN ? AND ?";
+
+    // "version" is the DataVersionService version it was current at; it goes stale as soon as that moves
+    private record Prebuilt(LocalDate startDate, LocalDate endDate, long version, ArtifactCache.Artifact artifact) {}
+
+    private final ArtifactCache artifactCache;
+    private final DataVersionService dataVersionService;
+    private final ReportService reportService;
+    private final JdbcTemplate jdbcTemplate;
+    private final Path directory;
+    private final CronExpression schedule;
+    private final long rebuildDelaySeconds;
+
+    private final Map<String, Prebuilt> prebuilt = new ConcurrentHashMap<>();
+    private volatile LocalDate weekStart;
+
+    // Builds, rebuilds and the schedule share one thread, so the same artifact is never built twice at once
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService builder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "weekly-artifacts");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong served = new AtomicLong();
+
+    public WeeklyArtifactService(ArtifactCache artifactCache,
+                                 DataVersionService dataVersionService,
+                                 ReportService reportService,
+                                 JdbcTemplate jdbcTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${pivik.weekly-artifacts.dir:cache/weekly}") String directory,
+                                 @Value("${pivik.weekly-artifacts.cron:0 0 3 * * MON}") String schedule,
+                                 @Value("${pivik.weekly-artifacts.rebuild-delay-seconds:30}") long rebuildDelaySeconds) {
+        this.artifactCache = artifactCache;
+        this.dataVersionService = dataVersionService;
+        this.reportService = reportService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.directory = Paths.get(directory);
+        this.schedule = CronExpression.parse(schedule);
+        this.rebuildDelaySeconds = rebuildDelaySeconds;
+
+        FunctionCounter.builder("pivik.artifact.cache", served, AtomicLong::get).tag("result", "prebuilt").register(meterRegistry);
+
+        try {
+            Files.createDirectories(this.directory);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not initialize weekly artifact folder!", e);
+        }
+    }
+
+    // Picks up what the last run left on disk if it still matches the data, and builds whatever doesn't
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        builder.execute(() -> {
+            weekStart = lastCompletedWeek();
+            loadFromDisk();
+            if (prebuilt.size() < TYPES.size()) {
+                buildWeek();
+            }
+        });
+        scheduleNextRun();
+    }
+
+    @PreDestroy
+    public void stop() {
+        builder.shutdownNow();
+    }
+
+    // The prebuilt artifact when the range is last week's and still current, otherwise the artifact cache
+    public ArtifactCache.Artifact get(String type, LocalDate startDate, LocalDate endDate) throws IOException {
+        Prebuilt ready = prebuilt.get(type);
+        if (ready != null && ready.startDate().equals(startDate) && ready.endDate().equals(endDate)
+                && dataVersionService.versionOf(startDate, endDate) == ready.version()) {
+            served.incrementAndGet();
+            return ready.artifact();
+        }
+        return artifactCache.get(type, startDate, endDate, writer(type, startDate, endDate));
+    }
+
+    // An invoice dated in last week changed: rebuild once the writes have settled
+    @EventListener
+    public void onInvoiceChanged(InvoiceChangedEvent event) {
+        if (!inWeek(event.before()) && !inWeek(event.after())) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    scheduleRebuild();
+                }
+            });
+        } else {
+            scheduleRebuild();
+        }
+    }
+
+    private void scheduleRebuild() {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            builder.schedule(this::buildWeek, rebuildDelaySeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private void scheduleNextRun() {
+        ZonedDateTime now = ZonedDateTime.now();
+        ZonedDateTime next = schedule.next(now);
+        if (next == null) {
+            return;
+        }
+        builder.schedule(() -> {
+            try {
+                weekStart = lastCompletedWeek();
+                buildWeek();
+            } finally {
+                scheduleNextRun();
+            }
+        }, Duration.between(now, next).toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void buildWeek() {
+        rebuildScheduled.set(false);
+        LocalDate startDate = weekStart;
+        LocalDate endDate = startDate.plusDays(6);
+        for (String type : TYPES) {
+            try {
+                build(type, startDate, endDate);
+            } catch (IOException | RuntimeException e) {
+                log.error("Weekly artifact build failed type={} start={} end={}", type, startDate, endDate, e);
+            }
+        }
+    }
+
+    private void build(String type, LocalDate startDate, LocalDate endDate) throws IOException {
+        // Version first, then the fingerprint: a write landing in between moves the version, so the
+        // fingerprint can only be older than the version we keep, never newer
+        long version = dataVersionService.versionOf(startDate, endDate);
+        String fingerprint = fingerprint(startDate, endDate);
+        Prebuilt current = prebuilt.get(type);
+        if (current != null && current.startDate().equals(startDate) && current.version() == version) {
+            return;
+        }
+
+        long started = System.nanoTime();
+        ArtifactCache.Artifact built = artifactCache.get(type, startDate, endDate, writer(type, startDate, endDate));
+        if (built.temporary() || dataVersionService.versionOf(startDate, endDate) != version) {
+            // Changed while rendering; the write that did it has a rebuild queued already
+            if (built.temporary()) {
+                Files.deleteIfExists(built.path());
+            }
+            return;
+        }
+
+        // A second link to the cache's file (a copy on file systems without links), so cache eviction can't take it
+        String name = prefix(type, startDate, endDate) + fingerprint;
+        Path target = directory.resolve(name);
+        Path temp = directory.resolve(name + ".tmp");
+        Files.deleteIfExists(temp);
+        try {
+            Files.createLink(temp, built.path());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(built.path(), temp, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        prebuilt.put(type, new Prebuilt(startDate, endDate, version, artifact(target, built.size())));
+        deleteOthers(type, name);
+        log.info("Prebuilt weekly artifact type={} start={} end={} bytes={} millis={}", type, startDate, endDate,
+                built.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    // Files from the last run are only worth keeping if they are for last week and the data hasn't moved since
+    private void loadFromDisk() {
+        LocalDate startDate = weekStart;
+        LocalDate endDate = startDate.plusDays(6);
+        long version = dataVersionService.versionOf(startDate, endDate);
+        String fingerprint = fingerprint(startDate, endDate);
+        for (String type : TYPES) {
+            Path file = directory.resolve(prefix(type, startDate, endDate) + fingerprint);
+            try {
+                if (Files.exists(file)) {
+                    prebuilt.put(type, new Prebuilt(startDate, endDate, version, artifact(file, Files.size(file))));
+                    log.info("Loaded weekly artifact type={} start={} end={}", type, startDate, endDate);
+                }
+                deleteOthers(type, file.getFileName().toString());
+            } catch (IOException e) {
+                log.warn("Could not load weekly artifact path={} error={}", file, e.getMessage());
+            }
+        }
+    }
+
+    private void deleteOthers(String type, String keep) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, type + "_*")) {
+            for (Path file : files) {
+                if (!file.getFileName().toString().equals(keep)) {
+                    Files.deleteIfExists(file); // a download already reading it keeps its open handle
+                }
+            }
+        }
+    }
+
+    private ArtifactCache.ArtifactWriter writer(String type, LocalDate startDate, LocalDate endDate) {
+        return switch (type) {
+            case REPORT -> out -> reportService.writeWeeklyReport(startDate, endDate, out);
+            case ZIP -> out -> reportService.writeZipBundle(startDate, endDate, out);
+            default -> throw new IllegalArgumentException("Unknown artifact type: " + type);
+        };
+    }
+
+    private String fingerprint(LocalDate startDate, LocalDate endDate) {
+        return jdbcTemplate.queryForObject(FINGERPRINT_SQL, String.class, startDate, endDate);
+    }
+
+    // The file name carries the fingerprint, so the ETag stays valid across restarts
+    private static ArtifactCache.Artifact artifact(Path file, long size) {
+        return new ArtifactCache.Artifact(file, "\"" + file.getFileName() + "\"", size, false);
+    }
+
+    private static String prefix(String type, LocalDate startDate, LocalDate endDate) {
+        return type + "_" + startDate + "_" + endDate + "_";
+    }
+
+    private boolean inWeek(Invoice invoice) {
+        LocalDate startDate = weekStart;
+        return startDate != null && invoice != null && invoice.getDate() != null
+                && !invoice.getDate().isBefore(startDate) && !invoice.getDate().isAfter(startDate.plusDays(6));
+    }
+
+    // Monday to Sunday, the week before this one
+    private static LocalDate lastCompletedWeek() {
+        return LocalDate.now().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).minusWeeks(1);
+    }
+}
@@ -0,0 +1,159 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.dto.SyncChanges;
+import com.pivik.finance_dashboard.dto.SyncCursor;
+import com.pivik.finance_dashboard.model.Earning;
+import com.pivik.finance_dashboard.model.Invoice;
+import com.pivik.finance_dashboard.support.TestDatabase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChangeFeedServiceTest {
+
+    private DataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private ChangeFeedService feed;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = TestDatabase.create();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        feed = new ChangeFeedService(jdbcTemplate, transactionTemplate, null, 90);
+        feed.installTriggers();
+    }
+
+    @Test
+    void smallPagesWalkEveryKindOnceInOrder() {
+        // One transaction, one version: the pages have to split it by kind and id
+        transactionTemplate.executeWithoutResult(status -> {
+            insertInvoices(1, 2, 3);
+            insertEarnings(10, 11);
+        });
+        insertEarnings(12);
+        insertInvoices(4);
+
+        Round round = syncAll(SyncCursor.start(0).encode(), 2);
+
+        assertThat(round.pages).isEqualTo(4); // 7 changes, 2 a page, the last page says there is no more
+        assertThat(round.invoices).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(round.earnings).containsExactly(10L, 11L, 12L);
+
+        // Caught up: nothing more until something changes
+        assertThat(feed.changes(round.cursor, 2).invoices()).isEmpty();
+    }
+
+    @Test
+    void editsComeAgainAndDeletesComeAsTombstones() {
+        insertInvoices(1, 2);
+        insertEarnings(10);
+        Round first = syncAll(SyncCursor.start(0).encode(), 10);
+
+        jdbcTemplate.update("UPDATE invoice SET vendor = 'Sysco' WHERE id = 2");
+        jdbcTemplate.update("DELETE FROM invoice WHERE id = 1");
+        jdbcTemplate.update("DELETE FROM earning WHERE id = 10");
+        Round second = syncAll(first.cursor, 1);
+
+        assertThat(second.invoices).containsExactly(2L);
+        assertThat(second.deletedInvoices).containsExactly(1L);
+        assertThat(second.deletedEarnings).containsExactly(10L);
+        assertThat(second.earnings).isEmpty();
+
+        // A row that comes back after its delete is sent as a row again
+        insertInvoices(1);
+        Round third = syncAll(second.cursor, 10);
+        assertThat(third.invoices).containsExactly(1L);
+        assertThat(third.deletedInvoices).isEmpty();
+    }
+
+    @Test
+    void aWriteStillInFlightDuringARoundComesInTheNextOne() throws SQLException {
+        String start = feed.currentCursor();
+        try (Connection slow = dataSource.getConnection()) {
+            slow.setAutoCommit(false);
+            try (Statement statement = slow.createStatement()) {
+                statement.execute("INSERT INTO invoice (id, vendor) VALUES (1, 'Costco')"); // the older version
+            }
+            insertInvoices(2); // newer, and committed first
+
+            Round first = syncAll(start, 10);
+            assertThat(first.invoices).containsExactly(2L);
+
+            slow.commit();
+            Round second = syncAll(first.cursor, 10);
+            assertThat(second.invoices).contains(1L);
+        }
+    }
+
+    @Test
+    void cursorsOlderThanThePrunedTombstonesAreGone() {
+        insertInvoices(1);
+        String old = feed.currentCursor();
+        jdbcTemplate.update("DELETE FROM invoice WHERE id = 1");
+        jdbcTemplate.update("UPDATE sync_tombstone SET deleted_at = now() - interval '100 days'");
+
+        feed.pruneTombstones();
+
+        assertThatThrownBy(() -> feed.changes(old, 10))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.GONE));
+        assertThatThrownBy(() -> feed.changes("not a cursor", 10))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+        assertThat(feed.changes(feed.currentCursor(), 10).deletedInvoices()).isEmpty();
+    }
+
+    private Round syncAll(String cursor, int limit) {
+        Round round = new Round();
+        SyncChanges page;
+        do {
+            page = feed.changes(cursor, limit);
+            page.invoices().stream().map(Invoice::getId).forEach(round.invoices::add);
+            page.earnings().stream().map(Earning::getId).forEach(round.earnings::add);
+            round.deletedInvoices.addAll(page.deletedInvoices());
+            round.deletedEarnings.addAll(page.deletedEarnings());
+            round.pages++;
+            cursor = page.cursor();
+        } while (page.hasMore());
+        round.cursor = cursor;
+        return round;
+    }
+
+    private void insertInvoices(long... ids) {
+        for (long id : ids) {
+            jdbcTemplate.update("INSERT INTO invoice (id, vendor) VALUES (?, 'Costco')", id);
+        }
+    }
+
+    private void insertEarnings(long... ids) {
+        for (long id : ids) {
+            jdbcTemplate.update("INSERT INTO earning (id, date, amount, source) VALUES (?, DATE '2025-01-01' + ?::int, 10, 'Bar')",
+                    id, (int) id);
+        }
+    }
+
+    private static final class Round {
+        final List<Long> invoices = new ArrayList<>();
+        final List<Long> earnings = new ArrayList<>();
+        final List<Long> deletedInvoices = new ArrayList<>();
+        final List<Long> deletedEarnings = new ArrayList<>();
+        int pages;
+        String cursor;
+    }
+}
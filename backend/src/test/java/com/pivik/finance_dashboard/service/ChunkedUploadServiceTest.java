@@ -0,0 +1,165 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.dto.UploadStatus;
+import com.pivik.finance_dashboard.model.IngestionJob;
+import com.pivik.finance_dashboard.support.TestDatabase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChunkedUploadServiceTest {
+
+    private static final byte[] SCAN = "%PDF-1.4 a scan that came in pieces".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    private FileStorageService storage;
+    private ChunkedUploadService uploads;
+    private final List<String> stored = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        DataSource dataSource = TestDatabase.create();
+        storage = new FileStorageService(directory.toString(), 0, new JdbcTemplate(dataSource),
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)), new SimpleMeterRegistry());
+        uploads = new ChunkedUploadService(storage, new StoringIngestion(), new SimpleMeterRegistry(), 1024, 24);
+    }
+
+    @Test
+    void aChunkSentAgainOnlyAddsWhatIsNew() throws IOException {
+        UploadStatus started = uploads.start("scan.pdf", (long) SCAN.length);
+        String id = started.uploadId();
+
+        assertThat(uploads.write(id, 0, chunk(0, 10)).received()).isEqualTo(10);
+        assertThat(uploads.write(id, 0, chunk(0, 10)).received()).isEqualTo(10);  // the answer got lost
+        assertThat(uploads.write(id, 6, chunk(6, 20)).received()).isEqualTo(20);  // overlaps by 4
+        assertThat(uploads.write(id, 20, chunk(20, SCAN.length)).received()).isEqualTo(SCAN.length);
+
+        IngestionJob job = uploads.complete(id, sha256(SCAN).toUpperCase());
+
+        assertThat(job.getFileName()).isEqualTo("scan.pdf");
+        assertThat(stored).containsExactly(sha256(SCAN) + ".pdf");
+        assertThat(storage.resolve(stored.get(0))).hasBinaryContent(SCAN);
+        assertThat(storage.incomingDirectory()).isEmptyDirectory();
+        assertStatus(() -> uploads.status(id), HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void aChunkPastWhatArrivedIsRefused() {
+        String id = uploads.start("scan.pdf", (long) SCAN.length).uploadId();
+        uploads.write(id, 0, chunk(0, 10));
+
+        assertStatus(() -> uploads.write(id, 12, chunk(12, 20)), HttpStatus.CONFLICT);
+        assertStatus(() -> uploads.complete(id, null), HttpStatus.CONFLICT); // 10 of the announced bytes
+        assertThat(uploads.status(id).received()).isEqualTo(10);
+    }
+
+    @Test
+    void aDroppedConnectionKeepsWhatArrived() throws IOException {
+        String id = uploads.start("scan.pdf", null).uploadId();
+        InputStream dropping = new InputStream() {
+            private final InputStream first = chunk(0, 15);
+
+            @Override
+            public int read() throws IOException {
+                int next = first.read();
+                if (next < 0) {
+                    throw new IOException("connection reset");
+                }
+                return next;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = first.read(buffer, offset, Math.min(length, 5));
+                if (read < 0) {
+                    throw new IOException("connection reset");
+                }
+                return read;
+            }
+        };
+
+        assertThat(uploads.write(id, 0, dropping).received()).isEqualTo(15);
+        uploads.write(id, 15, chunk(15, SCAN.length));
+        uploads.complete(id, sha256(SCAN));
+
+        assertThat(storage.resolve(stored.get(0))).hasBinaryContent(SCAN);
+    }
+
+    @Test
+    void aDamagedUploadIsDiscarded() {
+        String id = uploads.start("scan.pdf", (long) SCAN.length).uploadId();
+        uploads.write(id, 0, chunk(0, SCAN.length));
+
+        assertStatus(() -> uploads.complete(id, sha256("something else".getBytes(StandardCharsets.UTF_8))),
+                HttpStatus.UNPROCESSABLE_ENTITY);
+
+        assertThat(stored).isEmpty();
+        assertThat(storage.incomingDirectory()).isEmptyDirectory();
+        assertStatus(() -> uploads.write(id, SCAN.length, chunk(0, 1)), HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void uploadsCannotOutgrowTheirLength() {
+        assertStatus(() -> uploads.start("huge.pdf", 4096L), HttpStatus.PAYLOAD_TOO_LARGE);
+
+        String id = uploads.start("scan.pdf", 10L).uploadId();
+        assertStatus(() -> uploads.write(id, 0, chunk(0, SCAN.length)), HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    // Stores the upload the way the pipeline's first stage would, and stops there
+    private class StoringIngestion extends InvoiceIngestionService {
+
+        StoringIngestion() {
+            super(null, null, null, null, null, null, null, null, null, ObservationRegistry.NOOP, new SimpleMeterRegistry(),
+                    1, 1, 1, 1, 1);
+        }
+
+        @Override
+        public IngestionJob submit(String originalName, String mode, Supplier<String> store) {
+            stored.add(store.get());
+            return new IngestionJob("job", originalName);
+        }
+    }
+
+    private static InputStream chunk(int from, int to) {
+        return new ByteArrayInputStream(SCAN, from, to - from);
+    }
+
+    private static void assertStatus(Runnable call, HttpStatus status) {
+        assertThatThrownBy(call::run).isInstanceOfSatisfying(ResponseStatusException.class,
+                e -> assertThat(e.getStatusCode()).isEqualTo(status));
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
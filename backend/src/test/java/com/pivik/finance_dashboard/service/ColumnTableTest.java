@@ -0,0 +1,132 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.dto.GroupTotal;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ColumnTableTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+    private static final String[] VENDORS = {"Costco", "Sysco", "Staples", null};
+
+    private final ColumnTable table = new ColumnTable(1);
+    private final Map<Long, ColumnTable.Row> expected = new HashMap<>();
+
+    @Test
+    void upsertsAndRemovesAddUpLikeTheRows() {
+        Random random = new Random(7);
+        for (int i = 0; i < 5_000; i++) {
+            long id = random.nextInt(400);
+            if (random.nextInt(5) == 0) {
+                table.remove(id);
+                expected.remove(id);
+            } else {
+                ColumnTable.Row row = randomRow(random, id);
+                table.upsert(id, row.date(), row.amount(), row.keyValues());
+                put(row);
+            }
+            if (i % 250 == 0) {
+                assertMatches(random);
+            }
+        }
+        assertMatches(random);
+    }
+
+    @Test
+    void bulkUpsertsAddUpLikeTheRows() {
+        Random random = new Random(11);
+        for (int batch = 0; batch < 40; batch++) {
+            List<ColumnTable.Row> rows = new ArrayList<>();
+            for (int i = 0; i < 150; i++) {
+                rows.add(randomRow(random, random.nextInt(1_000))); // repeats: the last version of an id wins
+            }
+            table.upsertAll(rows);
+            rows.forEach(this::put);
+            assertMatches(random);
+
+            long removed = random.nextInt(1_000);
+            table.remove(removed);
+            expected.remove(removed);
+        }
+        assertMatches(random);
+    }
+
+    @Test
+    void datesOutsideTheBoundsAreLeftOutLikeUndatedOnes() {
+        table.upsert(1, LocalDate.of(2025, 3, 4), 10.0, "Costco");
+        table.upsert(2, LocalDate.of(202, 3, 4), 20.0, "Costco");
+        table.upsert(3, LocalDate.of(20025, 3, 4), 30.0, "Costco");
+        table.upsertAll(List.of(new ColumnTable.Row(4, LocalDate.MAX, 40.0, "Costco"),
+                new ColumnTable.Row(5, null, 50.0, "Costco")));
+        // A row that moves out of bounds leaves the table
+        table.upsert(6, LocalDate.of(2025, 3, 5), 60.0, "Costco");
+        table.upsert(6, LocalDate.MIN, 60.0, "Costco");
+
+        assertThat(table.size()).isEqualTo(1);
+        assertThat(table.total(Integer.MIN_VALUE + 1, Integer.MAX_VALUE - 1)).isEqualTo(new ColumnTable.Total(1000, 1));
+    }
+
+    private ColumnTable.Row randomRow(Random random, long id) {
+        LocalDate date = random.nextInt(20) == 0 ? null : START.plusDays(random.nextInt(900));
+        Double amount = random.nextInt(30) == 0 ? null : random.nextInt(100_000) / 100.0;
+        return new ColumnTable.Row(id, date, amount, VENDORS[random.nextInt(VENDORS.length)]);
+    }
+
+    private void put(ColumnTable.Row row) {
+        if (row.date() == null) {
+            expected.remove(row.id());
+        } else {
+            expected.put(row.id(), row);
+        }
+    }
+
+    // Random ranges, every read against a scan of the rows
+    private void assertMatches(Random random) {
+        assertThat(table.size()).isEqualTo(expected.size());
+        for (int i = 0; i < 20; i++) {
+            int from = (int) START.toEpochDay() - 30 + random.nextInt(960);
+            int to = from + random.nextInt(400);
+
+            long cents = 0;
+            long count = 0;
+            Map<String, long[]> byVendor = new HashMap<>();
+            Map<String, long[]> byMonth = new TreeMap<>();
+            for (ColumnTable.Row row : expected.values()) {
+                long day = row.date().toEpochDay();
+                if (day < from || day > to) {
+                    continue;
+                }
+                long rowCents = row.amount() != null ? Math.round(row.amount() * 100) : 0;
+                cents += rowCents;
+                count++;
+                add(byVendor, row.keyValues()[0], rowCents);
+                add(byMonth, row.date().toString().substring(0, 7), rowCents);
+            }
+
+            assertThat(table.total(from, to)).isEqualTo(new ColumnTable.Total(cents, count));
+            assertThat(table.groupBy(0, from, to)).containsExactlyInAnyOrderElementsOf(totals(byVendor));
+            assertThat(table.groupByMonth(from, to)).containsExactlyElementsOf(totals(byMonth));
+        }
+    }
+
+    private static void add(Map<String, long[]> totals, String key, long cents) {
+        long[] sums = totals.computeIfAbsent(key, k -> new long[2]);
+        sums[0] += cents;
+        sums[1]++;
+    }
+
+    private static List<GroupTotal> totals(Map<String, long[]> sums) {
+        return sums.entrySet().stream()
+                .map(entry -> new GroupTotal(entry.getKey(), entry.getValue()[0] / 100.0, entry.getValue()[1]))
+                .toList();
+    }
+}
@@ -0,0 +1,87 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.dto.GroupTotal;
+import com.pivik.finance_dashboard.event.ChangeType;
+import com.pivik.finance_dashboard.event.InvoiceChangedEvent;
+import com.pivik.finance_dashboard.model.Invoice;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ColumnarStoreTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 6, 2);
+
+    private final ColumnarStore store = new ColumnarStore(null);
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void aLateCallbackDoesNotUndoANewerWrite() {
+        List<TransactionSynchronization> first = inTransaction(() -> store.onInvoiceChanged(
+                new InvoiceChangedEvent(ChangeType.UPDATED, invoice(10.0), invoice(20.0))));
+        List<TransactionSynchronization> second = inTransaction(() -> store.onInvoiceChanged(
+                new InvoiceChangedEvent(ChangeType.UPDATED, invoice(20.0), invoice(30.0))));
+
+        // The second writer's callback gets the lock first
+        commit(second);
+        commit(first);
+
+        assertThat(store.totalSpending(DAY, DAY)).isEqualTo(new GroupTotal("spending", 30.0, 1L));
+    }
+
+    @Test
+    void aLateCallbackDoesNotBringBackADeletedRow() {
+        List<TransactionSynchronization> update = inTransaction(() -> store.onInvoiceChanged(
+                new InvoiceChangedEvent(ChangeType.UPDATED, invoice(10.0), invoice(20.0))));
+        List<TransactionSynchronization> delete = inTransaction(() -> store.onInvoiceChanged(
+                new InvoiceChangedEvent(ChangeType.DELETED, invoice(20.0), null)));
+
+        commit(delete);
+        commit(update);
+
+        assertThat(store.totalSpending(DAY, DAY)).isEqualTo(new GroupTotal("spending", 0.0, 0L));
+    }
+
+    @Test
+    void writesOutsideATransactionApplyRightAway() {
+        store.onInvoiceChanged(new InvoiceChangedEvent(ChangeType.CREATED, null, invoice(12.5)));
+
+        assertThat(store.totalSpending(DAY, DAY)).isEqualTo(new GroupTotal("spending", 12.5, 1L));
+    }
+
+    private static List<TransactionSynchronization> inTransaction(Runnable write) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            write.run();
+            return TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static void commit(List<TransactionSynchronization> synchronizations) {
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+        synchronizations.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+    }
+
+    private static Invoice invoice(double amount) {
+        Invoice invoice = new Invoice();
+        invoice.setId(1L);
+        invoice.setDate(DAY);
+        invoice.setAmount(amount);
+        invoice.setVendor("Costco");
+        return invoice;
+    }
+}
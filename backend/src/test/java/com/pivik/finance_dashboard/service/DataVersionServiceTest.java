@@ -0,0 +1,40 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.event.ChangeType;
+import com.pivik.finance_dashboard.event.InvoiceChangedEvent;
+import com.pivik.finance_dashboard.model.Invoice;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DataVersionServiceTest {
+
+    private static final LocalDate MONDAY = LocalDate.of(2025, 3, 3);
+    private static final LocalDate SUNDAY = MONDAY.plusDays(6);
+
+    private final DataVersionService versions = new DataVersionService();
+
+    @Test
+    void aWriteChangesTheRangesHoldingItsDate() {
+        long before = versions.versionOf(MONDAY, SUNDAY);
+        versions.onInvoiceChanged(new InvoiceChangedEvent(ChangeType.CREATED, null, invoice(MONDAY.plusDays(2))));
+
+        assertThat(versions.versionOf(MONDAY, SUNDAY)).isGreaterThan(before);
+        assertThat(versions.versionOf(SUNDAY.plusDays(1), SUNDAY.plusDays(7))).isZero();
+    }
+
+    @Test
+    void aRangeEndingBeforeItStartsHasNoVersion() {
+        versions.onInvoiceChanged(new InvoiceChangedEvent(ChangeType.CREATED, null, invoice(MONDAY.plusDays(2))));
+
+        assertThat(versions.versionOf(SUNDAY, MONDAY)).isZero();
+    }
+
+    private static Invoice invoice(LocalDate date) {
+        Invoice invoice = new Invoice();
+        invoice.setDate(date);
+        return invoice;
+    }
+}
@@ -0,0 +1,140 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.dto.ImportReport;
+import com.pivik.finance_dashboard.event.EarningsImportedEvent;
+import com.pivik.finance_dashboard.service.EarningImportService.Format;
+import com.pivik.finance_dashboard.support.TestDatabase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EarningImportServiceTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private EarningImportService importer;
+    private final List<EarningsImportedEvent> events = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        DataSource dataSource = TestDatabase.create();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        // Chunks of 2, so a few lines already span several transactions
+        importer = new EarningImportService(jdbcTemplate, new TransactionTemplate(new DataSourceTransactionManager(dataSource)),
+                event -> events.add((EarningsImportedEvent) event), null, 2);
+        importer.createUniqueIndex();
+    }
+
+    @Test
+    void importingTheSameFileAgainChangesNothing() throws IOException {
+        String csv = """
+                date,amount,source
+                2025-03-01,120.50,Register 1
+                2025-03-01,80.00,Register 2
+                2025-03-02,99.99,Register 1
+                """;
+
+        ImportReport first = importCsv(csv);
+        ImportReport again = importCsv(csv);
+
+        assertThat(first.inserted()).isEqualTo(3);
+        assertThat(again.rows()).isEqualTo(3);
+        assertThat(again.inserted()).isZero();
+        assertThat(again.updated()).isZero();
+        assertThat(again.unchanged()).isEqualTo(3);
+        assertThat(earnings()).containsExactly(
+                "2025-03-01 Register 1 120.5", "2025-03-01 Register 2 80.0", "2025-03-02 Register 1 99.99");
+
+        // Nothing was written the second time, so nothing was announced either
+        int announced = events.size();
+        ImportReport corrected = importCsv("date,amount,source\n2025-03-02,100.00,Register 1\n");
+        assertThat(corrected.updated()).isEqualTo(1);
+        assertThat(events).hasSize(announced + 1);
+        assertThat(events.get(announced).before().get(0).getAmount()).isEqualTo(99.99);
+        assertThat(events.get(announced).after().get(0).getAmount()).isEqualTo(100.0);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM earning", Integer.class)).isEqualTo(3);
+    }
+
+    @Test
+    void columnsAreFoundByTheirHeaderInAnyOrder() throws IOException {
+        ImportReport report = importCsv("""
+                Register,Total,Date
+                Bar,45.00,2025-04-01
+                Patio,$1,250.00,4/2/2025
+                """);
+
+        assertThat(report.inserted()).isEqualTo(1);
+        assertThat(report.rejected()).isEqualTo(1); // the unquoted "1,250.00" splits into two columns
+        assertThat(earnings()).containsExactly("2025-04-01 Bar 45.0");
+    }
+
+    @Test
+    void quotedFieldsMayHoldCommasAndQuotes() throws IOException {
+        importCsv("""
+                date,amount,source
+                2025-05-01,"$1,234.50","Bar, ""Main"" floor"
+                5/2/2025,"2,000",Patio
+                """);
+
+        assertThat(earnings()).containsExactly("2025-05-01 Bar, \"Main\" floor 1234.5", "2025-05-02 Patio 2000.0");
+    }
+
+    @Test
+    void linesThatCannotBeReadAreRejectedOneByOne() throws IOException {
+        ImportReport report = importCsv("""
+                date,amount,source
+                2025-06-01,NaN,Bar
+                2025-06-01,Infinity,Bar
+                2025-06-01,-Infinity,Patio
+                2025-06-01,1e999,Patio
+                2025-06-01,ten,Patio
+                2025-06-31,10.00,Patio
+                2025-06-01,,Patio
+                2025-06-01,10.00,
+                2025-06-02,12.00,Bar
+                """);
+
+        assertThat(report.rejected()).isEqualTo(8);
+        assertThat(report.rejections()).first().asString().startsWith("line 2: bad amount 'NaN'");
+        assertThat(earnings()).containsExactly("2025-06-02 Bar 12.0");
+    }
+
+    @Test
+    void ndjsonRowsGoThroughTheSameChecks() throws IOException {
+        ImportReport report = importer.importEarnings(stream("""
+                {"date":"2025-07-01","amount":"15.25","source":"Bar"}
+                {"date":"2025-07-01","amount":"NaN","source":"Patio"}
+                {"date":"2025-07-02","amount":30,"source":"Patio"}
+                not json
+                """), Format.NDJSON);
+
+        assertThat(report.inserted()).isEqualTo(2);
+        assertThat(report.rejected()).isEqualTo(2);
+        assertThat(earnings()).containsExactly("2025-07-01 Bar 15.25", "2025-07-02 Patio 30.0");
+    }
+
+    private ImportReport importCsv(String csv) throws IOException {
+        return importer.importEarnings(stream(csv), Format.CSV);
+    }
+
+    private static ByteArrayInputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<String> earnings() {
+        return jdbcTemplate.queryForList("SELECT date, source, amount FROM earning ORDER BY date, source").stream()
+                .map((Map<String, Object> row) -> row.get("date") + " " + row.get("source") + " " + row.get("amount"))
+                .toList();
+    }
+}
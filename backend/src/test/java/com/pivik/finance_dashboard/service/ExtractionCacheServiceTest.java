@@ -0,0 +1,28 @@
+package com.pivik.finance_dashboard.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExtractionCacheServiceTest {
+
+    private static final String INVOICE = "COSTCO WHOLESALE\nInvoice 4471\nDate 2024-03-02\nTotal  $182.40\n";
+
+    @Test
+    void rescansOfTheSameTextShareAKey() {
+        String rescan = "  costco wholesale Invoice 4471\r\n\r\nDate 2024-03-02   TOTAL $182.40";
+
+        assertThat(ExtractionCacheService.textHash(INVOICE)).isNotNull()
+                .isEqualTo(ExtractionCacheService.textHash(rescan));
+        assertThat(ExtractionCacheService.textHash(INVOICE.replace("4471", "4472")))
+                .isNotEqualTo(ExtractionCacheService.textHash(INVOICE));
+    }
+
+    @Test
+    void blankOrShortTextHasNoKey() {
+        // What PDFBox reads from image-only scans: page breaks and nothing else
+        assertThat(ExtractionCacheService.textHash("\f\f\n")).isNull();
+        assertThat(ExtractionCacheService.textHash(" \r\n\f \t")).isNull();
+        assertThat(ExtractionCacheService.textHash("Page 1\fPage 2")).isNull();
+    }
+}
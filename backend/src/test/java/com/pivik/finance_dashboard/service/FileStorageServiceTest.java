@@ -0,0 +1,129 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.event.ChangeType;
+import com.pivik.finance_dashboard.event.InvoiceChangedEvent;
+import com.pivik.finance_dashboard.model.Invoice;
+import com.pivik.finance_dashboard.support.TestDatabase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileStorageServiceTest {
+
+    private static final byte[] BYTES = "%PDF-1.4 the same scan".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    private JdbcTemplate jdbcTemplate;
+    private FileStorageService storage;
+
+    @BeforeEach
+    void setUp() {
+        DataSource dataSource = TestDatabase.create();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        // No grace period: anything unreferenced is swept right away
+        storage = new FileStorageService(directory.toString(), 0, jdbcTemplate,
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void sameBytesAreStoredOnce() throws IOException {
+        String first = storage.store(new ByteArrayInputStream(BYTES), "costco.pdf");
+        String second = storage.store(new ByteArrayInputStream(BYTES), "COSTCO copy.PDF");
+
+        assertThat(second).isEqualTo(first);
+        assertThat(storage.resolve(first)).hasBinaryContent(BYTES);
+        assertThat(rows()).isEqualTo(1);
+        assertThat(storage.incomingDirectory()).isEmptyDirectory();
+    }
+
+    @Test
+    void sameBytesWithAnotherExtensionAreAnotherFile() throws IOException {
+        String pdf = storage.store(new ByteArrayInputStream(BYTES), "scan.pdf");
+        String jpg = storage.store(new ByteArrayInputStream(BYTES), "scan.jpg");
+
+        assertThat(pdf.substring(0, 64)).isEqualTo(jpg.substring(0, 64));
+        assertThat(pdf).isNotEqualTo(jpg);
+        assertThat(rows()).isEqualTo(2);
+
+        // Only the PDF is referenced: the sweep takes the JPG and leaves the PDF
+        storage.onInvoiceChanged(new InvoiceChangedEvent(ChangeType.CREATED, null, invoice(pdf)));
+        storage.sweep();
+
+        assertThat(storage.resolve(pdf)).exists();
+        assertThat(storage.resolve(jpg)).doesNotExist();
+        assertThat(refCount(pdf)).isEqualTo(1);
+        assertThat(rows()).isEqualTo(1);
+    }
+
+    @Test
+    void referencesFollowInvoiceWrites() throws IOException {
+        String a = storage.store(new ByteArrayInputStream(BYTES), "a.pdf");
+        String b = storage.store(new ByteArrayInputStream("other bytes".getBytes(StandardCharsets.UTF_8)), "b.pdf");
+
+        storage.onInvoiceChanged(new InvoiceChangedEvent(ChangeType.CREATED, null, invoice(a)));
+        storage.onInvoiceChanged(new InvoiceChangedEvent(ChangeType.CREATED, null, invoice(a)));
+        storage.onInvoiceChanged(new InvoiceChangedEvent(ChangeType.UPDATED, invoice(a), invoice(b)));
+        assertThat(refCount(a)).isEqualTo(1);
+        assertThat(refCount(b)).isEqualTo(1);
+
+        storage.onInvoiceChanged(new InvoiceChangedEvent(ChangeType.DELETED, invoice(a), null));
+        storage.sweep();
+        assertThat(storage.resolve(a)).doesNotExist();
+        assertThat(storage.resolve(b)).exists();
+    }
+
+    @Test
+    void recountRepairsCountsFromTheInvoiceTable() throws IOException {
+        String kept = storage.store(new ByteArrayInputStream(BYTES), "kept.pdf");
+        String orphan = storage.store(new ByteArrayInputStream(BYTES), "orphan.png");
+        jdbcTemplate.update("UPDATE stored_file SET ref_count = 5"); // what a crash might leave
+        jdbcTemplate.update("INSERT INTO invoice (id, vendor, file_url) VALUES (1, 'Costco', ?), (2, 'Costco', ?)", kept, kept);
+
+        storage.recountAndSweep();
+
+        assertThat(refCount(kept)).isEqualTo(2);
+        assertThat(storage.resolve(kept)).exists();
+        assertThat(storage.resolve(orphan)).doesNotExist();
+    }
+
+    @Test
+    void legacyNamesMayContainDotsButNotPaths() throws IOException {
+        Path legacy = directory.resolve("3f1c_invoice..final.pdf");
+        Files.write(legacy, BYTES);
+
+        assertThat(storage.resolve("3f1c_invoice..final.pdf")).isEqualTo(legacy);
+        assertThatThrownBy(() -> storage.resolve("../secrets.pdf")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> storage.resolve("..")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> storage.resolve("a\\b.pdf")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private int rows() {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM stored_file", Integer.class);
+    }
+
+    private long refCount(String fileName) {
+        return jdbcTemplate.queryForObject("SELECT ref_count FROM stored_file WHERE name = ?", Long.class, fileName);
+    }
+
+    private static Invoice invoice(String fileUrl) {
+        Invoice invoice = new Invoice();
+        invoice.setFileUrl(fileUrl);
+        return invoice;
+    }
+}
@@ -0,0 +1,74 @@
+package com.pivik.finance_dashboard.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OpenAiServiceTest {
+
+    @Test
+    void retryAfterInSeconds() {
+        assertThat(OpenAiService.retryAfterMillis(headers("7"))).isEqualTo(7000);
+    }
+
+    @Test
+    void retryAfterAsHttpDate() {
+        String inTenSeconds = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now().plusSeconds(10));
+        assertThat(OpenAiService.retryAfterMillis(headers(inTenSeconds))).isBetween(8000L, 10000L);
+    }
+
+    @Test
+    void retryAfterMissingOrUnreadable() {
+        assertThat(OpenAiService.retryAfterMillis(HttpHeaders.of(Map.of(), (name, value) -> true))).isEqualTo(-1);
+        assertThat(OpenAiService.retryAfterMillis(headers("soon"))).isEqualTo(-1);
+    }
+
+    @Test
+    void openCircuitFailsFastWithoutTakingQuota() throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        OpenAiService service = new OpenAiService(HttpClient.newHttpClient(), registry);
+        ReflectionTestUtils.setField(service, "apiKey", "test");
+        ReflectionTestUtils.setField(service, "model", "test");
+        ReflectionTestUtils.setField(service, "apiUrl", "http://localhost:" + closedPort() + "/v1/chat/completions");
+        ReflectionTestUtils.setField(service, "requestTimeoutSeconds", 5L);
+        ReflectionTestUtils.setField(service, "maxRetries", 0);
+        // One token, none back for a minute; the first refused connection opens the circuit
+        ReflectionTestUtils.setField(service, "burst", 1L);
+        ReflectionTestUtils.setField(service, "requestsPerMinute", 1L);
+        ReflectionTestUtils.setField(service, "failureThreshold", 1);
+        ReflectionTestUtils.setField(service, "openSeconds", 60L);
+        service.init();
+
+        assertThat(service.extractInvoiceDetails("COSTCO Total 12.50")).isNull();
+
+        long started = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            assertThat(service.extractInvoiceDetails("COSTCO Total 12.50")).isNull();
+        }
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(1));
+        assertThat(registry.counter("pivik.openai.rejected", "reason", "circuit_open").count()).isEqualTo(3);
+        assertThat(registry.find("pivik.openai.rejected").tag("reason", "rate_limited").counter()).isNull();
+    }
+
+    private static int closedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static HttpHeaders headers(String retryAfter) {
+        return HttpHeaders.of(Map.of("Retry-After", List.of(retryAfter)), (name, value) -> true);
+    }
+}
@@ -0,0 +1,63 @@
+package com.pivik.finance_dashboard.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PdfExtractionServiceTest {
+
+    @Test
+    void readsTheText() throws IOException {
+        assertThat(service(30).extractText(new ByteArrayInputStream(pdf("Invoice 1042 Costco"))))
+                .contains("Invoice 1042 Costco");
+    }
+
+    @Test
+    void aDamagedFileIsAnErrorText() {
+        assertThat(service(30).extractText(new ByteArrayInputStream("not a pdf".getBytes(StandardCharsets.UTF_8))))
+                .startsWith("Error");
+    }
+
+    @Test
+    void runningOutOfTimeIsA503NotAnEmptyInvoice() throws IOException {
+        byte[] pdf = pdf("Invoice 1042 Costco");
+
+        assertThatThrownBy(() -> service(0).extractText(new ByteArrayInputStream(pdf)))
+                .isInstanceOfSatisfying(ExtractionUnavailableException.class, e -> {
+                    assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+                    assertThat(e.timedOut()).isTrue();
+                });
+    }
+
+    private static PdfExtractionService service(long timeoutSeconds) {
+        return new PdfExtractionService(8 * 1024 * 1024, 256 * 1024 * 1024, 3, timeoutSeconds, 1, new SimpleMeterRegistry());
+    }
+
+    private static byte[] pdf(String text) throws IOException {
+        try (PDDocument document = new PDDocument(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            PDPage page = new PDPage();
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.beginText();
+                content.setFont(PDType1Font.HELVETICA, 12);
+                content.newLineAtOffset(72, 700);
+                content.showText(text);
+                content.endText();
+            }
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.pivik.finance_dashboard.service;
+
+import com.pivik.finance_dashboard.model.Invoice;
+import com.pivik.finance_dashboard.model.VendorTemplate;
+import com.pivik.finance_dashboard.repository.VendorTemplateRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VendorTemplateServiceTest {
+
+    // The invoice a user confirmed, and the next one from the same vendor
+    private static final String CONFIRMED = """
+            SYSCO FOOD SERVICES OF TORONTO
+            Invoice #: INV-004512
+            Invoice Date: 03/14/2025
+            Due Date: 04/13/2025
+            Subtotal $100.00
+            HST $13.00
+            TOTAL DUE $113.00
+            """;
+    private static final String NEXT = """
+            SYSCO FOOD SERVICES OF TORONTO
+            Invoice #: INV-009981
+            Invoice Date: 05/02/2025
+            Due Date: 06/01/2025
+            Subtotal $2,168.81
+            HST $281.94
+            TOTAL DUE $2,450.75
+            """;
+
+    @Test
+    void anchorIsTheVendorNameWhenTheTextSpellsIt() {
+        assertThat(VendorTemplateService.findAnchor("Costco Wholesale #552\nTotal 12.00", "Costco", List.of()))
+                .isEqualTo("costco");
+    }
+
+    @Test
+    void anchorFallsBackToANumberFreeLineWithAVendorWord() {
+        assertThat(VendorTemplateService.findAnchor(CONFIRMED, "Sysco Foods", List.of()))
+                .isEqualTo("sysco food services of toronto");
+    }
+
+    @Test
+    void noAnchorWithoutSomethingVendorSpecific() {
+        // Nothing names the vendor: "invoice" or "subtotal" would match everyone's invoices
+        assertThat(VendorTemplateService.findAnchor(CONFIRMED, "Gordon Supply", List.of())).isNull();
+        // Words under four letters don't count either
+        assertThat(VendorTemplateService.findAnchor("BOB AND SONS PUB\nTotal 9.00", "Bob's Pub", List.of())).isNull();
+    }
+
+    @Test
+    void noAnchorThatOverlapsAnotherVendors() {
+        VendorTemplate other = template("Sysco Canada", "sysco food services");
+
+        assertThat(VendorTemplateService.findAnchor(CONFIRMED, "Sysco Foods", List.of(other))).isNull();
+        // Its own earlier anchor is no conflict
+        assertThat(VendorTemplateService.findAnchor(CONFIRMED, "Sysco Foods", List.of(template("Sysco Foods", "sysco"))))
+                .isEqualTo("sysco food services of toronto");
+    }
+
+    @Test
+    void learnedInvoiceNumberPatternReadsTheNextInvoice() {
+        String pattern = VendorTemplateService.findNumberPattern(CONFIRMED, "INV-004512");
+
+        assertThat(read(pattern, CONFIRMED)).isEqualTo("INV-004512");
+        assertThat(read(pattern, NEXT)).isEqualTo("INV-009981");
+    }
+
+    @Test
+    void learnedAmountPatternReadsTheTotalNotTheSubtotal() {
+        String pattern = VendorTemplateService.findAmountPattern(CONFIRMED, 113.00);
+
+        assertThat(read(pattern, CONFIRMED)).isEqualTo("113.00");
+        assertThat(read(pattern, NEXT)).isEqualTo("2,450.75");
+    }
+
+    @Test
+    void amountEqualToTheSubtotalIsLearnedFromTheLastLine() {
+        String pattern = VendorTemplateService.findAmountPattern("Subtotal 50.00\nTotal 50.00\n", 50.00);
+
+        assertThat(read(pattern, "Subtotal 40.00\nTotal 45.20\n")).isEqualTo("45.20");
+    }
+
+    @Test
+    void noAmountPatternWhenTheTextDoesNotHoldTheAmount() {
+        assertThat(VendorTemplateService.findAmountPattern(CONFIRMED, 114.00)).isNull();
+    }
+
+    @Test
+    void learnedDatePatternReadsTheInvoiceDateNotTheDueDate() {
+        String[] date = VendorTemplateService.findDatePattern(CONFIRMED, LocalDate.of(2025, 3, 14));
+
+        assertThat(date[1]).isEqualTo("MM/dd/yyyy");
+        assertThat(read(date[0], NEXT)).isEqualTo("05/02/2025");
+    }
+
+    @Test
+    void dateFormatFollowsHowTheInvoiceWritesTheDay() {
+        String[] date = VendorTemplateService.findDatePattern("Date: 14/03/2025\nTotal 9.00", LocalDate.of(2025, 3, 14));
+
+        assertThat(date[1]).isEqualTo("dd/MM/yyyy");
+        assertThat(VendorTemplateService.findDatePattern("Date: 14/03/2025", LocalDate.of(2025, 3, 15))).isNull();
+    }
+
+    @Test
+    void trustedTemplateFillsTheInvoiceAndCountsHitsInBatches() {
+        VendorTemplate sysco = template("Sysco Foods", "sysco food services of toronto");
+        sysco.setId(7L);
+        sysco.setCategory("Groceries");
+        sysco.setConfirmations(2);
+        sysco.setInvoiceNumberPattern(VendorTemplateService.findNumberPattern(CONFIRMED, "INV-004512"));
+        sysco.setAmountPattern(VendorTemplateService.findAmountPattern(CONFIRMED, 113.00));
+        String[] date = VendorTemplateService.findDatePattern(CONFIRMED, LocalDate.of(2025, 3, 14));
+        sysco.setDatePattern(date[0]);
+        sysco.setDateFormat(date[1]);
+
+        Map<Long, Long> written = new HashMap<>();
+        VendorTemplateService templates = new VendorTemplateService(repository(List.of(sysco), written),
+                null, null, new SimpleMeterRegistry(), 2, 30);
+        templates.reload();
+
+        Invoice invoice = new Invoice();
+        assertThat(templates.apply(invoice, NEXT)).isTrue();
+        assertThat(invoice.getVendor()).isEqualTo("Sysco Foods");
+        assertThat(invoice.getCategory()).isEqualTo("Groceries");
+        assertThat(invoice.getInvoiceNumber()).isEqualTo("INV-009981");
+        assertThat(invoice.getAmount()).isEqualTo(2450.75);
+        assertThat(invoice.getDate()).isEqualTo(LocalDate.of(2025, 5, 2));
+
+        // Another vendor's invoice, and one missing a field, are left for the AI
+        assertThat(templates.apply(new Invoice(), "COSTCO WHOLESALE\nInvoice #: 88\nTotal 9.00")).isFalse();
+        assertThat(templates.apply(new Invoice(), NEXT.replace("TOTAL DUE $2,450.75", "TOTAL DUE see page 2"))).isFalse();
+
+        templates.apply(new Invoice(), NEXT);
+        assertThat(written).isEmpty();
+        templates.flushHits();
+        assertThat(written).containsExactly(Map.entry(7L, 2L));
+        templates.flushHits();
+        assertThat(written).containsExactly(Map.entry(7L, 2L));
+        templates.shutdown();
+    }
+
+    private static String read(String pattern, String text) {
+        assertThat(pattern).isNotNull();
+        Matcher matcher = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE).matcher(text);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static VendorTemplate template(String vendor, String anchor) {
+        VendorTemplate template = new VendorTemplate();
+        template.setVendor(vendor);
+        template.setAnchor(anchor);
+        return template;
+    }
+
+    // findAll answers from "templates"; addHits adds up into "written"
+    private static VendorTemplateRepository repository(List<VendorTemplate> templates, Map<Long, Long> written) {
+        return (VendorTemplateRepository) Proxy.newProxyInstance(VendorTemplateRepository.class.getClassLoader(),
+                new Class<?>[]{VendorTemplateRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findAll" -> templates;
+                    case "addHits" -> written.merge((Long) args[0], (Long) args[1], Long::sum);
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
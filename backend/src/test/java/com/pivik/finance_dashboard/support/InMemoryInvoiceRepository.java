@@ -0,0 +1,55 @@
+package com.pivik.finance_dashboard.support;
+
+import com.pivik.finance_dashboard.model.Invoice;
+import com.pivik.finance_dashboard.repository.InvoiceRepository;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// An InvoiceRepository over a fixed list, for running services without a database.
+// Only the reads the report/export paths use are implemented; anything else throws.
+public final class InMemoryInvoiceRepository implements InvocationHandler {
+
+    private static final Comparator<Invoice> REPORT_ORDER =
+            Comparator.comparing(Invoice::getVendor, Comparator.nullsLast(Comparator.naturalOrder()))
+                    .thenComparing(Invoice::getDate, Comparator.nullsLast(Comparator.naturalOrder()))
+                    .thenComparing(Invoice::getId);
+
+    private final List<Invoice> invoices;
+
+    private InMemoryInvoiceRepository(List<Invoice> invoices) {
+        this.invoices = invoices;
+    }
+
+    public static InvoiceRepository of(List<Invoice> invoices) {
+        return (InvoiceRepository) Proxy.newProxyInstance(
+                InvoiceRepository.class.getClassLoader(),
+                new Class<?>[]{InvoiceRepository.class},
+                new InMemoryInvoiceRepository(List.copyOf(invoices)));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "findAll" -> invoices;
+            case "count" -> (long) invoices.size();
+            case "findByDateBetween", "findForExport" -> between((LocalDate) args[0], (LocalDate) args[1]).toList();
+            case "streamForReport" -> between((LocalDate) args[0], (LocalDate) args[1]).sorted(REPORT_ORDER);
+            case "toString" -> "InMemoryInvoiceRepository[" + invoices.size() + " invoices]";
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            default -> throw new UnsupportedOperationException("Not in the in-memory repository: " + method.getName());
+        };
+    }
+
+    private Stream<Invoice> between(LocalDate start, LocalDate end) {
+        return invoices.stream()
+                .filter(invoice -> invoice.getDate() != null
+                        && !invoice.getDate().isBefore(start) && !invoice.getDate().isAfter(end));
+    }
+}
@@ -0,0 +1,120 @@
+package com.pivik.finance_dashboard.support;
+
+import com.pivik.finance_dashboard.model.Invoice;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Fake invoices that look like what suppliers send us: same seed, same data, so runs can be compared
+public final class SyntheticInvoices {
+
+    private static final String[] VENDORS = {
+            "Costco", "Sysco", "US Foods", "Gordon Food Service", "Restaurant Depot", "PepsiCo", "Coca-Cola",
+            "Frito-Lay", "Hydro One", "Enbridge Gas", "Rogers", "Staples", "Grainger", "Cintas", "Ecolab",
+            "Waste Management", "Saputo", "Maple Leaf Foods", "Flowers Foods", "Keurig Dr Pepper"
+    };
+
+    private static final String[] CATEGORIES = {"Groceries", "Equipment", "Services", "Utilities", "Other"};
+
+    private static final String[] ITEMS = {
+            "Bananas 40lb case", "Whole milk 4L", "Paper towels 12pk", "Bottled water 24pk", "Granola bars 48ct",
+            "Sanitizer refill", "Coffee beans 5lb", "Cheddar block 2kg", "Bread loaves", "Apples 18kg case"
+    };
+
+    private final Random random;
+
+    public SyntheticInvoices(long seed) {
+        this.random = new Random(seed);
+    }
+
+    // "count" invoices dated between start and end, spread over "files" distinct proof PDFs
+    public List<Invoice> invoices(int count, LocalDate start, LocalDate end, int files) {
+        int days = (int) (end.toEpochDay() - start.toEpochDay()) + 1;
+        List<Invoice> invoices = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Invoice invoice = new Invoice();
+            invoice.setId((long) i + 1);
+            invoice.setVendor(VENDORS[random.nextInt(VENDORS.length)]);
+            invoice.setInvoiceNumber("INV-" + (100000 + random.nextInt(900000)));
+            invoice.setAmount(random.nextInt(500000) / 100.0);
+            invoice.setDate(start.plusDays(random.nextInt(days)));
+            invoice.setCategory(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+            invoice.setStatus(random.nextInt(4) == 0 ? "Paid" : "On Payment Term");
+            invoice.setProject(random.nextInt(10) == 0 ? "FED UP" : null);
+            invoice.setFileUrl(proofName(i % Math.max(files, 1)));
+            invoices.add(invoice);
+        }
+        return invoices;
+    }
+
+    public static String proofName(int index) {
+        return "synthetic_invoice_" + index + ".pdf";
+    }
+
+    // A text PDF for the invoice: header, then line items filling "pages" pages
+    public void writePdf(Invoice invoice, int pages, Path target) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            double lineTotal = 0;
+            for (int page = 0; page < pages; page++) {
+                PDPage pdPage = new PDPage(PDRectangle.LETTER);
+                document.addPage(pdPage);
+                try (PDPageContentStream content = new PDPageContentStream(document, pdPage)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 10);
+                    content.setLeading(14);
+                    content.newLineAtOffset(50, 740);
+
+                    if (page == 0) {
+                        content.setFont(PDType1Font.HELVETICA_BOLD, 16);
+                        content.showText(invoice.getVendor().toUpperCase());
+                        content.setFont(PDType1Font.HELVETICA, 10);
+                        content.newLine();
+                        content.showText("Invoice #: " + invoice.getInvoiceNumber() + "    Date: " + invoice.getDate());
+                        content.newLine();
+                        content.showText("Bill to: Pivik Store, 123 Main Street");
+                        content.newLine();
+                        content.newLine();
+                    }
+
+                    for (int line = 0; line < 40; line++) {
+                        double price = random.nextInt(20000) / 100.0;
+                        lineTotal += price;
+                        content.showText(String.format("%-30s %4d   $%9.2f", ITEMS[random.nextInt(ITEMS.length)], 1 + random.nextInt(12), price));
+                        content.newLine();
+                    }
+
+                    if (page == pages - 1) {
+                        content.newLine();
+                        content.showText(String.format("Subtotal: $%.2f", lineTotal));
+                        content.newLine();
+                        content.showText(String.format("TOTAL DUE: $%.2f", invoice.getAmount()));
+                    }
+                    content.endText();
+                }
+            }
+            document.save(target.toFile());
+        }
+    }
+
+    // What the chat completions API sends back for this invoice (content wrapped in a markdown fence, as it often is)
+    public static String openAiResponse(Invoice invoice) {
+        String content = "```json\\n{\\n  \\\"vendor\\\": \\\"" + invoice.getVendor() + "\\\",\\n"
+                + "  \\\"invoiceNumber\\\": \\\"" + invoice.getInvoiceNumber() + "\\\",\\n"
+                + "  \\\"amount\\\": " + invoice.getAmount() + ",\\n"
+                + "  \\\"date\\\": \\\"" + invoice.getDate() + "\\\",\\n"
+                + "  \\\"category\\\": \\\"" + invoice.getCategory() + "\\\"\\n}\\n```";
+        return "{\"id\":\"chatcmpl-synthetic\",\"object\":\"chat.completion\",\"created\":1700000000,"
+                + "\"model\":\"gpt-4o-mini\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\","
+                + "\"content\":\"" + content + "\"},\"finish_reason\":\"stop\"}],"
+                + "\"usage\":{\"prompt_tokens\":412,\"completion_tokens\":58,\"total_tokens\":470}}";
+    }
+}